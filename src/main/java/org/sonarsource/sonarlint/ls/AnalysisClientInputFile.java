@@ -19,7 +19,6 @@
  */
 package org.sonarsource.sonarlint.ls;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
@@ -30,16 +29,22 @@ import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import org.sonarsource.sonarlint.core.client.api.common.Language;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.ls.file.Rope;
 
 public class AnalysisClientInputFile implements ClientInputFile {
 
   private final URI fileUri;
-  private final String content;
+  private final Rope content;
+  private String contentAsString;
   private final Language sqLanguage;
   private final String relativePath;
   private final boolean isTest;
 
   public AnalysisClientInputFile(URI uri, String relativePath, String content, boolean isTest, @Nullable String clientLanguageId) {
+    this(uri, relativePath, Rope.of(content), isTest, clientLanguageId);
+  }
+
+  public AnalysisClientInputFile(URI uri, String relativePath, Rope content, boolean isTest, @Nullable String clientLanguageId) {
     this.relativePath = relativePath;
     this.fileUri = uri;
     this.content = content;
@@ -73,13 +78,16 @@ public class AnalysisClientInputFile implements ClientInputFile {
   }
 
   @Override
-  public String contents() throws IOException {
-    return content;
+  public synchronized String contents() throws IOException {
+    if (contentAsString == null) {
+      contentAsString = content.toString();
+    }
+    return contentAsString;
   }
 
   @Override
   public InputStream inputStream() {
-    return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    return content.inputStream();
   }
 
   @Override
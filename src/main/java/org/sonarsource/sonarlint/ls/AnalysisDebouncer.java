@@ -0,0 +1,97 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Trigger the analysis of a file once it has not been modified for a given delay, that can differ from one file to another.
+ * Each modified file has exactly one deadline, that is pushed back every time the file is modified again.
+ */
+class AnalysisDebouncer {
+
+  private final ScheduledExecutorService timer;
+  private final Map<URI, ScheduledFuture<?>> deadlinePerFileURI = new ConcurrentHashMap<>();
+  private final ToLongFunction<URI> delayMsPerFileURI;
+  private final Consumer<URI> trigger;
+
+  AnalysisDebouncer(ToLongFunction<URI> delayMsPerFileURI, Consumer<URI> trigger) {
+    this(Executors.newSingleThreadScheduledExecutor(Utils.threadFactory("sonarlint-auto-trigger", true)), delayMsPerFileURI, trigger);
+  }
+
+  // Visible for testing
+  AnalysisDebouncer(ScheduledExecutorService timer, ToLongFunction<URI> delayMsPerFileURI, Consumer<URI> trigger) {
+    this.timer = timer;
+    this.delayMsPerFileURI = delayMsPerFileURI;
+    this.trigger = trigger;
+  }
+
+  void schedule(URI fileUri) {
+    if (timer.isShutdown()) {
+      return;
+    }
+    var delayMs = delayMsPerFileURI.applyAsLong(fileUri);
+    var deadline = new AtomicReference<ScheduledFuture<?>>();
+    deadlinePerFileURI.compute(fileUri, (uri, previous) -> {
+      if (previous != null) {
+        previous.cancel(false);
+      }
+      deadline.set(timer.schedule(() -> expire(uri, deadline), delayMs, TimeUnit.MILLISECONDS));
+      return deadline.get();
+    });
+  }
+
+  private void expire(URI fileUri, AtomicReference<ScheduledFuture<?>> deadline) {
+    // Only fire if this deadline has not been replaced in the meantime
+    var expired = new AtomicBoolean();
+    deadlinePerFileURI.computeIfPresent(fileUri, (uri, current) -> {
+      if (current == deadline.get()) {
+        expired.set(true);
+        return null;
+      }
+      return current;
+    });
+    if (expired.get()) {
+      trigger.accept(fileUri);
+    }
+  }
+
+  void cancel(URI fileUri) {
+    var deadline = deadlinePerFileURI.remove(fileUri);
+    if (deadline != null) {
+      deadline.cancel(false);
+    }
+  }
+
+  void shutdown() {
+    timer.shutdownNow();
+    deadlinePerFileURI.clear();
+  }
+}
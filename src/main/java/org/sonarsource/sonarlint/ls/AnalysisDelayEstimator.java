@@ -0,0 +1,100 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.sonarsource.sonarlint.core.client.api.common.Language;
+
+/**
+ * Compute how long to wait after the last modification of a file before analyzing it, based on the duration of the
+ * most recent analyses of this file, or of files of the same language. Files that are quick to analyze get a short delay,
+ * while expensive ones are not analyzed again on every pause in typing.
+ */
+class AnalysisDelayEstimator {
+
+  static final long DEFAULT_DELAY_MS = 500;
+  static final long MIN_DELAY_MS = 100;
+  static final long MAX_DELAY_MS = 2000;
+  private static final int DELAY_TO_ANALYSIS_TIME_RATIO = 2;
+  private static final int WINDOW_SIZE = 20;
+  private static final int MIN_SAMPLES_PER_FILE = 3;
+  private static final int PERCENTILE = 75;
+
+  private final Map<Language, RollingWindow> analysisTimesPerLanguage = new ConcurrentHashMap<>();
+  private final Map<URI, RollingWindow> analysisTimesPerFileURI = new ConcurrentHashMap<>();
+  private final Map<URI, Language> languagePerFileURI = new ConcurrentHashMap<>();
+
+  void analysisDone(URI fileUri, Language language, int analysisTimeMs) {
+    languagePerFileURI.put(fileUri, language);
+    analysisTimesPerFileURI.computeIfAbsent(fileUri, uri -> new RollingWindow()).add(analysisTimeMs);
+    analysisTimesPerLanguage.computeIfAbsent(language, l -> new RollingWindow()).add(analysisTimeMs);
+  }
+
+  long delayMs(URI fileUri) {
+    var fileWindow = analysisTimesPerFileURI.get(fileUri);
+    if (fileWindow != null && fileWindow.size() >= MIN_SAMPLES_PER_FILE) {
+      return toDelay(fileWindow.percentile(PERCENTILE));
+    }
+    var language = languagePerFileURI.get(fileUri);
+    var languageWindow = language != null ? analysisTimesPerLanguage.get(language) : null;
+    if (languageWindow != null && languageWindow.size() > 0) {
+      return toDelay(languageWindow.percentile(PERCENTILE));
+    }
+    return DEFAULT_DELAY_MS;
+  }
+
+  void forget(URI fileUri) {
+    analysisTimesPerFileURI.remove(fileUri);
+    languagePerFileURI.remove(fileUri);
+  }
+
+  private static long toDelay(long analysisTimeMs) {
+    return Math.max(MIN_DELAY_MS, Math.min(MAX_DELAY_MS, analysisTimeMs * DELAY_TO_ANALYSIS_TIME_RATIO));
+  }
+
+  /**
+   * Keep the last {@link #WINDOW_SIZE} analysis durations.
+   */
+  private static class RollingWindow {
+    private final long[] samples = new long[WINDOW_SIZE];
+    private int count;
+    private int next;
+
+    synchronized void add(long sample) {
+      samples[next] = sample;
+      next = (next + 1) % WINDOW_SIZE;
+      count = Math.min(count + 1, WINDOW_SIZE);
+    }
+
+    synchronized int size() {
+      return count;
+    }
+
+    synchronized long percentile(int percentile) {
+      var sorted = Arrays.copyOf(samples, count);
+      Arrays.sort(sorted);
+      var index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+      return sorted[Math.max(0, index)];
+    }
+  }
+}
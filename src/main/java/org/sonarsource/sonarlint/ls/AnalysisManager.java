@@ -20,15 +20,17 @@
 package org.sonarsource.sonarlint.ls;
 
 import com.google.gson.JsonPrimitive;
-import java.io.File;
 import java.net.URI;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
@@ -36,10 +38,12 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -52,12 +56,15 @@ import org.eclipse.lsp4j.FileEvent;
 import org.eclipse.lsp4j.Position;
 import org.eclipse.lsp4j.PublishDiagnosticsParams;
 import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonarsource.sonarlint.core.client.api.common.ClientModuleFileEvent;
 import org.sonarsource.sonarlint.core.client.api.common.Language;
 import org.sonarsource.sonarlint.core.client.api.common.ModuleInfo;
 import org.sonarsource.sonarlint.core.client.api.common.PluginDetails;
+import org.sonarsource.sonarlint.core.client.api.common.ProgressMonitor;
+import org.sonarsource.sonarlint.core.client.api.common.SonarLintPathManager;
 import org.sonarsource.sonarlint.core.client.api.common.SonarLintEngine;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.AnalysisResults;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
@@ -66,21 +73,25 @@ import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
 import org.sonarsource.sonarlint.core.client.api.connected.ConnectedAnalysisConfiguration;
 import org.sonarsource.sonarlint.core.client.api.connected.ServerIssue;
 import org.sonarsource.sonarlint.core.client.api.connected.ServerIssueLocation;
+import org.sonarsource.sonarlint.core.client.api.exceptions.CanceledException;
 import org.sonarsource.sonarlint.core.client.api.standalone.StandaloneAnalysisConfiguration;
 import org.sonarsource.sonarlint.core.client.api.util.FileUtils;
+import org.sonarsource.sonarlint.ls.AnalysisScheduler.Priority;
 import org.sonarsource.sonarlint.ls.SonarLintExtendedLanguageClient.GetJavaConfigResponse;
 import org.sonarsource.sonarlint.ls.connected.ProjectBindingManager;
 import org.sonarsource.sonarlint.ls.connected.ProjectBindingWrapper;
+import org.sonarsource.sonarlint.ls.connected.ServerIssueTrackerWrapper;
+import org.sonarsource.sonarlint.ls.file.DocumentStore;
 import org.sonarsource.sonarlint.ls.file.FileLanguageCache;
 import org.sonarsource.sonarlint.ls.file.FileTypeClassifier;
 import org.sonarsource.sonarlint.ls.file.FolderFileSystem;
+import org.sonarsource.sonarlint.ls.file.Rope;
 import org.sonarsource.sonarlint.ls.folders.InFolderClientInputFile;
 import org.sonarsource.sonarlint.ls.folders.WorkspaceFolderLifecycleListener;
 import org.sonarsource.sonarlint.ls.folders.WorkspaceFolderWrapper;
 import org.sonarsource.sonarlint.ls.folders.WorkspaceFoldersManager;
 import org.sonarsource.sonarlint.ls.folders.WorkspaceFoldersProvider;
 import org.sonarsource.sonarlint.ls.java.JavaConfigCache;
-import org.sonarsource.sonarlint.ls.java.JavaSdkUtil;
 import org.sonarsource.sonarlint.ls.log.LanguageClientLogOutput;
 import org.sonarsource.sonarlint.ls.settings.SettingsManager;
 import org.sonarsource.sonarlint.ls.settings.WorkspaceFolderSettings;
@@ -91,17 +102,12 @@ import org.sonarsource.sonarlint.plugin.api.module.file.ModuleFileEvent;
 
 import static java.util.Collections.emptyMap;
 import static java.util.Collections.singleton;
-import static java.util.stream.Collectors.joining;
 import static org.sonarsource.sonarlint.ls.Utils.pluralize;
 
 public class AnalysisManager implements WorkspaceSettingsChangeListener, WorkspaceFolderLifecycleListener {
 
-  private static final int DELAY_MS = 500;
-  private static final int QUEUE_POLLING_PERIOD_MS = 200;
-
   private static final Logger LOG = Loggers.get(AnalysisManager.class);
 
-  private static final String SECURITY_REPOSITORY_HINT = "security";
   public static final String TYPESCRIPT_PATH_PROP = "sonar.typescript.internal.typescriptLocation";
   static final String SONARLINT_SOURCE = "sonarlint";
   static final String SONARQUBE_TAINT_SOURCE = "SonarQube Taint Analyzer";
@@ -115,38 +121,46 @@ public class AnalysisManager implements WorkspaceSettingsChangeListener, Workspa
   private final FileTypeClassifier fileTypeClassifier;
   private final FileLanguageCache fileLanguageCache;
   private final JavaConfigCache javaConfigCache;
-  private boolean firstSecretIssueDetected;
-  private final Map<URI, String> fileContentPerFileURI = new ConcurrentHashMap<>();
+  private volatile boolean firstSecretIssueDetected;
+  private final DocumentStore documentStore = new DocumentStore();
   private final Map<URI, Integer> knownVersionPerFileURI = new ConcurrentHashMap<>();
   private final Map<URI, Integer> analyzedVersionPerFileURI = new ConcurrentHashMap<>();
   private final Map<URI, Map<String, Issue>> issuesPerIdPerFileURI = new ConcurrentHashMap<>();
-  private final Map<URI, List<ServerIssue>> taintVulnerabilitiesPerFile;
-  private final Map<Path, List<Path>> jvmClasspathPerJavaHome = new ConcurrentHashMap<>();
-  // entries in this map mean that the file is "dirty"
-  private final Map<URI, Long> eventMap = new ConcurrentHashMap<>();
+  // secondary index, for diagnostics without data
+  private final Map<URI, Map<RuleKeyAndRange, Issue>> issuesPerRuleKeyAndRangePerFileURI = new ConcurrentHashMap<>();
+  // issue ids are never reused, so that stale diagnostics don't resolve to another issue
+  private final AtomicLong issueIdSequence = new AtomicLong();
+  private final TaintVulnerabilitiesCache taintVulnerabilitiesCache;
+  // at most one analysis waiting to be started per file, later requests are merged into it
+  private final Map<URI, PendingAnalysis> pendingAnalysisPerFileURI = new ConcurrentHashMap<>();
+  // file in the active editor, if known, analyzed before other files on bulk re-analysis
+  @CheckForNull
+  private volatile URI focusedFileUri;
 
   private final SonarLintTelemetry telemetry;
   private final WorkspaceFoldersManager workspaceFoldersManager;
   private final SettingsManager settingsManager;
   private final ProjectBindingManager bindingManager;
-  private final EventWatcher watcher;
+  private final AnalysisDelayEstimator analysisDelayEstimator = new AnalysisDelayEstimator();
+  private final AnalysisResultCache analysisResultCache = new AnalysisResultCache();
+  private final AnalysisDebouncer debouncer;
   private final LanguageClientLogOutput lsLogOutput;
   private final ScmIgnoredCache filesIgnoredByScmCache;
   private final StandaloneEngineManager standaloneEngineManager;
 
-  private final ExecutorService analysisExecutor;
+  private final AnalysisScheduler analysisScheduler;
 
   public AnalysisManager(LanguageClientLogOutput lsLogOutput, StandaloneEngineManager standaloneEngineManager, SonarLintExtendedLanguageClient client, SonarLintTelemetry telemetry,
     WorkspaceFoldersManager workspaceFoldersManager, SettingsManager settingsManager, ProjectBindingManager bindingManager, FileTypeClassifier fileTypeClassifier,
     FileLanguageCache fileLanguageCache, JavaConfigCache javaConfigCache) {
     this(lsLogOutput, standaloneEngineManager, client, telemetry, workspaceFoldersManager, settingsManager, bindingManager, fileTypeClassifier, fileLanguageCache, javaConfigCache,
-      new ConcurrentHashMap<>());
+      new TaintVulnerabilitiesCache());
   }
 
   public AnalysisManager(LanguageClientLogOutput lsLogOutput, StandaloneEngineManager standaloneEngineManager, SonarLintExtendedLanguageClient client, SonarLintTelemetry telemetry,
     WorkspaceFoldersManager workspaceFoldersManager, SettingsManager settingsManager, ProjectBindingManager bindingManager, FileTypeClassifier fileTypeClassifier,
     FileLanguageCache fileLanguageCache, JavaConfigCache javaConfigCache,
-    Map<URI, List<ServerIssue>> taintVulnerabilitiesPerFile) {
+    TaintVulnerabilitiesCache taintVulnerabilitiesCache) {
     this.lsLogOutput = lsLogOutput;
     this.standaloneEngineManager = standaloneEngineManager;
     this.client = client;
@@ -157,19 +171,22 @@ public class AnalysisManager implements WorkspaceSettingsChangeListener, Workspa
     this.fileTypeClassifier = fileTypeClassifier;
     this.fileLanguageCache = fileLanguageCache;
     this.javaConfigCache = javaConfigCache;
-    this.analysisExecutor = Executors.newSingleThreadExecutor(Utils.threadFactory("SonarLint analysis", false));
-    this.watcher = new EventWatcher();
-    this.taintVulnerabilitiesPerFile = taintVulnerabilitiesPerFile;
+    this.analysisScheduler = new AnalysisScheduler();
+    this.debouncer = new AnalysisDebouncer(analysisDelayEstimator::delayMs, fileUri -> analyzeAsync(fileUri, false, Priority.EDIT));
+    this.taintVulnerabilitiesCache = taintVulnerabilitiesCache;
     this.filesIgnoredByScmCache = new ScmIgnoredCache(client);
   }
 
   public void didChangeWatchedFiles(List<FileEvent> changes) {
+    filesIgnoredByScmCache.didChangeWatchedFiles(changes);
+    javaConfigCache.didChangeWatchedFiles(changes);
     changes.forEach(f -> {
       URI fileUri = URI.create(f.getUri());
       workspaceFoldersManager.findFolderForFile(fileUri)
         .ifPresent(folder -> {
-          var settings = folder.getSettings();
           var baseDir = folder.getRootPath();
+          folder.getFileIndex().didChange(Paths.get(fileUri), f.getType());
+          var settings = folder.getSettings();
 
           var binding = bindingManager.getBinding(fileUri);
 
@@ -197,15 +214,20 @@ public class AnalysisManager implements WorkspaceSettingsChangeListener, Workspa
 
   public void didOpen(URI fileUri, String languageId, String fileContent, int version) {
     fileLanguageCache.put(fileUri, languageId);
-    fileContentPerFileURI.put(fileUri, fileContent);
+    documentStore.open(fileUri, fileContent);
     knownVersionPerFileURI.put(fileUri, version);
-    analyzeAsync(fileUri, true);
+    analyzeAsync(fileUri, true, Priority.OPEN);
   }
 
-  public void didChange(URI fileUri, String fileContent, int version) {
-    fileContentPerFileURI.put(fileUri, fileContent);
-    eventMap.put(fileUri, System.currentTimeMillis());
+  public void didChange(URI fileUri, List<TextDocumentContentChangeEvent> changes, int version) {
+    if (!documentStore.applyChanges(fileUri, changes)) {
+      LOG.debug("Ignoring incremental changes of file '{}', it has not been opened", fileUri);
+      return;
+    }
     knownVersionPerFileURI.put(fileUri, version);
+    // A new analysis will be triggered once the user stops typing, no need to run the queued one in the meantime
+    pendingAnalysisPerFileURI.computeIfPresent(fileUri, (uri, pending) -> pending.stale());
+    debouncer.schedule(fileUri);
   }
 
   private SonarLintEngine findEngineFor(WorkspaceFolderWrapper folder) {
@@ -217,7 +239,7 @@ public class AnalysisManager implements WorkspaceSettingsChangeListener, Workspa
 
   @Override
   public void added(WorkspaceFolderWrapper addedFolder) {
-    analysisExecutor.execute(() -> {
+    analysisScheduler.submitFolderTask(WorkspaceFoldersProvider.key(addedFolder), () -> {
       var folderFileSystem = new FolderFileSystem(addedFolder, javaConfigCache, fileTypeClassifier);
       findEngineFor(addedFolder).declareModule(new ModuleInfo(WorkspaceFoldersProvider.key(addedFolder), folderFileSystem));
     });
@@ -225,100 +247,234 @@ public class AnalysisManager implements WorkspaceSettingsChangeListener, Workspa
 
   @Override
   public void removed(WorkspaceFolderWrapper removedFolder) {
-    analysisExecutor.execute(() -> findEngineFor(removedFolder).stopModule(WorkspaceFoldersProvider.key(removedFolder)));
+    var folderKey = WorkspaceFoldersProvider.key(removedFolder);
+    analysisScheduler.submitFolderTask(folderKey, () -> findEngineFor(removedFolder).stopModule(folderKey));
   }
 
-  private class EventWatcher extends Thread {
-    private boolean stop = false;
+  public void didClose(URI fileUri) {
+    LOG.debug("File '{}' closed. Cleaning diagnostics.", fileUri);
+    fileLanguageCache.remove(fileUri);
+    documentStore.close(fileUri);
+    javaConfigCache.remove(fileUri);
+    issuesPerIdPerFileURI.remove(fileUri);
+    issuesPerRuleKeyAndRangePerFileURI.remove(fileUri);
+    knownVersionPerFileURI.remove(fileUri);
+    analyzedVersionPerFileURI.remove(fileUri);
+    taintVulnerabilitiesCache.remove(fileUri);
+    debouncer.cancel(fileUri);
+    analysisDelayEstimator.forget(fileUri);
+    pendingAnalysisPerFileURI.remove(fileUri);
+    client.publishDiagnostics(newPublishDiagnostics(fileUri));
+    filesIgnoredByScmCache.remove(fileUri);
+  }
 
-    EventWatcher() {
-      this.setDaemon(true);
-      this.setName("sonarlint-auto-trigger");
-    }
+  public void didSave(URI fileUri, String fileContent) {
+    documentStore.replace(fileUri, fileContent);
+    analyzeAsync(fileUri, false, Priority.EDIT);
+  }
 
-    public void stopWatcher() {
-      stop = true;
-      this.interrupt();
+  public void didFocus(@Nullable URI fileUri) {
+    focusedFileUri = fileUri;
+    if (fileUri != null) {
+      analysisScheduler.raisePriority(fileUri, Priority.OPEN);
     }
+  }
 
-    @Override
-    public void run() {
-      while (!stop) {
-        checkTimers();
-        try {
-          Thread.sleep(QUEUE_POLLING_PERIOD_MS);
-        } catch (InterruptedException e) {
-          // continue until stop flag is set
+  private void analyzeAsync(URI fileUri, boolean shouldFetchServerIssues, Priority priority) {
+    analyzeAsync(List.of(fileUri), shouldFetchServerIssues, priority);
+  }
+
+  /**
+   * Files of the same workspace folder are queued as a single task, and analyzed together as much as possible, so that the
+   * cost of starting the analyzers is paid once for all of them. The focused file is queued on its own, not to wait for others.
+   */
+  private void analyzeAsync(Collection<URI> fileUris, boolean shouldFetchServerIssues, Priority priority) {
+    // null key for files outside of any workspace folder
+    var fileUrisToAnalyzePerFolderURI = new LinkedHashMap<URI, List<URI>>();
+    for (var fileUri : fileUris) {
+      if (!fileUri.getScheme().equalsIgnoreCase("file")) {
+        LOG.warn("URI '{}' is not a file, analysis not supported", fileUri);
+      } else if (queue(fileUri, shouldFetchServerIssues)) {
+        var folderUri = workspaceFoldersManager.findFolderForFile(fileUri).map(WorkspaceFolderWrapper::getUri).orElse(null);
+        if (fileUri.equals(focusedFileUri) && priority.compareTo(Priority.OPEN) > 0) {
+          submit(List.of(fileUri), folderUri, Priority.OPEN);
+        } else {
+          fileUrisToAnalyzePerFolderURI.computeIfAbsent(folderUri, k -> new ArrayList<>()).add(fileUri);
         }
+      } else {
+        LOG.debug("Analysis of file '{}' already queued", fileUri);
+        analysisScheduler.raisePriority(fileUri, priority);
       }
     }
+    // Other files should not wait for the configuration of Java files
+    fileUrisToAnalyzePerFolderURI.forEach((folderUri, fileUrisToAnalyze) -> fileUrisToAnalyze.stream()
+      .collect(Collectors.partitioningBy(fileLanguageCache::isJava))
+      .values().stream()
+      .filter(fileUrisOfPartition -> !fileUrisOfPartition.isEmpty())
+      .forEach(fileUrisOfPartition -> submit(fileUrisOfPartition, folderUri, priority)));
+  }
 
-    private void checkTimers() {
-      var t = System.currentTimeMillis();
+  private void submit(List<URI> fileUris, @Nullable URI folderUri, Priority priority) {
+    if (fileUris.size() == 1) {
+      LOG.debug("Queuing analysis of file '{}'", fileUris.get(0));
+    } else {
+      LOG.debug("Queuing analysis of {} files", fileUris.size());
+    }
+    analysisScheduler.submitWhenReady(fetchAnalysisPrerequisites(fileUris), fileUris, folderUri, priority, () -> analyze(takePendingAnalyses(fileUris)));
+  }
 
-      var it = eventMap.entrySet().iterator();
-      while (it.hasNext()) {
-        var e = it.next();
-        if (e.getValue() + DELAY_MS < t) {
-          analyzeAsync(e.getKey(), false);
-          it.remove();
-        }
-      }
+  /**
+   * Fetch from the client what is needed to prepare the analysis of these files, so that analysis workers do not wait for it.
+   * If something is not available in time, preparation of the analysis will wait for it or fail as usual.
+   */
+  private CompletableFuture<Void> fetchAnalysisPrerequisites(List<URI> fileUris) {
+    var prerequisites = new ArrayList<CompletableFuture<?>>();
+    prerequisites.add(settingsManager.initialized());
+    for (var fileUri : fileUris) {
+      workspaceFoldersManager.findFolderForFile(fileUri).ifPresent(folder -> prerequisites.add(folder.initialized()));
+      prerequisites.add(javaConfigCache.getOrFetchAsync(fileUri));
+      prerequisites.add(filesIgnoredByScmCache.isIgnoredAsync(fileUri));
     }
+    return CompletableFuture.allOf(prerequisites.toArray(CompletableFuture[]::new))
+      .completeOnTimeout(null, 1, TimeUnit.MINUTES);
   }
 
-  public void didClose(URI fileUri) {
-    LOG.debug("File '{}' closed. Cleaning diagnostics.", fileUri);
-    fileLanguageCache.remove(fileUri);
-    fileContentPerFileURI.remove(fileUri);
-    javaConfigCache.remove(fileUri);
-    issuesPerIdPerFileURI.remove(fileUri);
-    knownVersionPerFileURI.remove(fileUri);
-    analyzedVersionPerFileURI.remove(fileUri);
-    taintVulnerabilitiesPerFile.remove(fileUri);
-    eventMap.remove(fileUri);
-    client.publishDiagnostics(newPublishDiagnostics(fileUri));
-    filesIgnoredByScmCache.remove(fileUri);
+  /**
+   * @return true if a new analysis has to be scheduled, false if the request was merged into an already queued one
+   */
+  private boolean queue(URI fileUri, boolean shouldFetchServerIssues) {
+    var shouldSchedule = new AtomicBoolean();
+    pendingAnalysisPerFileURI.compute(fileUri, (uri, pending) -> {
+      if (pending == null || pending.isStale) {
+        shouldSchedule.set(true);
+        return new PendingAnalysis(shouldFetchServerIssues || (pending != null && pending.shouldFetchServerIssues));
+      }
+      return pending.mergeWith(shouldFetchServerIssues);
+    });
+    return shouldSchedule.get();
   }
 
-  public void didSave(URI fileUri, String fileContent) {
-    fileContentPerFileURI.put(fileUri, fileContent);
-    analyzeAsync(fileUri, false);
+  private Map<URI, PendingAnalysis> takePendingAnalyses(List<URI> fileUris) {
+    var pendingAnalysisPerFileUri = new LinkedHashMap<URI, PendingAnalysis>();
+    fileUris.forEach(fileUri -> takePendingAnalysis(fileUri).ifPresent(pending -> pendingAnalysisPerFileUri.put(fileUri, pending)));
+    return pendingAnalysisPerFileUri;
   }
 
-  void analyzeAsync(URI fileUri, boolean shouldFetchServerIssues) {
-    if (!fileUri.getScheme().equalsIgnoreCase("file")) {
-      LOG.warn("URI '{}' is not a file, analysis not supported", fileUri);
-      return;
+  private Optional<PendingAnalysis> takePendingAnalysis(URI fileUri) {
+    var taken = new AtomicReference<PendingAnalysis>();
+    pendingAnalysisPerFileURI.computeIfPresent(fileUri, (uri, pending) -> {
+      if (pending.isStale) {
+        // Keep it, so that the next request for this file still knows if server issues should be fetched
+        return pending;
+      }
+      taken.set(pending);
+      return null;
+    });
+    return Optional.ofNullable(taken.get());
+  }
+
+  private static class PendingAnalysis {
+    private final boolean shouldFetchServerIssues;
+    private final boolean isStale;
+
+    private PendingAnalysis(boolean shouldFetchServerIssues) {
+      this(shouldFetchServerIssues, false);
+    }
+
+    private PendingAnalysis(boolean shouldFetchServerIssues, boolean isStale) {
+      this.shouldFetchServerIssues = shouldFetchServerIssues;
+      this.isStale = isStale;
+    }
+
+    private PendingAnalysis mergeWith(boolean shouldFetchServerIssues) {
+      return new PendingAnalysis(this.shouldFetchServerIssues || shouldFetchServerIssues, isStale);
+    }
+
+    private PendingAnalysis stale() {
+      return new PendingAnalysis(shouldFetchServerIssues, true);
     }
-    LOG.debug("Queuing analysis of file '{}'", fileUri);
-    analysisExecutor.execute(() -> analyze(fileUri, shouldFetchServerIssues));
   }
 
-  private void analyze(URI fileUri, boolean shouldFetchServerIssues) {
+  /**
+   * A file ready to be analyzed, with everything needed to build its analysis configuration.
+   */
+  private static class FileToAnalyze {
+    private final URI uri;
+    @CheckForNull
+    private final Integer version;
+    private final boolean shouldFetchServerIssues;
+    private final WorkspaceFolderSettings settings;
+    private final URI baseDirUri;
+    @CheckForNull
+    private final ProjectBindingWrapper binding;
+    private final Map<String, String> javaProperties;
+    private final AnalysisClientInputFile inputFile;
+
+    private FileToAnalyze(URI uri, @Nullable Integer version, boolean shouldFetchServerIssues, WorkspaceFolderSettings settings, URI baseDirUri,
+      @Nullable ProjectBindingWrapper binding, Map<String, String> javaProperties, AnalysisClientInputFile inputFile) {
+      this.uri = uri;
+      this.version = version;
+      this.shouldFetchServerIssues = shouldFetchServerIssues;
+      this.settings = settings;
+      this.baseDirUri = baseDirUri;
+      this.binding = binding;
+      this.javaProperties = javaProperties;
+      this.inputFile = inputFile;
+    }
+
+    /**
+     * Files sharing the same key can be analyzed with a single analysis configuration
+     */
+    private List<Object> groupKey() {
+      return Arrays.asList(baseDirUri, binding, inputFile.language(), javaProperties);
+    }
+  }
+
+  /**
+   * Cancel the analysis of files as soon as a more recent version of all of them is known, or when they are all closed.
+   */
+  private class OutdatedAnalysisMonitor extends ProgressMonitor {
+    private final List<FileToAnalyze> files;
+
+    private OutdatedAnalysisMonitor(List<FileToAnalyze> files) {
+      this.files = files;
+    }
+
+    @Override
+    public boolean isCanceled() {
+      return files.stream().allMatch(AnalysisManager.this::isOutdated);
+    }
+  }
+
+  private boolean isOutdated(FileToAnalyze file) {
+    return !documentStore.isOpen(file.uri) || !Objects.equals(file.version, knownVersionPerFileURI.get(file.uri));
+  }
+
+  private void analyze(Map<URI, PendingAnalysis> pendingAnalysisPerFileURI) {
+    var filesToAnalyzePerGroup = new LinkedHashMap<List<Object>, List<FileToAnalyze>>();
+    pendingAnalysisPerFileURI.forEach((fileUri, pending) -> prepare(fileUri, pending.shouldFetchServerIssues)
+      .ifPresent(file -> filesToAnalyzePerGroup.computeIfAbsent(file.groupKey(), k -> new ArrayList<>()).add(file)));
+    filesToAnalyzePerGroup.values().forEach(this::analyze);
+  }
+
+  private Optional<FileToAnalyze> prepare(URI fileUri, boolean shouldFetchServerIssues) {
     final var javaConfigOpt = javaConfigCache.getOrFetch(fileUri);
     if (fileLanguageCache.isJava(fileUri) && javaConfigOpt.isEmpty()) {
       LOG.debug("Skipping analysis of Java file '{}' because SonarLint was unable to query project configuration (classpath, source level, ...)", fileUri);
-      return;
+      return Optional.empty();
     }
     var isIgnored = filesIgnoredByScmCache.isIgnored(fileUri).orElse(false);
     if (Boolean.TRUE.equals(isIgnored)) {
       LOG.debug("Skip analysis for SCM ignored file: '{}'", fileUri);
-      return;
-    }
-
-    if (knownVersionPerFileURI.containsKey(fileUri)) {
-      analyzedVersionPerFileURI.put(fileUri, knownVersionPerFileURI.get(fileUri));
+      return Optional.empty();
     }
 
-    var content = fileContentPerFileURI.get(fileUri);
+    var version = knownVersionPerFileURI.get(fileUri);
+    var content = documentStore.getContent(fileUri);
     if (content == null) {
       LOG.debug("Skipping analysis of file '{}', content has disappeared", fileUri);
-      return;
+      return Optional.empty();
     }
-    var newIssuesPerId = new HashMap<String, Issue>();
-    issuesPerIdPerFileURI.put(fileUri, newIssuesPerId);
-    taintVulnerabilitiesPerFile.put(fileUri, new ArrayList<>());
 
     var workspaceFolder = workspaceFoldersManager.findFolderForFile(fileUri);
 
@@ -328,72 +484,136 @@ public class AnalysisManager implements WorkspaceSettingsChangeListener, Workspa
     var baseDirUri = workspaceFolder.map(WorkspaceFolderWrapper::getUri)
       // Default to take file parent dir if file is not part of any workspace
       .orElse(Paths.get(fileUri).getParent().toUri());
-
-    var issueListener = createIssueListener();
+    var baseDir = Paths.get(baseDirUri);
 
     var binding = bindingManager.getBinding(fileUri);
-    AnalysisResultsWrapper analysisResults;
+    if (binding.isPresent() && !binding.get().getEngine().getExcludedFiles(binding.get().getBinding(),
+      singleton(fileUri),
+      uri -> getFileRelativePath(baseDir, uri),
+      uri -> fileTypeClassifier.isTest(settings, uri, javaConfigOpt))
+      .isEmpty()) {
+      LOG.debug("Skip analysis of excluded file: {}", fileUri);
+      return Optional.empty();
+    }
+
+    var inputFile = new AnalysisClientInputFile(fileUri, getFileRelativePath(baseDir, fileUri), content, fileTypeClassifier.isTest(settings, fileUri, javaConfigOpt),
+      fileLanguageCache.getLanguageFor(fileUri));
+    return Optional.of(new FileToAnalyze(fileUri, version, shouldFetchServerIssues, settings, baseDirUri, binding.orElse(null), javaConfigCache.getJavaProperties(fileUri), inputFile));
+  }
+
+  /**
+   * Analyze files sharing the same base dir, binding, language and Java configuration together.
+   */
+  private void analyze(List<FileToAnalyze> files) {
+    var newIssuesPerIdPerFileURI = new HashMap<URI, Map<String, Issue>>();
+    var issueListener = createIssueListener(newIssuesPerIdPerFileURI);
+    var cancelMonitor = new OutdatedAnalysisMonitor(files);
+    var binding = files.get(0).binding;
+    AnalysisResultsWrapper analysisResults = null;
     try {
-      if (binding.isPresent()) {
-        var connectedEngine = binding.get().getEngine();
-        if (!connectedEngine.getExcludedFiles(binding.get().getBinding(),
-          singleton(fileUri),
-          uri -> getFileRelativePath(Paths.get(baseDirUri), uri),
-          uri -> fileTypeClassifier.isTest(settings, uri, javaConfigOpt))
-          .isEmpty()) {
-          LOG.debug("Skip analysis of excluded file: {}", fileUri);
-          return;
-        }
-        LOG.info("Analyzing file '{}'...", fileUri);
-        analysisResults = analyzeConnected(binding.get(), settings, baseDirUri, fileUri, content, issueListener, shouldFetchServerIssues, javaConfigOpt);
+      if (binding != null) {
+        logAnalysisStart(files);
+        analysisResults = analyzeConnected(binding, files, issueListener, cancelMonitor);
       } else {
-        LOG.info("Analyzing file '{}'...", fileUri);
-        analysisResults = analyzeStandalone(settings, baseDirUri, fileUri, content, issueListener, javaConfigOpt);
+        analysisResults = analyzeStandalone(files, issueListener, cancelMonitor);
+        files.forEach(file -> taintVulnerabilitiesCache.remove(file.uri));
       }
-      SkippedPluginsNotifier.notifyOnceForSkippedPlugins(analysisResults.results, analysisResults.allPlugins, client);
-
-      var analyzedLanguages = analysisResults.results.languagePerFile().values();
-      if (!analyzedLanguages.isEmpty()) {
-        telemetry.analysisDoneOnSingleLanguage(analyzedLanguages.iterator().next(), analysisResults.analysisTime);
+      if (analysisResults != null) {
+        SkippedPluginsNotifier.notifyOnceForSkippedPlugins(analysisResults.results, analysisResults.allPlugins, client);
+        collectAnalysisStats(analysisResults);
       }
-
-      // Ignore files with parsing error
-      analysisResults.results.failedAnalysisFiles().stream()
-        .map(ClientInputFile::getClientObject)
-        .map(URI.class::cast)
-        .forEach(issuesPerIdPerFileURI::remove);
+    } catch (CanceledException e) {
+      if (files.size() == 1) {
+        LOG.debug("Analysis of file '{}' canceled, file was modified or closed in the meantime", files.get(0).uri);
+      } else {
+        LOG.debug("Analysis of {} files canceled, files were modified or closed in the meantime", files.size());
+      }
+      return;
     } catch (Exception e) {
       LOG.error("Analysis failed.", e);
     }
 
-    // Check if file has not being closed during the analysis
-    if (fileContentPerFileURI.containsKey(fileUri)) {
-      var foundIssues = newIssuesPerId.size();
-      LOG.info("Found {} {}", foundIssues, pluralize(foundIssues, "issue"));
-      client.publishDiagnostics(newPublishDiagnostics(fileUri));
-      telemetry.addReportedRules(collectAllRuleKeys());
+    Set<URI> failedFileUris = analysisResults == null ? Set.of() : analysisResults.results.failedAnalysisFiles().stream()
+      .map(ClientInputFile::getClientObject)
+      .map(URI.class::cast)
+      .collect(Collectors.toSet());
+    // Telemetry forgets reported rules after each ping, so rules of all analyzed files are reported again
+    var reportedRuleKeys = new HashSet<String>();
+    for (var file : files) {
+      // Issues of files modified or closed during the analysis are outdated, a new analysis is coming or not needed
+      if (files.size() > 1 && isOutdated(file)) {
+        LOG.debug("Ignoring issues of file '{}', it was modified or closed in the meantime", file.uri);
+        continue;
+      }
+      var newIssuesPerId = newIssuesPerIdPerFileURI.computeIfAbsent(file.uri, uri -> new HashMap<>());
+      if (failedFileUris.contains(file.uri)) {
+        // Ignore files with parsing error
+        issuesPerIdPerFileURI.remove(file.uri);
+        issuesPerRuleKeyAndRangePerFileURI.remove(file.uri);
+      } else {
+        issuesPerIdPerFileURI.put(file.uri, newIssuesPerId);
+        issuesPerRuleKeyAndRangePerFileURI.put(file.uri, indexByRuleKeyAndRange(newIssuesPerId));
+        newIssuesPerId.values().forEach(issue -> reportedRuleKeys.add(issue.getRuleKey()));
+      }
+      if (file.version != null) {
+        analyzedVersionPerFileURI.put(file.uri, file.version);
+      }
+      // Check if file has not being closed during the analysis
+      if (documentStore.isOpen(file.uri)) {
+        var foundIssues = newIssuesPerId.size();
+        if (files.size() == 1) {
+          LOG.info("Found {} {}", foundIssues, pluralize(foundIssues, "issue"));
+        } else {
+          LOG.info("Found {} {} in file '{}'", foundIssues, pluralize(foundIssues, "issue"), file.uri);
+        }
+        client.publishDiagnostics(newPublishDiagnostics(file.uri));
+      }
+    }
+    if (!reportedRuleKeys.isEmpty()) {
+      telemetry.addReportedRules(reportedRuleKeys);
     }
   }
 
-  private Set<String> collectAllRuleKeys() {
-    return issuesPerIdPerFileURI.values().stream()
-      .flatMap(m -> m.values().stream())
-      .map(Issue::getRuleKey)
-      .collect(Collectors.toSet());
+  private void collectAnalysisStats(AnalysisResultsWrapper analysisResults) {
+    var languagePerFile = analysisResults.results.languagePerFile();
+    if (languagePerFile.size() > 1) {
+      telemetry.analysisDoneOnMultipleFiles();
+    } else if (!languagePerFile.isEmpty()) {
+      var analyzedFile = languagePerFile.entrySet().iterator().next();
+      var language = analyzedFile.getValue();
+      telemetry.analysisDoneOnSingleLanguage(language, analysisResults.analysisTime);
+      analysisDelayEstimator.analysisDone(analyzedFile.getKey().getClientObject(), language, analysisResults.analysisTime);
+    }
+  }
+
+  private static void logAnalysisStart(List<FileToAnalyze> files) {
+    if (files.size() == 1) {
+      LOG.info("Analyzing file '{}'...", files.get(0).uri);
+    } else {
+      LOG.info("Analyzing {} files...", files.size());
+    }
   }
 
-  private IssueListener createIssueListener() {
+  private IssueListener createIssueListener(Map<URI, Map<String, Issue>> newIssuesPerIdPerFileURI) {
     return issue -> {
       showFirstSecretDetectionNotificationIfNeeded(issue);
       var inputFile = issue.getInputFile();
       if (inputFile != null) {
         URI uri = inputFile.getClientObject();
-        issuesPerIdPerFileURI.computeIfAbsent(uri, u -> new HashMap<>()).put(UUID.randomUUID().toString(), issue);
+        newIssuesPerIdPerFileURI.computeIfAbsent(uri, u -> new HashMap<>()).put(Long.toString(issueIdSequence.incrementAndGet()), issue);
       }
     };
   }
 
-  void showFirstSecretDetectionNotificationIfNeeded(Issue issue) {
+  private static Map<RuleKeyAndRange, Issue> indexByRuleKeyAndRange(Map<String, Issue> issuesPerId) {
+    var issuesPerRuleKeyAndRange = new HashMap<RuleKeyAndRange, Issue>(issuesPerId.size());
+    issuesPerId.values().stream()
+      .filter(i -> i.getStartLine() != null)
+      .forEach(i -> issuesPerRuleKeyAndRange.putIfAbsent(new RuleKeyAndRange(i.getRuleKey(), position(i)), i));
+    return issuesPerRuleKeyAndRange;
+  }
+
+  synchronized void showFirstSecretDetectionNotificationIfNeeded(Issue issue) {
     if (!firstSecretIssueDetected && issue.getRuleKey().startsWith(Language.SECRETS.getPluginKey())) {
       client.showFirstSecretDetectionNotification();
       firstSecretIssueDetected = true;
@@ -414,41 +634,17 @@ public class AnalysisManager implements WorkspaceSettingsChangeListener, Workspa
     if (issuesForFile.containsKey(issueKey)) {
       return Optional.of(issuesForFile.get(issueKey));
     } else {
-      return issuesForFile.values()
-        .stream()
-        .filter(i -> i.getRuleKey().equals(d.getCode().getLeft()) && locationMatches(i, d))
-        .findFirst();
+      return Optional.ofNullable(RuleKeyAndRange.of(d))
+        .map(issuesPerRuleKeyAndRangePerFileURI.getOrDefault(fileUri, emptyMap())::get);
     }
   }
 
   Optional<ServerIssue> getTaintVulnerabilityForDiagnostic(URI fileUri, Diagnostic d) {
-    return taintVulnerabilitiesPerFile.getOrDefault(fileUri, Collections.emptyList())
-      .stream()
-      .filter(i -> hasSameKey(d, i) || hasSameRuleKeyAndLocation(d, i))
-      .findFirst();
-  }
-
-  private static boolean hasSameKey(Diagnostic d, ServerIssue i) {
-    return d.getData() != null && d.getData().equals(i.key());
-  }
-
-  private static boolean hasSameRuleKeyAndLocation(Diagnostic d, ServerIssue i) {
-    return i.ruleKey().equals(d.getCode().getLeft()) && locationMatches(i, d);
+    return taintVulnerabilitiesCache.getTaintVulnerabilityForDiagnostic(fileUri, d);
   }
 
   Optional<ServerIssue> getTaintVulnerabilityByKey(String issueId) {
-    return taintVulnerabilitiesPerFile.values().stream()
-      .flatMap(List::stream)
-      .filter(i -> issueId.equals(i.key()))
-      .findFirst();
-  }
-
-  static boolean locationMatches(Issue i, Diagnostic d) {
-    return position(i).equals(d.getRange());
-  }
-
-  static boolean locationMatches(ServerIssue i, Diagnostic d) {
-    return position(i).equals(d.getRange());
+    return taintVulnerabilitiesCache.getTaintVulnerabilityByKey(issueId);
   }
 
   static class AnalysisResultsWrapper {
@@ -463,66 +659,119 @@ public class AnalysisManager implements WorkspaceSettingsChangeListener, Workspa
     }
   }
 
-  private AnalysisResultsWrapper analyzeStandalone(WorkspaceFolderSettings settings, URI baseDirUri, URI uri, String content, IssueListener issueListener,
-    Optional<GetJavaConfigResponse> javaConfigOpt) {
-    var baseDir = Paths.get(baseDirUri);
-    var configuration = StandaloneAnalysisConfiguration.builder()
-      .setBaseDir(baseDir)
-      .setModuleKey(baseDirUri)
-      .addInputFiles(new AnalysisClientInputFile(uri, getFileRelativePath(baseDir, uri), content, fileTypeClassifier.isTest(settings, uri, javaConfigOpt),
-        fileLanguageCache.getLanguageFor(uri)))
-      .putAllExtraProperties(settings.getAnalyzerProperties())
-      .putAllExtraProperties(configureJavaProperties(uri))
+  /**
+   * @return null if issues of a previous analysis with the same content and configuration have been reused for all files
+   */
+  @CheckForNull
+  private AnalysisResultsWrapper analyzeStandalone(List<FileToAnalyze> files, IssueListener issueListener, ProgressMonitor monitor) {
+    var engine = standaloneEngineManager.getOrCreateStandaloneEngine();
+    var allPlugins = engine.getPluginDetails();
+    analysisResultCache.usePlugins(allPlugins);
+    var filesToAnalyze = new ArrayList<FileToAnalyze>();
+    var cacheKeyPerFileURI = new HashMap<URI, String>();
+    for (var file : files) {
+      if (!AnalysisResultCache.supports(file.inputFile.language())) {
+        filesToAnalyze.add(file);
+        continue;
+      }
+      // Cache entries are per file, whether it was analyzed alone or with others
+      var cacheKey = AnalysisResultCache.keyOf(standaloneConfiguration(List.of(file)), allPlugins);
+      var cachedIssues = analysisResultCache.get(cacheKey, analysisResultCachePartition(file.uri), file.inputFile);
+      if (cachedIssues.isPresent()) {
+        LOG.info("Reusing issues of previous analysis of file '{}', content and configuration did not change", file.uri);
+        cachedIssues.get().forEach(issueListener::handle);
+      } else {
+        filesToAnalyze.add(file);
+        cacheKeyPerFileURI.put(file.uri, cacheKey);
+      }
+    }
+    if (filesToAnalyze.isEmpty()) {
+      return null;
+    }
+    var configuration = standaloneConfiguration(filesToAnalyze);
+    logAnalysisStart(filesToAnalyze);
+    LOG.debug("Analysis triggered with configuration: \n{}", configuration.toString());
+
+    var issuesPerFileURI = new HashMap<URI, List<Issue>>();
+    var results = analyzeWithTiming(() -> engine.analyze(configuration, issue -> {
+      var inputFile = issue.getInputFile();
+      if (inputFile != null) {
+        issuesPerFileURI.computeIfAbsent(inputFile.getClientObject(), k -> new ArrayList<>()).add(issue);
+      }
+      issueListener.handle(issue);
+    }, null, monitor),
+      allPlugins,
+      () -> {
+      });
+    var failedFiles = results.results.failedAnalysisFiles();
+    filesToAnalyze.stream()
+      .filter(file -> cacheKeyPerFileURI.containsKey(file.uri) && !failedFiles.contains(file.inputFile))
+      .forEach(file -> analysisResultCache.put(cacheKeyPerFileURI.get(file.uri), analysisResultCachePartition(file.uri), file.inputFile,
+        issuesPerFileURI.getOrDefault(file.uri, List.of())));
+    return results;
+  }
+
+  /**
+   * Results of Java files are grouped per project, to be invalidated on classpath update
+   */
+  @CheckForNull
+  private String analysisResultCachePartition(URI fileUri) {
+    return javaConfigCache.getProjectPath(fileUri).map(Path::toString).orElse(null);
+  }
+
+  private StandaloneAnalysisConfiguration standaloneConfiguration(List<FileToAnalyze> files) {
+    var first = files.get(0);
+    return StandaloneAnalysisConfiguration.builder()
+      .setBaseDir(Paths.get(first.baseDirUri))
+      .setModuleKey(first.baseDirUri)
+      .addInputFiles(files.stream().map(file -> file.inputFile).collect(Collectors.toList()))
+      .putAllExtraProperties(first.settings.getAnalyzerProperties())
+      .putAllExtraProperties(first.javaProperties)
       .addExcludedRules(settingsManager.getCurrentSettings().getExcludedRules())
       .addIncludedRules(settingsManager.getCurrentSettings().getIncludedRules())
       .addRuleParameters(settingsManager.getCurrentSettings().getRuleParameters())
       .build();
-    LOG.debug("Analysis triggered on '{}' with configuration: \n{}", uri, configuration.toString());
-
-    var engine = standaloneEngineManager.getOrCreateStandaloneEngine();
-    return analyzeWithTiming(() -> engine.analyze(configuration, issueListener, null, null),
-      engine.getPluginDetails(),
-      () -> {
-      });
   }
 
-  public AnalysisResultsWrapper analyzeConnected(ProjectBindingWrapper binding, WorkspaceFolderSettings settings, URI baseDirUri, URI uri, String content,
-    IssueListener issueListener, boolean shouldFetchServerIssues, Optional<GetJavaConfigResponse> javaConfig) {
-    var baseDir = Paths.get(baseDirUri);
+  private AnalysisResultsWrapper analyzeConnected(ProjectBindingWrapper binding, List<FileToAnalyze> files, IssueListener issueListener, ProgressMonitor monitor) {
+    var first = files.get(0);
+    var baseDir = Paths.get(first.baseDirUri);
     var configuration = ConnectedAnalysisConfiguration.builder()
-      .setProjectKey(settings.getProjectKey())
+      .setProjectKey(first.settings.getProjectKey())
       .setBaseDir(baseDir)
-      .setModuleKey(baseDirUri)
-      .addInputFile(
-        new AnalysisClientInputFile(uri, getFileRelativePath(baseDir, uri), content, fileTypeClassifier.isTest(settings, uri, javaConfig), fileLanguageCache.getLanguageFor(uri)))
-      .putAllExtraProperties(settings.getAnalyzerProperties())
-      .putAllExtraProperties(configureJavaProperties(uri))
+      .setModuleKey(first.baseDirUri)
+      .addInputFiles(files.stream().map(file -> file.inputFile).collect(Collectors.toList()))
+      .putAllExtraProperties(first.settings.getAnalyzerProperties())
+      .putAllExtraProperties(first.javaProperties)
       .build();
     if (settingsManager.getCurrentSettings().hasLocalRuleConfiguration()) {
       LOG.debug("Local rules settings are ignored, using quality profile from server");
     }
-    LOG.debug("Analysis triggered on '{}' with configuration: \n{}", uri, configuration.toString());
+    LOG.debug("Analysis triggered with configuration: \n{}", configuration.toString());
 
-    var issues = new LinkedList<Issue>();
+    var issuesPerFileURI = new HashMap<URI, List<Issue>>();
 
     var engine = binding.getEngine();
-    return analyzeWithTiming(() -> engine.analyze(configuration, issues::add, null, null),
+    return analyzeWithTiming(() -> engine.analyze(configuration, issue -> {
+      var inputFile = issue.getInputFile();
+      if (inputFile != null) {
+        issuesPerFileURI.computeIfAbsent(inputFile.getClientObject(), k -> new LinkedList<>()).add(issue);
+      }
+    }, null, monitor),
       engine.getPluginDetails(),
-      () -> {
-        var filePath = FileUtils.toSonarQubePath(getFileRelativePath(baseDir, uri));
+      () -> files.forEach(file -> {
+        // Server issues are tracked per file
+        var filePath = FileUtils.toSonarQubePath(getFileRelativePath(baseDir, file.uri));
         var serverIssueTracker = binding.getServerIssueTracker();
-        serverIssueTracker.matchAndTrack(filePath, issues, issueListener, shouldFetchServerIssues);
-        var serverIssues = engine.getServerIssues(binding.getBinding(), filePath);
-
-        taintVulnerabilitiesPerFile.put(uri, serverIssues.stream()
-          .filter(it -> it.ruleKey().contains(SECURITY_REPOSITORY_HINT))
-          .filter(it -> it.resolution().isEmpty())
-          .collect(Collectors.toList()));
-        int foundVulnerabilities = taintVulnerabilitiesPerFile.getOrDefault(uri, Collections.emptyList()).size();
+        serverIssueTracker.matchAndTrack(filePath, issuesPerFileURI.getOrDefault(file.uri, new LinkedList<>()), issueListener, file.shouldFetchServerIssues);
+        if (!file.shouldFetchServerIssues && !taintVulnerabilitiesCache.isOutdated(file.uri)) {
+          return;
+        }
+        var foundVulnerabilities = taintVulnerabilitiesCache.reload(file.uri, engine.getServerIssues(binding.getBinding(), filePath));
         if (foundVulnerabilities > 0) {
           LOG.info("Fetched {} {} from {}", foundVulnerabilities, pluralize(foundVulnerabilities, "vulnerability", "vulnerabilities"), binding.getConnectionId());
         }
-      });
+      }));
   }
 
   /**
@@ -610,7 +859,7 @@ public class AnalysisManager implements WorkspaceSettingsChangeListener, Workspa
         issue.getEndLineOffset()));
   }
 
-  private static Range position(ServerIssueLocation issue) {
+  static Range position(ServerIssueLocation issue) {
     return new Range(
       new Position(
         issue.getStartLine() - 1,
@@ -654,7 +903,7 @@ public class AnalysisManager implements WorkspaceSettingsChangeListener, Workspa
     var localDiagnostics = issuesPerIdPerFileURI.getOrDefault(newUri, Collections.emptyMap()).entrySet()
       .stream()
       .map(AnalysisManager::convert);
-    var taintDiagnostics = taintVulnerabilitiesPerFile.getOrDefault(newUri, Collections.emptyList())
+    var taintDiagnostics = taintVulnerabilitiesCache.getAsList(newUri)
       .stream()
       .map(AnalysisManager::convert);
 
@@ -672,24 +921,50 @@ public class AnalysisManager implements WorkspaceSettingsChangeListener, Workspa
       .thenComparing(Diagnostic::getMessage);
   }
 
-  public void initialize(Boolean firstSecretDetected) {
+  public void initialize(Boolean firstSecretDetected, @Nullable Integer analysisParallelism, boolean persistentAnalysisCache) {
     firstSecretIssueDetected = firstSecretDetected;
-    watcher.start();
+    if (analysisParallelism != null) {
+      analysisScheduler.setParallelism(analysisParallelism);
+    }
+    if (persistentAnalysisCache) {
+      analysisResultCache.enablePersistence(SonarLintPathManager.home().resolve("analysis-cache"));
+    }
   }
 
   public void shutdown() {
-    watcher.stopWatcher();
-    eventMap.clear();
-    analysisExecutor.shutdown();
+    debouncer.shutdown();
+    analysisScheduler.shutdown();
+    filesIgnoredByScmCache.shutdown();
   }
 
-  public void analyzeAllOpenFilesInFolder(@Nullable WorkspaceFolderWrapper folder) {
-    for (URI fileUri : fileContentPerFileURI.keySet()) {
-      var actualFolder = workspaceFoldersManager.findFolderForFile(fileUri);
-      if (actualFolder.map(f -> f.equals(folder)).orElse(folder == null)) {
-        analyzeAsync(fileUri, false);
+  /**
+   * Reload the taint vulnerabilities of the open files bound with this issue tracker, after the issues of the project were downloaded
+   */
+  public void reloadTaintVulnerabilities(ServerIssueTrackerWrapper issueTracker) {
+    var bindingPerFileURI = new HashMap<URI, ProjectBindingWrapper>();
+    documentStore.getOpenFileURIs().forEach(fileUri -> bindingManager.getBinding(fileUri)
+      .filter(binding -> binding.getServerIssueTracker() == issueTracker)
+      .ifPresent(binding -> bindingPerFileURI.put(fileUri, binding)));
+    // Next analyses will reload them if this fails
+    taintVulnerabilitiesCache.markOutdated(bindingPerFileURI.keySet());
+    bindingPerFileURI.forEach((fileUri, binding) -> {
+      var baseDir = workspaceFoldersManager.findFolderForFile(fileUri).map(WorkspaceFolderWrapper::getRootPath)
+        .orElse(Paths.get(fileUri).getParent());
+      var filePath = FileUtils.toSonarQubePath(getFileRelativePath(baseDir, fileUri));
+      taintVulnerabilitiesCache.reload(fileUri, binding.getEngine().getServerIssues(binding.getBinding(), filePath));
+      if (documentStore.isOpen(fileUri)) {
+        client.publishDiagnostics(newPublishDiagnostics(fileUri));
       }
-    }
+    });
+  }
+
+  public void analyzeAllOpenFilesInFolder(@Nullable WorkspaceFolderWrapper folder) {
+    var openFileUris = documentStore.getOpenFileURIs().stream()
+      .filter(fileUri -> workspaceFoldersManager.findFolderForFile(fileUri).map(f -> f.equals(folder)).orElse(folder == null))
+      .collect(Collectors.toList());
+    // Called after binding or storage changes
+    taintVulnerabilitiesCache.markOutdated(openFileUris);
+    analyzeAsync(openFileUris, false, Priority.BULK);
   }
 
   @Override
@@ -705,58 +980,21 @@ public class AnalysisManager implements WorkspaceSettingsChangeListener, Workspa
   }
 
   private void analyzeAllUnboundOpenFiles() {
-    for (var fileUri : fileContentPerFileURI.keySet()) {
-      if (bindingManager.getBinding(fileUri).isEmpty()) {
-        analyzeAsync(fileUri, false);
-      }
-    }
+    analyzeAsync(documentStore.getOpenFileURIs().stream()
+      .filter(fileUri -> bindingManager.getBinding(fileUri).isEmpty())
+      .collect(Collectors.toList()), false, Priority.BULK);
   }
 
   private void analyzeAllOpenJavaFiles() {
-    for (var fileUri : fileContentPerFileURI.keySet()) {
-      if (fileLanguageCache.isJava(fileUri)) {
-        analyzeAsync(fileUri, false);
-      }
-    }
-  }
-
-  private Map<String, String> configureJavaProperties(URI fileUri) {
-    return javaConfigCache.get(fileUri).map(cachedJavaConfig -> {
-      Map<String, String> props = new HashMap<>();
-      var vmLocationStr = cachedJavaConfig.getVmLocation();
-      List<Path> jdkClassesRoots = new ArrayList<>();
-      if (vmLocationStr != null) {
-        var vmLocation = Paths.get(vmLocationStr);
-        jdkClassesRoots = getVmClasspathFromCacheOrCompute(vmLocation);
-        props.put("sonar.java.jdkHome", vmLocationStr);
-      }
-      var classpath = Stream.concat(
-        jdkClassesRoots.stream().map(Path::toAbsolutePath).map(Path::toString),
-        Stream.of(cachedJavaConfig.getClasspath()))
-        .filter(path -> {
-          boolean exists = new File(path).exists();
-          if (!exists) {
-            LOG.debug(String.format("Classpath '%s' from configuration does not exist, skipped", path));
-          }
-          return exists;
-        })
-        .collect(joining(","));
-      props.put("sonar.java.source", cachedJavaConfig.getSourceLevel());
-      if (!cachedJavaConfig.isTest()) {
-        props.put("sonar.java.libraries", classpath);
-      } else {
-        props.put("sonar.java.test.libraries", classpath);
-      }
-      return props;
-    }).orElse(emptyMap());
-  }
-
-  private List<Path> getVmClasspathFromCacheOrCompute(Path vmLocation) {
-    return jvmClasspathPerJavaHome.computeIfAbsent(vmLocation, JavaSdkUtil::getJdkClassesRoots);
+    analyzeAsync(documentStore.getOpenFileURIs().stream()
+      .filter(fileLanguageCache::isJava)
+      .collect(Collectors.toList()), false, Priority.BACKGROUND);
   }
 
   public void didClasspathUpdate(URI projectUri) {
     javaConfigCache.clear(projectUri);
+    // Content of the libraries may have changed without their path changing
+    analysisResultCache.clear(Paths.get(projectUri).toString());
     analyzeAllOpenJavaFiles();
   }
 
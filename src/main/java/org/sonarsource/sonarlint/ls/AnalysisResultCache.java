@@ -0,0 +1,262 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonarsource.sonarlint.core.client.api.common.Language;
+import org.sonarsource.sonarlint.core.client.api.common.PluginDetails;
+import org.sonarsource.sonarlint.core.client.api.common.RuleKey;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+import org.sonarsource.sonarlint.core.client.api.standalone.StandaloneAnalysisConfiguration;
+
+/**
+ * Issues found by the last standalone analyses, indexed by a fingerprint of everything that can influence the result:
+ * content of the analyzed file, language, analysis properties (including Java classpath), rule configuration and
+ * loaded plugins. Issues are kept in memory in their stored form, detached from the analyzed file, and least recently used
+ * entries are evicted when the total size is too big. Entries can also be persisted on disk to survive restarts.
+ * Languages whose analysis depends on other files than the analyzed one, that are not part of the key, are not cached.
+ * Entries belong to an optional partition (e.g. the Java project of the analyzed file), that can be invalidated as a whole.
+ */
+class AnalysisResultCache {
+
+  private static final Logger LOG = Loggers.get(AnalysisResultCache.class);
+
+  static final long DEFAULT_MAX_WEIGHT = 32L * 1024 * 1024;
+  private static final char SEPARATOR = '\0';
+  // Results depend on the TypeScript configuration and on imported files
+  private static final Set<Language> UNSUPPORTED_LANGUAGES = Set.of(Language.JS, Language.TS);
+
+  private final long maxWeight;
+  private final Map<String, Entry> entriesPerKey = new LinkedHashMap<>(16, 0.75f, true);
+  private long weight;
+  @CheckForNull
+  private volatile PersistentAnalysisResultCache persistentCache;
+
+  AnalysisResultCache() {
+    this(DEFAULT_MAX_WEIGHT);
+  }
+
+  // Visible for testing
+  AnalysisResultCache(long maxWeight) {
+    this.maxWeight = maxWeight;
+  }
+
+  void enablePersistence(Path storageRoot) {
+    LOG.debug("Storing analysis results in '{}'", storageRoot);
+    persistentCache = new PersistentAnalysisResultCache(storageRoot);
+  }
+
+  // Visible for testing
+  void enablePersistence(PersistentAnalysisResultCache persistentCache) {
+    this.persistentCache = persistentCache;
+  }
+
+  /**
+   * Persisted results are stored separately for each set of loaded plugins.
+   */
+  void usePlugins(Collection<PluginDetails> plugins) {
+    var persistent = persistentCache;
+    if (persistent != null) {
+      persistent.usePlugins(plugins);
+    }
+  }
+
+  static boolean supports(@Nullable Language language) {
+    return language == null || !UNSUPPORTED_LANGUAGES.contains(language);
+  }
+
+  static String keyOf(StandaloneAnalysisConfiguration configuration, Collection<PluginDetails> plugins) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    var description = new StringBuilder();
+    for (var inputFile : configuration.inputFiles()) {
+      append(description, inputFile.uri(), inputFile.relativePath(), inputFile.isTest(), inputFile.language(), inputFile.getCharset());
+      try (var content = inputFile.inputStream()) {
+        var buffer = new byte[8192];
+        int read;
+        while ((read = content.read(buffer)) != -1) {
+          digest.update(buffer, 0, read);
+        }
+      } catch (IOException e) {
+        throw new IllegalStateException("Unable to read content of " + inputFile.uri(), e);
+      }
+    }
+    append(description, configuration.baseDir(), new TreeMap<>(configuration.extraProperties()));
+    append(description, sortedRuleKeys(configuration.excludedRules()), sortedRuleKeys(configuration.includedRules()));
+    configuration.ruleParameters().entrySet().stream()
+      .sorted(Comparator.comparing(e -> e.getKey().toString()))
+      .forEach(e -> append(description, e.getKey(), new TreeMap<>(e.getValue())));
+    plugins.stream()
+      .sorted(Comparator.comparing(PluginDetails::key))
+      .forEach(p -> append(description, p.key(), p.version(), p.skipReason().isPresent()));
+    digest.update(description.toString().getBytes(StandardCharsets.UTF_8));
+    return toHex(digest.digest());
+  }
+
+  private static List<String> sortedRuleKeys(Collection<RuleKey> ruleKeys) {
+    return ruleKeys.stream().map(RuleKey::toString).sorted().collect(Collectors.toList());
+  }
+
+  private static void append(StringBuilder description, Object... values) {
+    for (var value : values) {
+      description.append(value).append(SEPARATOR);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    var hex = new StringBuilder(bytes.length * 2);
+    for (var b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+
+  /**
+   * @param partition partition of the entry, or null if it does not belong to any
+   * @param analyzedFile input file of the current analysis, that cached issues will be attached to
+   */
+  Optional<List<Issue>> get(String key, @Nullable String partition, ClientInputFile analyzedFile) {
+    var issues = getFromMemory(key, analyzedFile);
+    var persistent = persistentCache;
+    if (issues.isEmpty() && persistent != null) {
+      issues = persistent.get(key, partition, analyzedFile);
+      issues.ifPresent(i -> putInMemory(key, partition, analyzedFile, i));
+    }
+    return issues;
+  }
+
+  /**
+   * @param partition partition of the entry, or null if it does not belong to any
+   */
+  void put(String key, @Nullable String partition, ClientInputFile analyzedFile, Collection<Issue> issues) {
+    putInMemory(key, partition, analyzedFile, issues);
+    var persistent = persistentCache;
+    if (persistent != null) {
+      persistent.put(key, partition, analyzedFile, issues);
+    }
+  }
+
+  private Optional<List<Issue>> getFromMemory(String key, ClientInputFile analyzedFile) {
+    Entry entry;
+    synchronized (this) {
+      entry = entriesPerKey.get(key);
+    }
+    if (entry == null) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(PersistentAnalysisResultCache.fromBytes(entry.issues, analyzedFile));
+    } catch (IOException e) {
+      LOG.debug("Unable to read cached analysis result", e);
+      return Optional.empty();
+    }
+  }
+
+  private void putInMemory(String key, @Nullable String partition, ClientInputFile analyzedFile, Collection<Issue> issues) {
+    if (!PersistentAnalysisResultCache.isStorable(analyzedFile, issues)) {
+      return;
+    }
+    byte[] storedIssues;
+    try {
+      storedIssues = PersistentAnalysisResultCache.toBytes(analyzedFile, issues);
+    } catch (IOException e) {
+      LOG.debug("Unable to cache analysis result", e);
+      return;
+    }
+    var entry = new Entry(partition, storedIssues);
+    if (entry.weight > maxWeight) {
+      return;
+    }
+    synchronized (this) {
+      var previous = entriesPerKey.put(key, entry);
+      if (previous != null) {
+        weight -= previous.weight;
+      }
+      weight += entry.weight;
+      var it = entriesPerKey.values().iterator();
+      while (weight > maxWeight && it.hasNext()) {
+        weight -= it.next().weight;
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * Drop the entries of the given partition, in memory and on disk
+   */
+  synchronized void clear(String partition) {
+    LOG.debug("Clearing cache of analysis results of '{}'", partition);
+    var it = entriesPerKey.values().iterator();
+    while (it.hasNext()) {
+      var entry = it.next();
+      if (partition.equals(entry.partition)) {
+        weight -= entry.weight;
+        it.remove();
+      }
+    }
+    var persistent = persistentCache;
+    if (persistent != null) {
+      persistent.clear(partition);
+    }
+  }
+
+  // Visible for testing
+  synchronized int size() {
+    return entriesPerKey.size();
+  }
+
+  private static class Entry {
+    // Key, references and array header
+    private static final int OVERHEAD = 100;
+
+    @CheckForNull
+    private final String partition;
+    private final byte[] issues;
+    private final long weight;
+
+    private Entry(@Nullable String partition, byte[] issues) {
+      this.partition = partition;
+      this.issues = issues;
+      this.weight = (long) issues.length + OVERHEAD;
+    }
+  }
+}
@@ -0,0 +1,287 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Run analysis related tasks on a bounded pool of workers.
+ * <ul>
+ *   <li>tasks submitted for the same file are executed one after the other, in submission order. A task working on several files
+ *   waits for the tasks submitted before for any of these files</li>
+ *   <li>tasks submitted for a workspace folder (module declaration, ...) are executed one after the other, once the tasks submitted
+ *   before for files of this folder are completed, and block the tasks submitted later for files of this folder until they are completed</li>
+ *   <li>other tasks are executed concurrently, up to the configured parallelism</li>
+ *   <li>when more tasks could be started than allowed, those with the highest {@link Priority} are started first</li>
+ * </ul>
+ */
+public class AnalysisScheduler {
+
+  private static final Logger LOG = Loggers.get(AnalysisScheduler.class);
+
+  /**
+   * From highest to lowest
+   */
+  public enum Priority {
+    /**
+     * Files being edited or saved by the user
+     */
+    EDIT,
+    /**
+     * Files just opened, or focused by the user
+     */
+    OPEN,
+    /**
+     * Re-analysis of all open files, following a change of settings or binding
+     */
+    BULK,
+    /**
+     * Re-analysis of open files not triggered by the user, e.g. following a change of the build configuration
+     */
+    BACKGROUND
+  }
+
+  static final int DEFAULT_PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+  private final ExecutorService workers;
+  // Tasks waiting for their prerequisites, not yet pending
+  private final List<Task> preparingTasks = new LinkedList<>();
+  private final List<Task> pendingTasks = new LinkedList<>();
+  private final Set<URI> runningKeys = new HashSet<>();
+  private final Map<URI, Integer> runningTaskCountPerFolderKey = new HashMap<>();
+  private int runningTaskCount;
+  private int parallelism;
+  private boolean shutdown;
+
+  public AnalysisScheduler() {
+    this(DEFAULT_PARALLELISM, Executors.newCachedThreadPool(Utils.threadFactory("SonarLint analysis", false)));
+  }
+
+  // Visible for testing
+  AnalysisScheduler(int parallelism, ExecutorService workers) {
+    this.parallelism = parallelism;
+    this.workers = workers;
+  }
+
+  public synchronized void setParallelism(int parallelism) {
+    if (parallelism < 1) {
+      LOG.warn("Analysis parallelism should be strictly positive, was: {}. Using 1 instead.", parallelism);
+      parallelism = 1;
+    }
+    LOG.debug("Using up to {} analysis {}", parallelism, Utils.pluralize(parallelism, "worker"));
+    this.parallelism = parallelism;
+    dispatch();
+  }
+
+  synchronized int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * @param fileUri the file this task is working on
+   * @param folderUri the workspace folder containing the file, if any
+   */
+  public void submit(URI fileUri, @Nullable URI folderUri, Priority priority, Runnable task) {
+    submit(List.of(fileUri), folderUri, priority, task);
+  }
+
+  /**
+   * @param fileUris the files this task is working on
+   * @param folderUri the workspace folder containing the files, if any
+   */
+  public void submit(Collection<URI> fileUris, @Nullable URI folderUri, Priority priority, Runnable task) {
+    enqueue(new Task(fileUris, folderUri, false, priority, task));
+  }
+
+  /**
+   * Same as {@link #submit(Collection, URI, Priority, Runnable)}, once the prerequisites of the task are completed. The priority of the
+   * task can already be raised while waiting for them.
+   */
+  public void submitWhenReady(CompletableFuture<?> prerequisites, Collection<URI> fileUris, @Nullable URI folderUri, Priority priority, Runnable task) {
+    var preparingTask = new Task(fileUris, folderUri, false, priority, task);
+    synchronized (this) {
+      preparingTasks.add(preparingTask);
+    }
+    prerequisites.whenComplete((result, error) -> {
+      synchronized (this) {
+        if (preparingTasks.remove(preparingTask)) {
+          enqueue(preparingTask);
+        }
+      }
+    });
+  }
+
+  /**
+   * Folder tasks are blocking analysis of the files of this folder, so they are always started first
+   */
+  public void submitFolderTask(URI folderUri, Runnable task) {
+    enqueue(new Task(List.of(folderUri), null, true, Priority.EDIT, task));
+  }
+
+  /**
+   * Raise the priority of the pending or preparing tasks for this file, if lower than the given one
+   */
+  public synchronized void raisePriority(URI fileUri, Priority priority) {
+    Stream.concat(preparingTasks.stream(), pendingTasks.stream())
+      .filter(task -> task.keys.contains(fileUri) && task.priority.compareTo(priority) > 0)
+      .forEach(task -> task.priority = priority);
+  }
+
+  private synchronized void enqueue(Task task) {
+    if (shutdown) {
+      LOG.debug("Analysis scheduler is stopped, ignoring task for {}", task.keys);
+      return;
+    }
+    pendingTasks.add(task);
+    dispatch();
+  }
+
+  /**
+   * Start as many pending tasks as allowed, by priority then in submission order. A pending task can be started only if no task
+   * for the same key (or for its folder) is running or was submitted before it. A folder task can be started only if no task for
+   * a file of this folder is running or was submitted before it.
+   */
+  private void dispatch() {
+    if (runningTaskCount >= parallelism) {
+      return;
+    }
+    inheritPriorities();
+    var blockedKeys = new HashSet<>(runningKeys);
+    var busyFolderKeys = new HashSet<>(runningTaskCountPerFolderKey.keySet());
+    var startableTasks = new ArrayList<Task>();
+    for (var task : pendingTasks) {
+      if (task.keys.stream().noneMatch(blockedKeys::contains) && (task.folderKey == null || !blockedKeys.contains(task.folderKey))
+        && (!task.folderTask || task.keys.stream().noneMatch(busyFolderKeys::contains))) {
+        startableTasks.add(task);
+      }
+      blockedKeys.addAll(task.keys);
+      if (task.folderKey != null) {
+        busyFolderKeys.add(task.folderKey);
+      }
+    }
+    // Sort is stable, submission order is kept for tasks of the same priority
+    startableTasks.sort(Comparator.comparing(task -> task.priority));
+    for (var task : startableTasks) {
+      if (runningTaskCount >= parallelism) {
+        break;
+      }
+      pendingTasks.remove(task);
+      runningKeys.addAll(task.keys);
+      if (task.folderKey != null) {
+        runningTaskCountPerFolderKey.merge(task.folderKey, 1, Integer::sum);
+      }
+      runningTaskCount++;
+      workers.execute(() -> run(task));
+    }
+  }
+
+  /**
+   * A pending task inherits the priority of the tasks submitted after it for the same keys (or for its folder), since they cannot
+   * start before it
+   */
+  private void inheritPriorities() {
+    var requiredPriorityPerKey = new HashMap<URI, Priority>();
+    var requiredPriorityPerFolderKey = new HashMap<URI, Priority>();
+    var it = pendingTasks.listIterator(pendingTasks.size());
+    while (it.hasPrevious()) {
+      var task = it.previous();
+      for (var key : task.keys) {
+        var required = requiredPriorityPerKey.get(key);
+        if (required != null) {
+          task.priority = highest(task.priority, required);
+        }
+      }
+      if (task.folderKey != null && requiredPriorityPerFolderKey.containsKey(task.folderKey)) {
+        task.priority = highest(task.priority, requiredPriorityPerFolderKey.get(task.folderKey));
+      }
+      if (task.folderTask) {
+        task.keys.forEach(key -> requiredPriorityPerFolderKey.merge(key, task.priority, AnalysisScheduler::highest));
+      }
+      task.keys.forEach(key -> requiredPriorityPerKey.merge(key, task.priority, AnalysisScheduler::highest));
+      if (task.folderKey != null) {
+        requiredPriorityPerKey.merge(task.folderKey, task.priority, AnalysisScheduler::highest);
+      }
+    }
+  }
+
+  private static Priority highest(Priority p1, Priority p2) {
+    return p1.compareTo(p2) <= 0 ? p1 : p2;
+  }
+
+  private void run(Task task) {
+    try {
+      task.runnable.run();
+    } catch (Exception e) {
+      LOG.error("Analysis task failed for " + task.keys, e);
+    } finally {
+      synchronized (this) {
+        runningKeys.removeAll(task.keys);
+        if (task.folderKey != null) {
+          runningTaskCountPerFolderKey.computeIfPresent(task.folderKey, (k, count) -> count > 1 ? (count - 1) : null);
+        }
+        runningTaskCount--;
+        if (!shutdown) {
+          dispatch();
+        }
+      }
+    }
+  }
+
+  public synchronized void shutdown() {
+    shutdown = true;
+    preparingTasks.clear();
+    pendingTasks.clear();
+    workers.shutdown();
+  }
+
+  private static class Task {
+    private final Collection<URI> keys;
+    @CheckForNull
+    private final URI folderKey;
+    private final boolean folderTask;
+    private final Runnable runnable;
+    private Priority priority;
+
+    private Task(Collection<URI> keys, @Nullable URI folderKey, boolean folderTask, Priority priority, Runnable runnable) {
+      this.keys = keys;
+      this.folderKey = folderKey;
+      this.folderTask = folderTask;
+      this.priority = priority;
+      this.runnable = runnable;
+    }
+  }
+}
@@ -0,0 +1,636 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonarsource.sonarlint.core.client.api.common.ClientInputFileEdit;
+import org.sonarsource.sonarlint.core.client.api.common.PluginDetails;
+import org.sonarsource.sonarlint.core.client.api.common.QuickFix;
+import org.sonarsource.sonarlint.core.client.api.common.TextEdit;
+import org.sonarsource.sonarlint.core.client.api.common.TextRange;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueLocation;
+import org.sonarsource.sonarlint.core.client.api.util.FileUtils;
+
+/**
+ * Store issues of standalone analyses on disk, so that they survive restarts of the language server.
+ * There is one small binary file per analysis, named after the key computed by {@link AnalysisResultCache#keyOf}.
+ * Entries are stored in a directory per set of loaded plugins, that several language servers can share. Each process holds a
+ * shared lock on the directory it uses, and directories are only deleted when unused for a while and not locked.
+ * Inside it, entries are grouped by partition, so that a subset of them can be dropped, e.g. on classpath update of a Java project.
+ */
+class PersistentAnalysisResultCache {
+
+  private static final Logger LOG = Loggers.get(PersistentAnalysisResultCache.class);
+
+  // Increment when changing the content or layout of the files
+  static final int FORMAT_VERSION = 2;
+  static final int DEFAULT_MAX_ENTRIES = 5000;
+  static final Duration UNUSED_DIRECTORY_RETENTION = Duration.ofDays(7);
+  private static final String ENTRY_EXTENSION = ".bin";
+  private static final String LOCK_FILE = "lock";
+  private static final String DEFAULT_PARTITION = "default";
+
+  private static final byte NO_INPUT_FILE = 0;
+  private static final byte ANALYZED_INPUT_FILE = 1;
+
+  private final Path versionDir;
+  private final int maxEntries;
+  private final AtomicInteger entryCount = new AtomicInteger();
+  @CheckForNull
+  private volatile Path pluginsDir;
+  @CheckForNull
+  private String pluginsFingerprint;
+  @CheckForNull
+  private FileChannel lockChannel;
+
+  PersistentAnalysisResultCache(Path storageRoot) {
+    this(storageRoot, DEFAULT_MAX_ENTRIES);
+  }
+
+  // Visible for testing
+  PersistentAnalysisResultCache(Path storageRoot, int maxEntries) {
+    this.versionDir = storageRoot.resolve("v" + FORMAT_VERSION);
+    this.maxEntries = maxEntries;
+    deleteUnusedDirectories(storageRoot, versionDir, false);
+  }
+
+  /**
+   * Use the entries stored for these plugins, other entries are kept for the language servers using them.
+   */
+  synchronized void usePlugins(Collection<PluginDetails> plugins) {
+    var fingerprint = plugins.stream()
+      .map(p -> p.key() + ":" + p.version() + ":" + p.skipReason().isPresent())
+      .sorted()
+      .collect(Collectors.joining(","));
+    if (fingerprint.equals(pluginsFingerprint)) {
+      return;
+    }
+    releaseLock();
+    pluginsFingerprint = fingerprint;
+    var dir = versionDir.resolve(UUID.nameUUIDFromBytes(fingerprint.getBytes(StandardCharsets.UTF_8)).toString());
+    pluginsDir = lock(dir) ? dir : null;
+    entryCount.set(listEntries().size());
+    prune();
+    deleteUnusedDirectories(versionDir, dir, true);
+  }
+
+  private boolean lock(Path dir) {
+    try {
+      FileUtils.mkdirs(dir);
+      var lockFile = dir.resolve(LOCK_FILE);
+      var channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      try {
+        if (channel.tryLock(0, Long.MAX_VALUE, true) == null) {
+          // Being deleted by another process
+          channel.close();
+          return false;
+        }
+        lockChannel = channel;
+      } catch (OverlappingFileLockException e) {
+        // Already locked by another cache of this JVM
+        channel.close();
+      }
+      Files.setLastModifiedTime(lockFile, FileTime.fromMillis(System.currentTimeMillis()));
+      return true;
+    } catch (Exception e) {
+      LOG.debug("Unable to initialize analysis cache in '{}'", dir, e);
+      return false;
+    }
+  }
+
+  private void releaseLock() {
+    if (lockChannel != null) {
+      try {
+        lockChannel.close();
+      } catch (IOException e) {
+        LOG.debug("Unable to release lock of analysis cache", e);
+      }
+      lockChannel = null;
+    }
+  }
+
+  /**
+   * Delete the sub-directories of the parent not used for some time. If they are lockable, only those not locked by a process.
+   */
+  private static void deleteUnusedDirectories(Path parent, Path usedDir, boolean lockable) {
+    if (!Files.isDirectory(parent)) {
+      return;
+    }
+    var unusedSince = System.currentTimeMillis() - UNUSED_DIRECTORY_RETENTION.toMillis();
+    try (var dirs = Files.list(parent)) {
+      dirs.filter(d -> !d.equals(usedDir) && Files.isDirectory(d) && lastUsed(d) < unusedSince)
+        .forEach(d -> {
+          if (lockable) {
+            deleteIfNotLocked(d);
+          } else {
+            FileUtils.deleteRecursively(d);
+          }
+        });
+    } catch (Exception e) {
+      LOG.debug("Unable to clean analysis cache in '{}'", parent, e);
+    }
+  }
+
+  private static void deleteIfNotLocked(Path dir) {
+    try (var channel = FileChannel.open(dir.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      var lock = channel.tryLock()) {
+      if (lock == null) {
+        return;
+      }
+      try (var files = Files.list(dir)) {
+        files.filter(f -> !f.getFileName().toString().equals(LOCK_FILE)).forEach(FileUtils::deleteRecursively);
+      }
+    } catch (OverlappingFileLockException e) {
+      // Used by this JVM
+      return;
+    } catch (Exception e) {
+      LOG.debug("Unable to delete analysis cache directory '{}'", dir, e);
+      return;
+    }
+    FileUtils.deleteRecursively(dir);
+  }
+
+  /**
+   * @return the most recent modification time of the directory, its children and grand children
+   */
+  private static long lastUsed(Path dir) {
+    try (var files = Files.walk(dir, 2)) {
+      return files.mapToLong(PersistentAnalysisResultCache::lastModified).max().orElse(0);
+    } catch (Exception e) {
+      return Long.MAX_VALUE;
+    }
+  }
+
+  Optional<List<Issue>> get(String key, @Nullable String partition, ClientInputFile analyzedFile) {
+    var entry = entryPath(key, partition);
+    if (entry == null || !Files.exists(entry)) {
+      return Optional.empty();
+    }
+    try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+      var issues = readIssues(input, analyzedFile);
+      // Least recently used entries are removed first
+      Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+      return Optional.of(issues);
+    } catch (Exception e) {
+      LOG.debug("Unable to read analysis cache entry '{}'", entry, e);
+      delete(entry);
+      return Optional.empty();
+    }
+  }
+
+  synchronized void put(String key, @Nullable String partition, ClientInputFile analyzedFile, Collection<Issue> issues) {
+    var entry = entryPath(key, partition);
+    if (entry == null || !isStorable(analyzedFile, issues)) {
+      return;
+    }
+    Path tempFile = null;
+    try {
+      FileUtils.mkdirs(entry.getParent());
+      var isNew = !Files.exists(entry);
+      // Write to a temporary file first, so that a crash never leaves a partially written entry
+      tempFile = Files.createTempFile(entry.getParent(), key, ".tmp");
+      try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+        writeIssues(output, analyzedFile, issues);
+      }
+      Files.move(tempFile, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      if (isNew && entryCount.incrementAndGet() > maxEntries) {
+        prune();
+      }
+    } catch (Exception e) {
+      LOG.debug("Unable to write analysis cache entry '{}'", entry, e);
+      if (tempFile != null) {
+        delete(tempFile);
+      }
+    }
+  }
+
+  /**
+   * Drop the entries of the given partition
+   */
+  synchronized void clear(String partition) {
+    var dir = pluginsDir;
+    if (dir == null) {
+      return;
+    }
+    FileUtils.deleteRecursively(dir.resolve(partitionDirName(partition)));
+    entryCount.set(listEntries().size());
+  }
+
+  @CheckForNull
+  private Path entryPath(String key, @Nullable String partition) {
+    var dir = pluginsDir;
+    if (dir == null) {
+      return null;
+    }
+    return dir.resolve(partitionDirName(partition)).resolve(key.substring(0, 2)).resolve(key + ENTRY_EXTENSION);
+  }
+
+  private static String partitionDirName(@Nullable String partition) {
+    return partition == null ? DEFAULT_PARTITION : UUID.nameUUIDFromBytes(partition.getBytes(StandardCharsets.UTF_8)).toString();
+  }
+
+  private List<Path> listEntries() {
+    var dir = pluginsDir;
+    if (dir == null || !Files.isDirectory(dir)) {
+      return List.of();
+    }
+    try (var files = Files.walk(dir, 3)) {
+      return files.filter(f -> f.getFileName().toString().endsWith(ENTRY_EXTENSION)).collect(Collectors.toList());
+    } catch (Exception e) {
+      LOG.debug("Unable to list analysis cache entries in '{}'", dir, e);
+      return List.of();
+    }
+  }
+
+  /**
+   * Remove the least recently used entries, keeping 90% of the maximum number of entries.
+   */
+  private synchronized void prune() {
+    if (entryCount.get() <= maxEntries) {
+      return;
+    }
+    var entries = listEntries();
+    var toRemove = entries.size() - (maxEntries - maxEntries / 10);
+    entries.stream()
+      .sorted(Comparator.comparing(PersistentAnalysisResultCache::lastModified))
+      .limit(Math.max(0, toRemove))
+      .forEach(PersistentAnalysisResultCache::delete);
+    entryCount.set(listEntries().size());
+  }
+
+  private static long lastModified(Path file) {
+    try {
+      return Files.getLastModifiedTime(file).toMillis();
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  private static void delete(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      LOG.debug("Unable to delete '{}'", file, e);
+    }
+  }
+
+  /**
+   * Standalone analyses only report locations in the analyzed file, other issues are not persisted.
+   */
+  static boolean isStorable(ClientInputFile analyzedFile, Collection<Issue> issues) {
+    return issues.stream().allMatch(issue -> isStorable(analyzedFile, issue.getInputFile())
+      && issue.flows().stream().flatMap(f -> f.locations().stream()).allMatch(l -> isStorable(analyzedFile, l.getInputFile()))
+      && issue.quickFixes().stream().flatMap(q -> q.inputFileEdits().stream()).allMatch(e -> e.target() == analyzedFile));
+  }
+
+  private static boolean isStorable(ClientInputFile analyzedFile, @Nullable ClientInputFile inputFile) {
+    return inputFile == null || inputFile == analyzedFile;
+  }
+
+  /**
+   * @return the stored form of the issues, that does not reference the analyzed file
+   */
+  static byte[] toBytes(ClientInputFile analyzedFile, Collection<Issue> issues) throws IOException {
+    var bytes = new ByteArrayOutputStream();
+    try (var output = new DataOutputStream(bytes)) {
+      writeIssues(output, analyzedFile, issues);
+    }
+    return bytes.toByteArray();
+  }
+
+  static List<Issue> fromBytes(byte[] bytes, ClientInputFile analyzedFile) throws IOException {
+    try (var input = new DataInputStream(new ByteArrayInputStream(bytes))) {
+      return readIssues(input, analyzedFile);
+    }
+  }
+
+  private static void writeIssues(DataOutputStream output, ClientInputFile analyzedFile, Collection<Issue> issues) throws IOException {
+    output.writeInt(issues.size());
+    for (var issue : issues) {
+      output.writeUTF(issue.getSeverity());
+      writeNullableString(output, issue.getType());
+      output.writeUTF(issue.getRuleKey());
+      output.writeUTF(issue.getRuleName());
+      writeLocation(output, analyzedFile, issue);
+      output.writeInt(issue.flows().size());
+      for (var flow : issue.flows()) {
+        output.writeInt(flow.locations().size());
+        for (var location : flow.locations()) {
+          writeLocation(output, analyzedFile, location);
+        }
+      }
+      output.writeInt(issue.quickFixes().size());
+      for (var quickFix : issue.quickFixes()) {
+        output.writeUTF(quickFix.message());
+        output.writeInt(quickFix.inputFileEdits().size());
+        for (var fileEdit : quickFix.inputFileEdits()) {
+          output.writeInt(fileEdit.textEdits().size());
+          for (var textEdit : fileEdit.textEdits()) {
+            writeTextRange(output, textEdit.range());
+            output.writeUTF(textEdit.newText());
+          }
+        }
+      }
+    }
+  }
+
+  private static List<Issue> readIssues(DataInputStream input, ClientInputFile analyzedFile) throws IOException {
+    var issueCount = input.readInt();
+    var issues = new ArrayList<Issue>(issueCount);
+    for (var i = 0; i < issueCount; i++) {
+      var severity = input.readUTF();
+      var type = readNullableString(input);
+      var ruleKey = input.readUTF();
+      var ruleName = input.readUTF();
+      var location = readLocation(input, analyzedFile);
+      var flowCount = input.readInt();
+      var flows = new ArrayList<Issue.Flow>(flowCount);
+      for (var f = 0; f < flowCount; f++) {
+        var locationCount = input.readInt();
+        var locations = new ArrayList<IssueLocation>(locationCount);
+        for (var l = 0; l < locationCount; l++) {
+          locations.add(readLocation(input, analyzedFile));
+        }
+        flows.add(() -> locations);
+      }
+      var quickFixCount = input.readInt();
+      var quickFixes = new ArrayList<QuickFix>(quickFixCount);
+      for (var q = 0; q < quickFixCount; q++) {
+        var message = input.readUTF();
+        var fileEditCount = input.readInt();
+        var fileEdits = new ArrayList<ClientInputFileEdit>(fileEditCount);
+        for (var e = 0; e < fileEditCount; e++) {
+          var textEditCount = input.readInt();
+          var textEdits = new ArrayList<TextEdit>(textEditCount);
+          for (var t = 0; t < textEditCount; t++) {
+            textEdits.add(new StoredTextEdit(readTextRange(input), input.readUTF()));
+          }
+          fileEdits.add(new StoredInputFileEdit(analyzedFile, textEdits));
+        }
+        quickFixes.add(new StoredQuickFix(message, fileEdits));
+      }
+      issues.add(new StoredIssue(severity, type, ruleKey, ruleName, location, flows, quickFixes));
+    }
+    return issues;
+  }
+
+  private static void writeLocation(DataOutputStream output, ClientInputFile analyzedFile, IssueLocation location) throws IOException {
+    output.writeByte(location.getInputFile() == analyzedFile ? ANALYZED_INPUT_FILE : NO_INPUT_FILE);
+    writeNullableString(output, location.getMessage());
+    writeTextRange(output, location.getTextRange());
+  }
+
+  private static IssueLocation readLocation(DataInputStream input, ClientInputFile analyzedFile) throws IOException {
+    var inputFile = input.readByte() == ANALYZED_INPUT_FILE ? analyzedFile : null;
+    var message = readNullableString(input);
+    var textRange = readTextRange(input);
+    return new StoredLocation(inputFile, message, textRange);
+  }
+
+  private static void writeTextRange(DataOutputStream output, @Nullable TextRange textRange) throws IOException {
+    output.writeBoolean(textRange != null);
+    if (textRange != null) {
+      writeNullableInt(output, textRange.getStartLine());
+      writeNullableInt(output, textRange.getStartLineOffset());
+      writeNullableInt(output, textRange.getEndLine());
+      writeNullableInt(output, textRange.getEndLineOffset());
+    }
+  }
+
+  @CheckForNull
+  private static TextRange readTextRange(DataInputStream input) throws IOException {
+    if (!input.readBoolean()) {
+      return null;
+    }
+    return new TextRange(readNullableInt(input), readNullableInt(input), readNullableInt(input), readNullableInt(input));
+  }
+
+  private static void writeNullableString(DataOutputStream output, @Nullable String value) throws IOException {
+    output.writeBoolean(value != null);
+    if (value != null) {
+      output.writeUTF(value);
+    }
+  }
+
+  @CheckForNull
+  private static String readNullableString(DataInputStream input) throws IOException {
+    return input.readBoolean() ? input.readUTF() : null;
+  }
+
+  private static void writeNullableInt(DataOutputStream output, @Nullable Integer value) throws IOException {
+    output.writeBoolean(value != null);
+    if (value != null) {
+      output.writeInt(value);
+    }
+  }
+
+  @CheckForNull
+  private static Integer readNullableInt(DataInputStream input) throws IOException {
+    return input.readBoolean() ? input.readInt() : null;
+  }
+
+  private static class StoredLocation implements IssueLocation {
+    private final ClientInputFile inputFile;
+    private final String message;
+    private final TextRange textRange;
+
+    private StoredLocation(@Nullable ClientInputFile inputFile, @Nullable String message, @Nullable TextRange textRange) {
+      this.inputFile = inputFile;
+      this.message = message;
+      this.textRange = textRange;
+    }
+
+    @CheckForNull
+    @Override
+    public ClientInputFile getInputFile() {
+      return inputFile;
+    }
+
+    @CheckForNull
+    @Override
+    public String getMessage() {
+      return message;
+    }
+
+    @CheckForNull
+    @Override
+    public TextRange getTextRange() {
+      return textRange;
+    }
+  }
+
+  private static class StoredIssue implements Issue {
+    private final String severity;
+    private final String type;
+    private final String ruleKey;
+    private final String ruleName;
+    private final IssueLocation location;
+    private final List<Flow> flows;
+    private final List<QuickFix> quickFixes;
+
+    private StoredIssue(String severity, @Nullable String type, String ruleKey, String ruleName, IssueLocation location, List<Flow> flows, List<QuickFix> quickFixes) {
+      this.severity = severity;
+      this.type = type;
+      this.ruleKey = ruleKey;
+      this.ruleName = ruleName;
+      this.location = location;
+      this.flows = flows;
+      this.quickFixes = quickFixes;
+    }
+
+    @Override
+    public String getSeverity() {
+      return severity;
+    }
+
+    @CheckForNull
+    @Override
+    public String getType() {
+      return type;
+    }
+
+    @Override
+    public String getRuleKey() {
+      return ruleKey;
+    }
+
+    @Override
+    public String getRuleName() {
+      return ruleName;
+    }
+
+    @Override
+    public List<Flow> flows() {
+      return flows;
+    }
+
+    @Override
+    public List<QuickFix> quickFixes() {
+      return quickFixes;
+    }
+
+    @CheckForNull
+    @Override
+    public ClientInputFile getInputFile() {
+      return location.getInputFile();
+    }
+
+    @CheckForNull
+    @Override
+    public String getMessage() {
+      return location.getMessage();
+    }
+
+    @CheckForNull
+    @Override
+    public TextRange getTextRange() {
+      return location.getTextRange();
+    }
+  }
+
+  private static class StoredQuickFix implements QuickFix {
+    private final String message;
+    private final List<ClientInputFileEdit> inputFileEdits;
+
+    private StoredQuickFix(String message, List<ClientInputFileEdit> inputFileEdits) {
+      this.message = message;
+      this.inputFileEdits = inputFileEdits;
+    }
+
+    @Override
+    public List<ClientInputFileEdit> inputFileEdits() {
+      return inputFileEdits;
+    }
+
+    @Override
+    public String message() {
+      return message;
+    }
+  }
+
+  private static class StoredInputFileEdit implements ClientInputFileEdit {
+    private final ClientInputFile target;
+    private final List<TextEdit> textEdits;
+
+    private StoredInputFileEdit(ClientInputFile target, List<TextEdit> textEdits) {
+      this.target = target;
+      this.textEdits = textEdits;
+    }
+
+    @Override
+    public ClientInputFile target() {
+      return target;
+    }
+
+    @Override
+    public List<TextEdit> textEdits() {
+      return textEdits;
+    }
+  }
+
+  private static class StoredTextEdit implements TextEdit {
+    private final TextRange range;
+    private final String newText;
+
+    private StoredTextEdit(TextRange range, String newText) {
+      this.range = range;
+      this.newText = newText;
+    }
+
+    @Override
+    public TextRange range() {
+      return range;
+    }
+
+    @Override
+    public String newText() {
+      return newText;
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls;
+
+import java.util.Objects;
+import javax.annotation.CheckForNull;
+import org.eclipse.lsp4j.Diagnostic;
+import org.eclipse.lsp4j.Range;
+
+/**
+ * Key used to find the issue of a diagnostic when its data doesn't identify it
+ */
+class RuleKeyAndRange {
+  private final String ruleKey;
+  private final Range range;
+
+  RuleKeyAndRange(String ruleKey, Range range) {
+    this.ruleKey = ruleKey;
+    this.range = range;
+  }
+
+  @CheckForNull
+  static RuleKeyAndRange of(Diagnostic d) {
+    var code = d.getCode();
+    if (code == null || !code.isLeft()) {
+      return null;
+    }
+    return new RuleKeyAndRange(code.getLeft(), d.getRange());
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    var that = (RuleKeyAndRange) o;
+    return Objects.equals(ruleKey, that.ruleKey) && Objects.equals(range, that.range);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(ruleKey, range);
+  }
+}
@@ -20,23 +20,39 @@
 package org.sonarsource.sonarlint.ls;
 
 import java.net.URI;
+import java.nio.file.Paths;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.eclipse.lsp4j.FileEvent;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
+import org.sonarsource.sonarlint.ls.scm.GitIgnoreResolver;
 
 import static java.util.Optional.ofNullable;
 
 public class ScmIgnoredCache {
   private static final Logger LOG = Loggers.get(ScmIgnoredCache.class);
   private final SonarLintExtendedLanguageClient client;
+  private final GitIgnoreResolver gitIgnoreResolver;
+  private final ExecutorService executor;
   public final Map<URI, Optional<Boolean>> filesIgnoredByUri = new ConcurrentHashMap<>();
 
   public ScmIgnoredCache(SonarLintExtendedLanguageClient client) {
+    this(client, new GitIgnoreResolver(), Executors.newSingleThreadExecutor(Utils.threadFactory("SonarLint SCM ignore", true)));
+  }
+
+  // Visible for testing
+  ScmIgnoredCache(SonarLintExtendedLanguageClient client, GitIgnoreResolver gitIgnoreResolver, ExecutorService executor) {
     this.client = client;
+    this.gitIgnoreResolver = gitIgnoreResolver;
+    this.executor = executor;
   }
 
   public void remove(URI fileUri) {
@@ -57,10 +73,53 @@ public class ScmIgnoredCache {
     return isIgnored;
   }
 
+  /**
+   * Same as {@link #isIgnored(URI)}, without blocking the caller. Git ignore rules, which may have to be read from disk, are
+   * evaluated on a dedicated thread.
+   */
+  public CompletableFuture<Optional<Boolean>> isIgnoredAsync(URI fileUri) {
+    var cached = filesIgnoredByUri.get(fileUri);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(cached);
+    }
+    try {
+      return CompletableFuture.supplyAsync(() -> getOrFetchAsync(fileUri), executor)
+        .thenCompose(Function.identity())
+        .exceptionally(e -> {
+          LOG.warn("Unable to get SCM ignore status", e);
+          return Optional.empty();
+        });
+    } catch (Exception e) {
+      LOG.warn("Unable to get SCM ignore status", e);
+      return CompletableFuture.completedFuture(Optional.empty());
+    }
+  }
+
+  public void didChangeWatchedFiles(List<FileEvent> changes) {
+    var ignoreRulesChanged = false;
+    for (var change : changes) {
+      var fileUri = URI.create(change.getUri());
+      ignoreRulesChanged |= "file".equalsIgnoreCase(fileUri.getScheme()) && gitIgnoreResolver.didChange(Paths.get(fileUri));
+    }
+    if (ignoreRulesChanged) {
+      LOG.debug("Git ignore rules changed, clearing cached SCM ignore status");
+      filesIgnoredByUri.clear();
+    }
+  }
+
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
   private CompletableFuture<Optional<Boolean>> getOrFetchAsync(URI fileUri) {
     if (filesIgnoredByUri.containsKey(fileUri)) {
       return CompletableFuture.completedFuture(filesIgnoredByUri.get(fileUri));
     }
+    if (isNotIgnoredByGit(fileUri)) {
+      var notIgnored = Optional.of(false);
+      filesIgnoredByUri.put(fileUri, notIgnored);
+      return CompletableFuture.completedFuture(notIgnored);
+    }
     return client.isIgnoredByScm(fileUri.toString())
       .handle((r, t) -> {
         if (t != null) {
@@ -76,4 +135,17 @@ public class ScmIgnoredCache {
       });
   }
 
+  /**
+   * Git never ignores tracked files, even when they match ignore rules. The index is not read here, so files matching ignore
+   * rules are still checked by the client.
+   */
+  private boolean isNotIgnoredByGit(URI fileUri) {
+    try {
+      return "file".equalsIgnoreCase(fileUri.getScheme()) && gitIgnoreResolver.isIgnored(Paths.get(fileUri)).map(ignored -> !ignored).orElse(false);
+    } catch (Exception e) {
+      LOG.debug("Unable to evaluate git ignore rules for file '{}'", fileUri);
+      return false;
+    }
+  }
+
 }
@@ -124,4 +124,12 @@ public interface SonarLintExtendedLanguageServer extends LanguageServer {
 
   @JsonNotification("sonarlint/didLocalBranchNameChange")
   void didLocalBranchNameChange(LocalBranchNameChangeEvent event);
+
+  /**
+   * Optional notification, sent by clients when the document in the active editor changes. Its analysis is then favored over the
+   * analysis of other open documents.
+   * @param uri the document in the active editor, or <code>null</code> if there is none
+   */
+  @JsonNotification("sonarlint/didFocusTextDocument")
+  void didFocusTextDocument(@Nullable String uri);
 }
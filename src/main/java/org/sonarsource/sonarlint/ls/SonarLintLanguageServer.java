@@ -88,6 +88,8 @@ import static java.util.Optional.ofNullable;
 public class SonarLintLanguageServer implements SonarLintExtendedLanguageServer, WorkspaceService, TextDocumentService {
 
   private static final String TYPESCRIPT_LOCATION = "typeScriptLocation";
+  private static final String ANALYSIS_PARALLELISM = "analysisParallelism";
+  private static final String PERSISTENT_ANALYSIS_CACHE = "persistentAnalysisCache";
 
   private final SonarLintExtendedLanguageClient client;
   private final SonarLintTelemetry telemetry;
@@ -187,10 +189,13 @@ public class SonarLintLanguageServer implements SonarLintExtendedLanguageServer,
       var ideVersion = appName + " " + clientVersion;
       var firstSecretDetected = Boolean.parseBoolean((String) options.get("firstSecretDetected"));
       var typeScriptPath = ofNullable((String) options.get(TYPESCRIPT_LOCATION));
+      // Gson parses all JSON numbers as Double
+      var analysisParallelism = ofNullable((Number) options.get(ANALYSIS_PARALLELISM)).map(Number::intValue).orElse(null);
       var additionalAttributes = ofNullable((Map<String, Object>) options.get("additionalAttributes")).orElse(Collections.emptyMap());
 
       enginesFactory.initialize(typeScriptPath.map(Paths::get).orElse(null));
-      analysisManager.initialize(firstSecretDetected);
+      var persistentAnalysisCache = Boolean.parseBoolean(String.valueOf(options.get(PERSISTENT_ANALYSIS_CACHE)));
+      analysisManager.initialize(firstSecretDetected, analysisParallelism, persistentAnalysisCache);
 
       securityHotspotsHandlerServer.initialize(appName, clientVersion, workspaceName);
       telemetry.initialize(productKey, telemetryStorage, productName, productVersion, ideVersion, additionalAttributes);
@@ -235,7 +240,7 @@ public class SonarLintLanguageServer implements SonarLintExtendedLanguageServer,
   private static TextDocumentSyncOptions getTextDocumentSyncOptions() {
     var textDocumentSyncOptions = new TextDocumentSyncOptions();
     textDocumentSyncOptions.setOpenClose(true);
-    textDocumentSyncOptions.setChange(TextDocumentSyncKind.Full);
+    textDocumentSyncOptions.setChange(TextDocumentSyncKind.Incremental);
     textDocumentSyncOptions.setSave(new SaveOptions(true));
     return textDocumentSyncOptions;
   }
@@ -284,7 +289,7 @@ public class SonarLintLanguageServer implements SonarLintExtendedLanguageServer,
   @Override
   public void didChange(DidChangeTextDocumentParams params) {
     var uri = create(params.getTextDocument().getUri());
-    analysisManager.didChange(uri, params.getContentChanges().get(0).getText(), params.getTextDocument().getVersion());
+    analysisManager.didChange(uri, params.getContentChanges(), params.getTextDocument().getVersion());
   }
 
   @Override
@@ -364,6 +369,11 @@ public class SonarLintLanguageServer implements SonarLintExtendedLanguageServer,
     branchManager.didBranchNameChange(create(event.getFolderUri()), event.getBranchName());
   }
 
+  @Override
+  public void didFocusTextDocument(@Nullable String uri) {
+    analysisManager.didFocus(uri != null ? create(uri) : null);
+  }
+
   @Override
   public void cancelProgress(WorkDoneProgressCancelParams params) {
     progressManager.cancelProgress(params);
@@ -0,0 +1,131 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls;
+
+import com.google.gson.JsonPrimitive;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import org.eclipse.lsp4j.Diagnostic;
+import org.sonarsource.sonarlint.core.client.api.connected.ServerIssue;
+
+/**
+ * Unresolved taint vulnerabilities of open files, indexed by issue key and by rule key and location so that code actions and commands
+ * don't have to browse all of them. Vulnerabilities of a file are reloaded from the storage only when it may have changed.
+ */
+public class TaintVulnerabilitiesCache {
+
+  private static final String SECURITY_REPOSITORY_HINT = "security";
+
+  private final Map<URI, FileTaintVulnerabilities> taintVulnerabilitiesPerFile = new ConcurrentHashMap<>();
+  private final Map<String, ServerIssue> taintVulnerabilitiesByKey = new ConcurrentHashMap<>();
+  private final Set<URI> outdatedFiles = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Replace the taint vulnerabilities of a file with the unresolved ones among its server issues
+   * @return the number of taint vulnerabilities of the file
+   */
+  public synchronized int reload(URI fileUri, Collection<ServerIssue> serverIssues) {
+    var taintVulnerabilities = serverIssues.stream()
+      .filter(it -> it.ruleKey().contains(SECURITY_REPOSITORY_HINT))
+      .filter(it -> it.resolution().isEmpty())
+      .collect(Collectors.toList());
+    var forFile = new FileTaintVulnerabilities(taintVulnerabilities);
+    unindex(taintVulnerabilitiesPerFile.put(fileUri, forFile));
+    taintVulnerabilitiesByKey.putAll(forFile.byKey);
+    outdatedFiles.remove(fileUri);
+    return taintVulnerabilities.size();
+  }
+
+  public synchronized void remove(URI fileUri) {
+    unindex(taintVulnerabilitiesPerFile.remove(fileUri));
+    outdatedFiles.remove(fileUri);
+  }
+
+  private void unindex(@Nullable FileTaintVulnerabilities previous) {
+    if (previous != null) {
+      previous.byKey.forEach(taintVulnerabilitiesByKey::remove);
+    }
+  }
+
+  /**
+   * Taint vulnerabilities of the files are kept until they are reloaded, after binding or storage changes
+   */
+  public void markOutdated(Collection<URI> fileUris) {
+    outdatedFiles.addAll(fileUris);
+  }
+
+  public boolean isOutdated(URI fileUri) {
+    return !taintVulnerabilitiesPerFile.containsKey(fileUri) || outdatedFiles.contains(fileUri);
+  }
+
+  public List<ServerIssue> getAsList(URI fileUri) {
+    var forFile = taintVulnerabilitiesPerFile.get(fileUri);
+    return forFile != null ? forFile.all : Collections.emptyList();
+  }
+
+  public Optional<ServerIssue> getTaintVulnerabilityByKey(String issueKey) {
+    return Optional.ofNullable(taintVulnerabilitiesByKey.get(issueKey));
+  }
+
+  public Optional<ServerIssue> getTaintVulnerabilityForDiagnostic(URI fileUri, Diagnostic d) {
+    var forFile = taintVulnerabilitiesPerFile.get(fileUri);
+    if (forFile == null) {
+      return Optional.empty();
+    }
+    var data = d.getData();
+    if (data != null) {
+      var issueKey = data instanceof JsonPrimitive ? ((JsonPrimitive) data).getAsString() : data.toString();
+      var byKey = forFile.byKey.get(issueKey);
+      if (byKey != null) {
+        return Optional.of(byKey);
+      }
+    }
+    return Optional.ofNullable(RuleKeyAndRange.of(d)).map(forFile.byRuleKeyAndRange::get);
+  }
+
+  private static class FileTaintVulnerabilities {
+    private final List<ServerIssue> all;
+    private final Map<String, ServerIssue> byKey = new HashMap<>();
+    private final Map<RuleKeyAndRange, ServerIssue> byRuleKeyAndRange = new HashMap<>();
+
+    private FileTaintVulnerabilities(List<ServerIssue> all) {
+      this.all = Collections.unmodifiableList(all);
+      // Keep the first match in case of duplicates
+      all.forEach(i -> {
+        if (i.key() != null) {
+          byKey.putIfAbsent(i.key(), i);
+        }
+        // File level vulnerabilities have no range, and are only found by key
+        if (i.getStartLine() != null) {
+          byRuleKeyAndRange.putIfAbsent(new RuleKeyAndRange(i.ruleKey(), AnalysisManager.position(i)), i);
+        }
+      });
+    }
+  }
+}
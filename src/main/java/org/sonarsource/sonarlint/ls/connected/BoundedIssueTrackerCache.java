@@ -0,0 +1,85 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls.connected;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.sonarsource.sonarlint.core.tracking.IssueTrackerCache;
+import org.sonarsource.sonarlint.core.tracking.Trackable;
+
+/**
+ * In memory issue tracker cache keeping only the most recently analyzed files, used when issues can't be persisted.
+ */
+class BoundedIssueTrackerCache implements IssueTrackerCache {
+
+  static final int DEFAULT_MAX_ENTRIES = 100;
+
+  private final Map<String, Collection<Trackable>> cache;
+
+  BoundedIssueTrackerCache() {
+    this(DEFAULT_MAX_ENTRIES);
+  }
+
+  BoundedIssueTrackerCache(int maxEntries) {
+    this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Collection<Trackable>> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  @Override
+  public synchronized boolean isFirstAnalysis(String file) {
+    return !cache.containsKey(file);
+  }
+
+  @Override
+  public synchronized Collection<Trackable> getCurrentTrackables(String file) {
+    var trackables = cache.get(file);
+    return trackables != null ? Collections.unmodifiableCollection(trackables) : Collections.emptyList();
+  }
+
+  @Override
+  public synchronized Collection<Trackable> getLiveOrFail(String file) {
+    var trackables = cache.get(file);
+    if (trackables == null) {
+      throw new IllegalStateException("file should have been already analyzed: " + file);
+    }
+    return trackables;
+  }
+
+  @Override
+  public synchronized void put(String file, Collection<Trackable> trackables) {
+    cache.put(file, trackables);
+  }
+
+  @Override
+  public synchronized void clear() {
+    cache.clear();
+  }
+
+  @Override
+  public void shutdown() {
+    // Nothing to persist
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls.connected;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.UUID;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonarsource.sonarlint.core.tracking.IssueStore;
+import org.sonarsource.sonarlint.core.tracking.IssueTrackerCache;
+import org.sonarsource.sonarlint.core.tracking.PersistentIssueTrackerCache;
+
+/**
+ * Creates the issue tracker cache of each project binding. When a storage directory is provided, tracked issues of the least recently
+ * analyzed files are persisted on disk, so that tracking history survives restarts.
+ */
+class IssueTrackerCacheFactory {
+
+  private static final Logger LOG = Loggers.get(IssueTrackerCacheFactory.class);
+
+  @CheckForNull
+  private final Path storageDir;
+
+  IssueTrackerCacheFactory(@Nullable Path storageDir) {
+    this.storageDir = storageDir;
+  }
+
+  IssueTrackerCache create(String connectionId, String projectKey, Path folderRoot) {
+    if (storageDir != null) {
+      var bindingStorageDir = storageDir.resolve(bindingDirName(connectionId, projectKey, folderRoot));
+      try {
+        return new PersistentIssueTrackerCache(new IssueStore(bindingStorageDir, folderRoot));
+      } catch (Exception e) {
+        LOG.debug("Unable to use issue store in '{}', tracked issues will not be persisted", bindingStorageDir, e);
+      }
+    }
+    return new BoundedIssueTrackerCache();
+  }
+
+  /**
+   * Connection ids and project keys may contain characters that are not allowed in file names
+   */
+  private static String bindingDirName(String connectionId, String projectKey, Path folderRoot) {
+    var key = connectionId + "\n" + projectKey + "\n" + folderRoot.toAbsolutePath();
+    return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString();
+  }
+}
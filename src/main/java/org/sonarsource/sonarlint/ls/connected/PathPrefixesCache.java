@@ -0,0 +1,158 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls.connected;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonarsource.sonarlint.core.client.api.connected.ProjectBinding;
+import org.sonarsource.sonarlint.core.client.api.util.FileUtils;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Path prefixes of bound folders, optionally persisted on disk. Computing them requires to match all the files of the folder
+ * with the files of the project, they are reused as long as neither the project storage nor the files of the folder change.
+ * Each folder is stored in its own file, so that several language servers can share the storage directory.
+ */
+class PathPrefixesCache {
+
+  private static final Logger LOG = Loggers.get(PathPrefixesCache.class);
+
+  // Single file used by previous versions, shared by all folders
+  private static final String LEGACY_FILE_NAME = "path-prefixes.properties";
+  private static final String FILE_SUFFIX = ".properties";
+  private static final String KEY = "key";
+  private static final String STORAGE_UPDATE_DATE = "storageUpdateDate";
+  private static final String FILES_FINGERPRINT = "filesFingerprint";
+  private static final String SQ_PATH_PREFIX = "sqPathPrefix";
+  private static final String IDE_PATH_PREFIX = "idePathPrefix";
+
+  @CheckForNull
+  private final Path storageDir;
+  // Only used when not persisted, keys are connection id, project key and folder root
+  private final Map<String, Properties> entriesPerKey = new HashMap<>();
+
+  PathPrefixesCache(@Nullable Path storageDir) {
+    this.storageDir = storageDir;
+    if (storageDir != null) {
+      try {
+        Files.deleteIfExists(storageDir.resolve(LEGACY_FILE_NAME));
+      } catch (IOException e) {
+        LOG.debug("Unable to delete legacy path prefixes file", e);
+      }
+    }
+  }
+
+  /**
+   * @return a fingerprint of the relative paths of the files of a folder, that changes when files are added, moved or removed
+   */
+  static String filesFingerprint(Collection<String> relativePaths) {
+    var sortedPaths = relativePaths.stream().sorted().collect(Collectors.joining("\n"));
+    return UUID.nameUUIDFromBytes(sortedPaths.getBytes(StandardCharsets.UTF_8)).toString();
+  }
+
+  synchronized Optional<ProjectBinding> get(String connectionId, String projectKey, Path folderRoot, @Nullable Date storageUpdateDate, String filesFingerprint) {
+    if (storageUpdateDate == null) {
+      return Optional.empty();
+    }
+    var key = key(connectionId, projectKey, folderRoot);
+    var entry = storageDir != null ? load(key) : entriesPerKey.get(key);
+    if (entry == null
+      || !key.equals(entry.getProperty(KEY))
+      || !Long.toString(storageUpdateDate.getTime()).equals(entry.getProperty(STORAGE_UPDATE_DATE))
+      || !filesFingerprint.equals(entry.getProperty(FILES_FINGERPRINT))
+      || entry.getProperty(SQ_PATH_PREFIX) == null
+      || entry.getProperty(IDE_PATH_PREFIX) == null) {
+      return Optional.empty();
+    }
+    return Optional.of(new ProjectBinding(projectKey, entry.getProperty(SQ_PATH_PREFIX), entry.getProperty(IDE_PATH_PREFIX)));
+  }
+
+  synchronized void put(String connectionId, Path folderRoot, @Nullable Date storageUpdateDate, String filesFingerprint, ProjectBinding projectBinding) {
+    if (storageUpdateDate == null) {
+      return;
+    }
+    var key = key(connectionId, projectBinding.projectKey(), folderRoot);
+    var entry = new Properties();
+    entry.setProperty(KEY, key);
+    entry.setProperty(STORAGE_UPDATE_DATE, Long.toString(storageUpdateDate.getTime()));
+    entry.setProperty(FILES_FINGERPRINT, filesFingerprint);
+    entry.setProperty(SQ_PATH_PREFIX, projectBinding.sqPathPrefix());
+    entry.setProperty(IDE_PATH_PREFIX, projectBinding.idePathPrefix());
+    if (storageDir != null) {
+      store(key, entry);
+    } else {
+      entriesPerKey.put(key, entry);
+    }
+  }
+
+  @CheckForNull
+  private Properties load(String key) {
+    var storageFile = storageFile(key);
+    if (!Files.isRegularFile(storageFile)) {
+      return null;
+    }
+    var entry = new Properties();
+    try (var reader = Files.newBufferedReader(storageFile, StandardCharsets.UTF_8)) {
+      entry.load(reader);
+      return entry;
+    } catch (Exception e) {
+      LOG.debug("Unable to read path prefixes from '{}'", storageFile, e);
+      return null;
+    }
+  }
+
+  private void store(String key, Properties entry) {
+    var storageFile = storageFile(key);
+    try {
+      FileUtils.mkdirs(storageFile.getParent());
+      var tmpFile = Files.createTempFile(storageFile.getParent(), storageFile.getFileName().toString(), ".tmp");
+      try (var writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+        entry.store(writer, null);
+      }
+      Files.move(tmpFile, storageFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException | RuntimeException e) {
+      LOG.debug("Unable to write path prefixes to '{}'", storageFile, e);
+    }
+  }
+
+  private Path storageFile(String key) {
+    return requireNonNull(storageDir).resolve(UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)) + FILE_SUFFIX);
+  }
+
+  private static String key(String connectionId, String projectKey, Path folderRoot) {
+    return String.join("\n", connectionId, projectKey, folderRoot.toAbsolutePath().toString());
+  }
+}
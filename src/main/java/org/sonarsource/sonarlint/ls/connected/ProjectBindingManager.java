@@ -20,7 +20,9 @@
 package org.sonarsource.sonarlint.ls.connected;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
+import java.nio.file.FileSystemNotFoundException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -28,6 +30,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Objects;
@@ -36,10 +39,18 @@ import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
@@ -53,6 +64,7 @@ import org.eclipse.lsp4j.jsonrpc.messages.Either;
 import org.eclipse.lsp4j.services.LanguageClient;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
+import org.sonarsource.sonarlint.core.client.api.common.SonarLintPathManager;
 import org.sonarsource.sonarlint.core.client.api.connected.ConnectedSonarLintEngine;
 import org.sonarsource.sonarlint.core.client.api.connected.ConnectedSonarLintEngine.State;
 import org.sonarsource.sonarlint.core.client.api.exceptions.CanceledException;
@@ -60,7 +72,9 @@ import org.sonarsource.sonarlint.core.client.api.util.FileUtils;
 import org.sonarsource.sonarlint.core.util.StringUtils;
 import org.sonarsource.sonarlint.ls.AnalysisManager;
 import org.sonarsource.sonarlint.ls.EnginesFactory;
+import org.sonarsource.sonarlint.ls.Utils;
 import org.sonarsource.sonarlint.ls.connected.notifications.BindingUpdateNotification;
+import org.sonarsource.sonarlint.ls.file.FolderFileIndex;
 import org.sonarsource.sonarlint.ls.folders.WorkspaceFolderWrapper;
 import org.sonarsource.sonarlint.ls.folders.WorkspaceFoldersManager;
 import org.sonarsource.sonarlint.ls.progress.NoOpProgressFacade;
@@ -80,33 +94,49 @@ import static java.util.function.Predicate.not;
 
 /**
  * Keep a cache of project bindings. Files that are part of a workspace workspaceFolderPath will share the same binding.
- * Files that are opened alone will have their own binding.
+ * Files that are opened alone will share the binding of their parent directory.
  */
 public class ProjectBindingManager implements WorkspaceSettingsChangeListener, WorkspaceFolderSettingsChangeListener {
 
   private static final Logger LOG = Loggers.get(ProjectBindingManager.class);
   private static final long ONE_DAY = 24L * 60L * 60L * 1000L;
+  private static final int MAX_CONCURRENT_BINDING_UPDATE_CHECKS = 8;
+  private static final int MAX_CONCURRENT_CONNECTION_UPDATES = 4;
 
   private final WorkspaceFoldersManager foldersManager;
   private final SettingsManager settingsManager;
   private final Map<URI, Optional<ProjectBindingWrapper>> folderBindingCache;
   private final BindingUpdateNotification bindingUpdateNotification;
+  // Keys are parent directories of files outside of workspace folders
   private final ConcurrentMap<URI, Optional<ProjectBindingWrapper>> fileBindingCache = new ConcurrentHashMap<>();
   private final ConcurrentMap<String, Optional<ConnectedSonarLintEngine>> connectedEngineCacheByConnectionId = new ConcurrentHashMap<>();
   private final ProgressManager progressManager;
   private final LanguageClient client;
   private final EnginesFactory enginesFactory;
+  private final PathPrefixesCache pathPrefixesCache;
+  private final IssueTrackerCacheFactory issueTrackerCacheFactory;
   private AnalysisManager analysisManager;
   private final Timer bindingUpdatesCheckerTimer = new Timer("Binding updates checker");
+  private final ExecutorService bindingUpdatesCheckExecutor = newBindingUpdatesCheckExecutor();
+  private final ExecutorService serverIssuesExecutor = Executors.newSingleThreadExecutor(Utils.threadFactory("SonarLint server issues downloader", true));
 
   public ProjectBindingManager(EnginesFactory enginesFactory, WorkspaceFoldersManager foldersManager, SettingsManager settingsManager, LanguageClient client,
     ProgressManager progressManager) {
-    this(enginesFactory, foldersManager, settingsManager, client, progressManager, new ConcurrentHashMap<>(), new BindingUpdateNotification(client));
+    this(enginesFactory, foldersManager, settingsManager, client, progressManager, new ConcurrentHashMap<>(), new BindingUpdateNotification(client),
+      new PathPrefixesCache(SonarLintPathManager.home().resolve("binding-cache")),
+      new IssueTrackerCacheFactory(SonarLintPathManager.home().resolve("issue-tracker-cache")));
     bindingUpdatesCheckerTimer.scheduleAtFixedRate(new BindingUpdatesCheckerTask(), 10 * 1000L, ONE_DAY);
   }
 
   public ProjectBindingManager(EnginesFactory enginesFactory, WorkspaceFoldersManager foldersManager, SettingsManager settingsManager, LanguageClient client,
     ProgressManager progressManager, Map<URI, Optional<ProjectBindingWrapper>> folderBindingCache, BindingUpdateNotification bindingUpdateNotification) {
+    this(enginesFactory, foldersManager, settingsManager, client, progressManager, folderBindingCache, bindingUpdateNotification, new PathPrefixesCache(null),
+      new IssueTrackerCacheFactory(null));
+  }
+
+  ProjectBindingManager(EnginesFactory enginesFactory, WorkspaceFoldersManager foldersManager, SettingsManager settingsManager, LanguageClient client,
+    ProgressManager progressManager, Map<URI, Optional<ProjectBindingWrapper>> folderBindingCache, BindingUpdateNotification bindingUpdateNotification,
+    PathPrefixesCache pathPrefixesCache, IssueTrackerCacheFactory issueTrackerCacheFactory) {
     this.enginesFactory = enginesFactory;
     this.foldersManager = foldersManager;
     this.settingsManager = settingsManager;
@@ -114,6 +144,16 @@ public class ProjectBindingManager implements WorkspaceSettingsChangeListener, W
     this.progressManager = progressManager;
     this.folderBindingCache = folderBindingCache;
     this.bindingUpdateNotification = bindingUpdateNotification;
+    this.pathPrefixesCache = pathPrefixesCache;
+    this.issueTrackerCacheFactory = issueTrackerCacheFactory;
+  }
+
+  private static ExecutorService newBindingUpdatesCheckExecutor() {
+    var executor = new ThreadPoolExecutor(MAX_CONCURRENT_BINDING_UPDATE_CHECKS, MAX_CONCURRENT_BINDING_UPDATE_CHECKS, 1, TimeUnit.MINUTES,
+      new LinkedBlockingQueue<>(), Utils.threadFactory("SonarLint binding updates checker", true));
+    // Checks only happen once a day, don't keep idle threads in between
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
   }
 
   // Can't use constructor injection because of cyclic dependency
@@ -137,20 +177,34 @@ public class ProjectBindingManager implements WorkspaceSettingsChangeListener, W
    */
   public Optional<ProjectBindingWrapper> getBinding(URI fileUri) {
     var folder = foldersManager.findFolderForFile(fileUri);
-    var cacheKey = folder.map(WorkspaceFolderWrapper::getUri).orElse(fileUri);
+    // Files outside of workspace folders share the binding of their directory
+    var cacheKey = folder.map(WorkspaceFolderWrapper::getUri).orElseGet(() -> parentDirectoryOf(fileUri));
     return getBinding(folder, cacheKey);
   }
 
-  private Optional<ProjectBindingWrapper> getBinding(Optional<WorkspaceFolderWrapper> folder, URI fileUri) {
+  private static URI parentDirectoryOf(URI fileUri) {
+    try {
+      var parent = Paths.get(fileUri).getParent();
+      return parent != null ? parent.toUri() : fileUri;
+    } catch (IllegalArgumentException | FileSystemNotFoundException e) {
+      return fileUri;
+    }
+  }
+
+  /**
+   * Concurrent requests for the same folder or directory wait for a single computation of the binding
+   */
+  private Optional<ProjectBindingWrapper> getBinding(Optional<WorkspaceFolderWrapper> folder, URI rootUri) {
     var bindingCache = folder.isPresent() ? folderBindingCache : fileBindingCache;
-    return bindingCache.computeIfAbsent(fileUri, k -> {
+    return bindingCache.computeIfAbsent(rootUri, k -> {
       var settings = folder.map(WorkspaceFolderWrapper::getSettings)
         .orElse(settingsManager.getCurrentDefaultFolderSettings());
       if (!settings.hasBinding()) {
         return Optional.empty();
       } else {
-        var folderRoot = folder.map(WorkspaceFolderWrapper::getRootPath).orElse(Paths.get(fileUri).getParent());
-        return Optional.ofNullable(computeProjectBinding(settings, folderRoot));
+        var folderRoot = folder.map(WorkspaceFolderWrapper::getRootPath).orElseGet(() -> Paths.get(rootUri));
+        var fileIndex = folder.map(WorkspaceFolderWrapper::getFileIndex).orElseGet(() -> new FolderFileIndex(folderRoot));
+        return Optional.ofNullable(computeProjectBinding(settings, folderRoot, fileIndex));
       }
     });
   }
@@ -159,32 +213,67 @@ public class ProjectBindingManager implements WorkspaceSettingsChangeListener, W
     return connectedEngineCacheByConnectionId.getOrDefault(connectionId, Optional.empty());
   }
 
-  void checkForBindingUpdates() {
+  /**
+   * Global storage is checked once per connection. Storages of the bound projects are then checked concurrently, unless the global
+   * storage already needs an update
+   */
+  CompletableFuture<Void> checkForBindingUpdates() {
     LOG.debug("Checking binding updates");
-    forEachBoundFolder((folder, settings) -> {
-      var connectionId = requireNonNull(settings.getConnectionId());
-      getStartedConnectedEngine(connectionId)
-        .filter(engine -> engine.getState() != State.UPDATING)
-        .ifPresent(engine -> {
-          var projectKey = requireNonNull(settings.getProjectKey());
-          var paramsAndHttpClient = getServerConfigurationFor(connectionId);
-          if (paramsAndHttpClient == null) {
-            return;
-          }
-          try {
-            if (hasGlobalUpdates(engine, paramsAndHttpClient) || hasProjectUpdates(engine, paramsAndHttpClient, projectKey)) {
-              bindingUpdateNotification.notifyBindingUpdateAvailable(projectKey)
-                .thenAccept(updateAccepted -> {
-                  if (TRUE.equals(updateAccepted)) {
-                    updateBinding(connectionId, projectKey);
-                  }
-                });
+    var projectKeysPerConnectionId = new LinkedHashMap<String, Set<String>>();
+    forEachBoundFolder((folder, settings) -> projectKeysPerConnectionId
+      .computeIfAbsent(requireNonNull(settings.getConnectionId()), id -> new LinkedHashSet<>())
+      .add(requireNonNull(settings.getProjectKey())));
+    var checks = new ArrayList<CompletableFuture<Void>>();
+    projectKeysPerConnectionId.forEach((connectionId, projectKeys) -> getStartedConnectedEngine(connectionId)
+      .filter(engine -> engine.getState() != State.UPDATING)
+      .ifPresent(engine -> {
+        var paramsAndHttpClient = getServerConfigurationFor(connectionId);
+        if (paramsAndHttpClient == null) {
+          return;
+        }
+        checks.add(CompletableFuture.supplyAsync(() -> hasGlobalUpdates(engine, paramsAndHttpClient), bindingUpdatesCheckExecutor)
+          .thenCompose(hasGlobalUpdates -> {
+            if (TRUE.equals(hasGlobalUpdates)) {
+              // All projects of the connection will be updated, no need to check them
+              projectKeys.forEach(projectKey -> notifyBindingUpdateAvailable(connectionId, projectKey));
+              return CompletableFuture.completedFuture(null);
             }
-          } catch (Exception e) {
-            LOG.error("Error while checking for binding updates", e);
-          }
-        });
-    });
+            return CompletableFuture.allOf(projectKeys.stream()
+              .map(projectKey -> checkForProjectUpdates(connectionId, engine, paramsAndHttpClient, projectKey))
+              .toArray(CompletableFuture[]::new));
+          })
+          .exceptionally(error -> {
+            logBindingUpdatesCheckError(error);
+            return null;
+          }));
+      }));
+    return CompletableFuture.allOf(checks.toArray(CompletableFuture[]::new));
+  }
+
+  private CompletableFuture<Void> checkForProjectUpdates(String connectionId, ConnectedSonarLintEngine engine, EndpointParamsAndHttpClient paramsAndHttpClient,
+    String projectKey) {
+    return CompletableFuture.supplyAsync(() -> hasProjectUpdates(engine, paramsAndHttpClient, projectKey), bindingUpdatesCheckExecutor)
+      .handle((hasProjectUpdates, error) -> {
+        if (error != null) {
+          logBindingUpdatesCheckError(error);
+        } else if (TRUE.equals(hasProjectUpdates)) {
+          notifyBindingUpdateAvailable(connectionId, projectKey);
+        }
+        return null;
+      });
+  }
+
+  private static void logBindingUpdatesCheckError(Throwable error) {
+    LOG.error("Error while checking for binding updates", error instanceof CompletionException ? error.getCause() : error);
+  }
+
+  private void notifyBindingUpdateAvailable(String connectionId, String projectKey) {
+    bindingUpdateNotification.notifyBindingUpdateAvailable(projectKey)
+      .thenAccept(updateAccepted -> {
+        if (TRUE.equals(updateAccepted)) {
+          updateBinding(connectionId, projectKey);
+        }
+      });
   }
 
   private static boolean hasProjectUpdates(ConnectedSonarLintEngine engine, EndpointParamsAndHttpClient requestParams, String projectKey) {
@@ -196,7 +285,7 @@ public class ProjectBindingManager implements WorkspaceSettingsChangeListener, W
   }
 
   @CheckForNull
-  private ProjectBindingWrapper computeProjectBinding(WorkspaceFolderSettings settings, Path folderRoot) {
+  private ProjectBindingWrapper computeProjectBinding(WorkspaceFolderSettings settings, Path folderRoot, FolderFileIndex fileIndex) {
     var connectionId = requireNonNull(settings.getConnectionId());
     var endpointParamsAndHttpClient = getServerConfigurationFor(connectionId);
     if (endpointParamsAndHttpClient == null) {
@@ -212,16 +301,58 @@ public class ProjectBindingManager implements WorkspaceSettingsChangeListener, W
     var projectStorageStatus = engine.getProjectStorageStatus(projectKey);
     if (projectStorageStatus == null || projectStorageStatus.isStale()) {
       engine.updateProject(endpointParamsAndHttpClient.getEndpointParams(), endpointParamsAndHttpClient.getHttpClient(), projectKey, false, null);
+      projectStorageStatus = engine.getProjectStorageStatus(projectKey);
     }
-    var ideFilePaths = FileUtils.allRelativePathsForFilesInTree(folderRoot);
-    var projectBinding = engine.calculatePathPrefixes(projectKey, ideFilePaths);
+    var storageUpdateDate = projectStorageStatus != null ? projectStorageStatus.getLastUpdateDate() : null;
+    var relativePaths = relativePathsOfFiles(folderRoot, fileIndex);
+    var filesFingerprint = PathPrefixesCache.filesFingerprint(relativePaths);
+    var projectBinding = pathPrefixesCache.get(connectionId, projectKey, folderRoot, storageUpdateDate, filesFingerprint)
+      .orElseGet(() -> {
+        var computed = engine.calculatePathPrefixes(projectKey, relativePaths);
+        pathPrefixesCache.put(connectionId, folderRoot, storageUpdateDate, filesFingerprint, computed);
+        return computed;
+      });
     LOG.debug("Resolved binding {} for folder {}",
       ToStringBuilder.reflectionToString(projectBinding, ToStringStyle.SHORT_PREFIX_STYLE),
       folderRoot);
-    var issueTrackerWrapper = new ServerIssueTrackerWrapper(engine, endpointParamsAndHttpClient, projectBinding);
+    var issueTrackerWrapper = new ServerIssueTrackerWrapper(engine, endpointParamsAndHttpClient, projectBinding,
+      issueTrackerCacheFactory.create(connectionId, projectKey, folderRoot), serverIssuesExecutor, this::onProjectIssuesDownloaded);
+    issueTrackerWrapper.prefetchServerIssues();
     return new ProjectBindingWrapper(connectionId, projectBinding, engine, issueTrackerWrapper);
   }
 
+  /**
+   * Taint vulnerabilities are part of the downloaded server issues
+   */
+  private void onProjectIssuesDownloaded(ServerIssueTrackerWrapper issueTracker) {
+    analysisManager.reloadTaintVulnerabilities(issueTracker);
+  }
+
+  /**
+   * Same files as {@link FileUtils#allRelativePathsForFilesInTree(Path)}, without browsing the folder again
+   */
+  private static Collection<String> relativePathsOfFiles(Path folderRoot, FolderFileIndex fileIndex) {
+    try {
+      return fileIndex.files().stream()
+        .map(folderRoot::relativize)
+        .filter(not(ProjectBindingManager::isHidden))
+        .map(relativePath -> FileUtils.toSonarQubePath(relativePath.toString()))
+        .collect(Collectors.toSet());
+    } catch (IOException e) {
+      LOG.debug("Unable to list files of folder '{}'", folderRoot);
+      return Collections.emptySet();
+    }
+  }
+
+  private static boolean isHidden(Path relativePath) {
+    for (var segment : relativePath) {
+      if (segment.toString().startsWith(".")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   @CheckForNull
   public EndpointParamsAndHttpClient getServerConfigurationFor(String connectionId) {
     var serverConnectionSettings = settingsManager.getCurrentSettings().getServerConnections().get(connectionId);
@@ -321,26 +452,26 @@ public class ProjectBindingManager implements WorkspaceSettingsChangeListener, W
    * Clear cache of binding, so that it gets recomputed during next analysis
    */
   private void clearFilesBindingCache() {
-    fileBindingCache.clear();
+    removeBindings(fileBindingCache, binding -> true);
     stopUnusedEngines();
     analysisManager.analyzeAllOpenFilesInFolder(null);
   }
 
   private void clearFolderBindingCache(WorkspaceFolderWrapper folder) {
-    folderBindingCache.remove(folder.getUri());
+    shutdownIssueTracker(folderBindingCache.remove(folder.getUri()));
     stopUnusedEngines();
     analysisManager.analyzeAllOpenFilesInFolder(folder);
   }
 
   private void unbindFiles() {
-    fileBindingCache.replaceAll((uri, binding) -> Optional.empty());
+    fileBindingCache.keySet().forEach(uri -> shutdownIssueTracker(fileBindingCache.put(uri, Optional.empty())));
     LOG.debug("All files outside workspace are now unbound");
     stopUnusedEngines();
     analysisManager.analyzeAllOpenFilesInFolder(null);
   }
 
   private void unbindFolder(WorkspaceFolderWrapper folder) {
-    folderBindingCache.put(folder.getUri(), Optional.empty());
+    shutdownIssueTracker(folderBindingCache.put(folder.getUri(), Optional.empty()));
     LOG.debug("Workspace '{}' unbound", folder);
     stopUnusedEngines();
     analysisManager.analyzeAllOpenFilesInFolder(folder);
@@ -355,12 +486,33 @@ public class ProjectBindingManager implements WorkspaceSettingsChangeListener, W
     startedEngines.stream()
       .filter(not(usedServerIds::contains))
       .forEach(startedEngineId -> {
-        folderBindingCache.entrySet().removeIf(e -> e.getValue().isPresent() && e.getValue().get().getConnectionId().equals(startedEngineId));
-        fileBindingCache.entrySet().removeIf(e -> e.getValue().isPresent() && e.getValue().get().getConnectionId().equals(startedEngineId));
+        Predicate<Optional<ProjectBindingWrapper>> usesEngine = binding -> binding.isPresent() && binding.get().getConnectionId().equals(startedEngineId);
+        removeBindings(folderBindingCache, usesEngine);
+        removeBindings(fileBindingCache, usesEngine);
         tryStopServer(startedEngineId, connectedEngineCacheByConnectionId.remove(startedEngineId));
       });
   }
 
+  /**
+   * Tracked issues are only persisted on shutdown of the issue tracker, so it is called for each binding dropped from the caches
+   */
+  private static void removeBindings(Map<URI, Optional<ProjectBindingWrapper>> bindingCache, Predicate<Optional<ProjectBindingWrapper>> filter) {
+    var it = bindingCache.values().iterator();
+    while (it.hasNext()) {
+      var binding = it.next();
+      if (filter.test(binding)) {
+        it.remove();
+        shutdownIssueTracker(binding);
+      }
+    }
+  }
+
+  private static void shutdownIssueTracker(@Nullable Optional<ProjectBindingWrapper> binding) {
+    if (binding != null) {
+      binding.ifPresent(b -> b.getServerIssueTracker().shutdown());
+    }
+  }
+
   private void collectUsedServerId(Set<String> usedConnectionIds, WorkspaceFolderSettings folderSettings) {
     if (folderSettings.hasBinding()) {
       var connectionId = folderSettings.getConnectionId();
@@ -379,6 +531,11 @@ public class ProjectBindingManager implements WorkspaceSettingsChangeListener, W
   }
 
   public void shutdown() {
+    bindingUpdatesCheckExecutor.shutdownNow();
+    serverIssuesExecutor.shutdownNow();
+    Stream.concat(folderBindingCache.values().stream(), fileBindingCache.values().stream())
+      .flatMap(Optional::stream)
+      .forEach(binding -> binding.getServerIssueTracker().shutdown());
     connectedEngineCacheByConnectionId.forEach(ProjectBindingManager::tryStopServer);
     bindingUpdatesCheckerTimer.cancel();
   }
@@ -396,8 +553,8 @@ public class ProjectBindingManager implements WorkspaceSettingsChangeListener, W
   public void updateAllBindings(CancelChecker cancelToken, @Nullable Either<String, Integer> workDoneToken) {
     progressManager.doWithProgress("Update bindings", workDoneToken, cancelToken, progress -> {
       // Clear cached bindings to force rebind during next analysis
-      folderBindingCache.clear();
-      fileBindingCache.clear();
+      removeBindings(folderBindingCache, binding -> true);
+      removeBindings(fileBindingCache, binding -> true);
       updateBindings(collectConnectionsAndProjectsToUpdate(), progress);
     });
   }
@@ -435,11 +592,45 @@ public class ProjectBindingManager implements WorkspaceSettingsChangeListener, W
     }
   }
 
+  /**
+   * Connections are updated concurrently. Projects of a given connection are updated one after the other, since the engine
+   * serializes storage updates anyway.
+   */
   private Set<String> tryUpdateConnectionsAndBoundProjectStorages(Map<String, Set<String>> projectKeyByConnectionIdsToUpdate, ProgressFacade progress) {
-    var failedConnectionIds = new LinkedHashSet<String>();
-    projectKeyByConnectionIdsToUpdate.forEach(
-      (connectionId, projectKeys) -> tryUpdateConnectionAndBoundProjectsStorages(projectKeyByConnectionIdsToUpdate, progress, failedConnectionIds, connectionId, projectKeys));
-    return failedConnectionIds;
+    if (projectKeyByConnectionIdsToUpdate.isEmpty()) {
+      return Collections.emptySet();
+    }
+    Set<String> failedConnectionIds = ConcurrentHashMap.newKeySet();
+    var firstFailure = new AtomicReference<RuntimeException>();
+    var executor = Executors.newFixedThreadPool(Math.min(MAX_CONCURRENT_CONNECTION_UPDATES, projectKeyByConnectionIdsToUpdate.size()),
+      Utils.threadFactory("SonarLint storage updater", true));
+    try {
+      var updates = projectKeyByConnectionIdsToUpdate.entrySet().stream()
+        .map(entry -> CompletableFuture.runAsync(() -> {
+          if (firstFailure.get() != null) {
+            // Don't start other updates once one of them failed
+            return;
+          }
+          try {
+            tryUpdateConnectionAndBoundProjectsStorages(projectKeyByConnectionIdsToUpdate, progress, failedConnectionIds, entry.getKey(), entry.getValue());
+          } catch (RuntimeException e) {
+            firstFailure.compareAndSet(null, e);
+          }
+        }, executor))
+        .toArray(CompletableFuture[]::new);
+      // Wait for updates that are already running, so that none of them outlives the progress
+      CompletableFuture.allOf(updates).join();
+    } finally {
+      executor.shutdown();
+    }
+    var failure = firstFailure.get();
+    if (failure != null) {
+      // Rethrow the original exception, so that cancelation is still handled by the progress manager
+      throw failure;
+    }
+    return projectKeyByConnectionIdsToUpdate.keySet().stream()
+      .filter(failedConnectionIds::contains)
+      .collect(Collectors.toCollection(LinkedHashSet::new));
   }
 
   private void tryUpdateConnectionAndBoundProjectsStorages(Map<String, Set<String>> projectKeyByConnectionIdsToUpdate, ProgressFacade progress,
@@ -464,7 +655,7 @@ public class ProjectBindingManager implements WorkspaceSettingsChangeListener, W
 
   private static void tryUpdateBoundProjectsStorage(Set<String> projectKeys, EndpointParamsAndHttpClient endpointParamsAndHttpClient, ConnectedSonarLintEngine engine,
     ProgressFacade progress) {
-    projectKeys.forEach(projectKey -> progress.doInSubProgress(projectKey, 1.0f / projectKey.length(), subProgress -> {
+    projectKeys.forEach(projectKey -> progress.doInSubProgress(projectKey, 1.0f / projectKeys.size(), subProgress -> {
       try {
         engine.updateProject(endpointParamsAndHttpClient.getEndpointParams(), endpointParamsAndHttpClient.getHttpClient(), projectKey, true, subProgress.asCoreMonitor());
       } catch (CanceledException e) {
@@ -19,17 +19,24 @@
  */
 package org.sonarsource.sonarlint.ls.connected;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import javax.annotation.CheckForNull;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
 import org.sonarsource.sonarlint.core.client.api.connected.ConnectedSonarLintEngine;
 import org.sonarsource.sonarlint.core.client.api.connected.ProjectBinding;
 import org.sonarsource.sonarlint.core.tracking.CachingIssueTracker;
 import org.sonarsource.sonarlint.core.tracking.CachingIssueTrackerImpl;
-import org.sonarsource.sonarlint.core.tracking.InMemoryIssueTrackerCache;
 import org.sonarsource.sonarlint.core.tracking.IssueTrackable;
 import org.sonarsource.sonarlint.core.tracking.IssueTrackerCache;
 import org.sonarsource.sonarlint.core.tracking.Trackable;
@@ -39,24 +46,86 @@ import static java.util.function.Predicate.not;
 
 public class ServerIssueTrackerWrapper {
 
+  private static final Logger LOG = Loggers.get(ServerIssueTrackerWrapper.class);
+
+  static final Duration PROJECT_ISSUES_REFRESH_PERIOD = Duration.ofMinutes(10);
+
   private final ConnectedSonarLintEngine engine;
   private final ServerConnectionSettings.EndpointParamsAndHttpClient endpointParamsAndHttpClient;
   private final ProjectBinding projectBinding;
+  private final Executor serverIssuesExecutor;
+  private final Consumer<ServerIssueTrackerWrapper> projectIssuesDownloadListener;
+  private final Clock clock;
+  @CheckForNull
+  private CompletableFuture<Void> projectIssuesDownload;
+  private Instant lastProjectIssuesDownloadAttempt = Instant.MIN;
+  private volatile boolean projectIssuesDownloaded;
 
   private final IssueTrackerCache issueTrackerCache;
   private final CachingIssueTracker cachingIssueTracker;
   private final org.sonarsource.sonarlint.core.tracking.ServerIssueTracker tracker;
 
-  ServerIssueTrackerWrapper(ConnectedSonarLintEngine engine, ServerConnectionSettings.EndpointParamsAndHttpClient endpointParamsAndHttpClient, ProjectBinding projectBinding) {
+  ServerIssueTrackerWrapper(ConnectedSonarLintEngine engine, ServerConnectionSettings.EndpointParamsAndHttpClient endpointParamsAndHttpClient, ProjectBinding projectBinding,
+    IssueTrackerCache issueTrackerCache, Executor serverIssuesExecutor, Consumer<ServerIssueTrackerWrapper> projectIssuesDownloadListener) {
+    this(engine, endpointParamsAndHttpClient, projectBinding, issueTrackerCache, serverIssuesExecutor, projectIssuesDownloadListener, Clock.systemUTC());
+  }
+
+  /**
+   * @param projectIssuesDownloadListener called after each successful refresh of the issues of the whole project
+   */
+  ServerIssueTrackerWrapper(ConnectedSonarLintEngine engine, ServerConnectionSettings.EndpointParamsAndHttpClient endpointParamsAndHttpClient, ProjectBinding projectBinding,
+    IssueTrackerCache issueTrackerCache, Executor serverIssuesExecutor, Consumer<ServerIssueTrackerWrapper> projectIssuesDownloadListener, Clock clock) {
     this.engine = engine;
     this.endpointParamsAndHttpClient = endpointParamsAndHttpClient;
     this.projectBinding = projectBinding;
+    this.serverIssuesExecutor = serverIssuesExecutor;
+    this.projectIssuesDownloadListener = projectIssuesDownloadListener;
+    this.clock = clock;
 
-    this.issueTrackerCache = new InMemoryIssueTrackerCache();
+    this.issueTrackerCache = issueTrackerCache;
     this.cachingIssueTracker = new CachingIssueTrackerImpl(issueTrackerCache);
     this.tracker = new org.sonarsource.sonarlint.core.tracking.ServerIssueTracker(cachingIssueTracker);
   }
 
+  /**
+   * Start downloading the issues of the whole project in background, unless it was already attempted recently
+   */
+  public synchronized CompletableFuture<Void> prefetchServerIssues() {
+    var now = clock.instant();
+    if (projectIssuesDownload == null
+      || (projectIssuesDownload.isDone() && !lastProjectIssuesDownloadAttempt.plus(PROJECT_ISSUES_REFRESH_PERIOD).isAfter(now))) {
+      lastProjectIssuesDownloadAttempt = now;
+      projectIssuesDownload = CompletableFuture.runAsync(this::downloadProjectIssues, serverIssuesExecutor);
+    }
+    return projectIssuesDownload;
+  }
+
+  private void downloadProjectIssues() {
+    var projectKey = projectBinding.projectKey();
+    LOG.debug("Downloading server issues of project '{}'", projectKey);
+    // Until the first download, analyses fetch the issues of their file
+    var refresh = projectIssuesDownloaded;
+    try {
+      engine.downloadServerIssues(endpointParamsAndHttpClient.getEndpointParams(), endpointParamsAndHttpClient.getHttpClient(), projectKey, true, null);
+      projectIssuesDownloaded = true;
+    } catch (Exception e) {
+      LOG.error("Unable to download server issues of project '" + projectKey + "'", e);
+      return;
+    }
+    if (refresh) {
+      projectIssuesDownloadListener.accept(this);
+    }
+  }
+
+  /**
+   * Once downloaded, issues of the project are used even while they are refreshed in background. Until the first download completes,
+   * analyses fetch the issues of their file instead of waiting for it.
+   */
+  private boolean projectIssuesAvailable() {
+    prefetchServerIssues();
+    return projectIssuesDownloaded;
+  }
+
   public void matchAndTrack(String filePath, Collection<Issue> issues, IssueListener issueListener, boolean shouldFetchServerIssues) {
     if (issues.isEmpty()) {
       issueTrackerCache.put(filePath, Collections.emptyList());
@@ -64,7 +133,7 @@ public class ServerIssueTrackerWrapper {
     }
 
     cachingIssueTracker.matchAndTrackAsNew(filePath, toTrackables(issues));
-    if (shouldFetchServerIssues) {
+    if (shouldFetchServerIssues && !projectIssuesAvailable()) {
       tracker.update(endpointParamsAndHttpClient.getEndpointParams(), endpointParamsAndHttpClient.getHttpClient(), engine, projectBinding, Collections.singleton(filePath), true);
     } else {
       tracker.update(engine, projectBinding, Collections.singleton(filePath));
@@ -86,6 +155,17 @@ public class ServerIssueTrackerWrapper {
       }));
   }
 
+  /**
+   * Persist tracked issues, if supported by the cache
+   */
+  public void shutdown() {
+    try {
+      issueTrackerCache.shutdown();
+    } catch (Exception e) {
+      LOG.error("Unable to persist tracked issues", e);
+    }
+  }
+
   private static Collection<Trackable> toTrackables(Collection<Issue> issues) {
     return issues.stream().map(IssueTrackable::new).collect(Collectors.toList());
   }
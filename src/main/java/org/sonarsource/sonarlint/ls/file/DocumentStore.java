@@ -0,0 +1,88 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls.file;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.CheckForNull;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+
+/**
+ * Content of the documents opened in the client. Content is kept as a {@link Rope}, so that incremental changes
+ * can be applied without copying the whole text. Content is given to analyzers as an immutable snapshot.
+ */
+public class DocumentStore {
+  private final Map<URI, Rope> contentPerFileURI = new ConcurrentHashMap<>();
+
+  public void open(URI fileUri, String content) {
+    contentPerFileURI.put(fileUri, Rope.of(content));
+  }
+
+  public void replace(URI fileUri, String content) {
+    contentPerFileURI.put(fileUri, Rope.of(content));
+  }
+
+  /**
+   * Apply changes, in order, to the content of a document. Incremental changes can only be applied to open documents.
+   * @return false if the changes could not be applied
+   */
+  public boolean applyChanges(URI fileUri, List<TextDocumentContentChangeEvent> changes) {
+    return contentPerFileURI.compute(fileUri, (uri, content) -> {
+      if (content == null && (changes.isEmpty() || changes.get(0).getRange() != null)) {
+        return null;
+      }
+      var newContent = content != null ? content : Rope.of("");
+      for (var change : changes) {
+        newContent = applyChange(newContent, change);
+      }
+      return newContent;
+    }) != null;
+  }
+
+  private static Rope applyChange(Rope content, TextDocumentContentChangeEvent change) {
+    var range = change.getRange();
+    if (range == null) {
+      return Rope.of(change.getText());
+    }
+    var start = content.offsetAt(range.getStart().getLine(), range.getStart().getCharacter());
+    var end = content.offsetAt(range.getEnd().getLine(), range.getEnd().getCharacter());
+    return content.replace(start, Math.max(start, end), change.getText());
+  }
+
+  @CheckForNull
+  public Rope getContent(URI fileUri) {
+    return contentPerFileURI.get(fileUri);
+  }
+
+  public boolean isOpen(URI fileUri) {
+    return contentPerFileURI.containsKey(fileUri);
+  }
+
+  public Set<URI> getOpenFileURIs() {
+    return contentPerFileURI.keySet();
+  }
+
+  public void close(URI fileUri) {
+    contentPerFileURI.remove(fileUri);
+  }
+}
@@ -0,0 +1,296 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls.file;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import org.eclipse.lsp4j.FileChangeType;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Files of a workspace folder, per extension. The folder is browsed in parallel the first time files are requested, then the
+ * index is kept up to date with the changes notified by the client. Changes are applied in order, outside of the thread notifying
+ * them, and those notified while the folder is browsed are applied once it is indexed.
+ * Version control metadata, dependencies and build output directories are not indexed.
+ */
+public class FolderFileIndex {
+
+  private static final Logger LOG = Loggers.get(FolderFileIndex.class);
+
+  private static final Set<String> SKIPPED_DIRECTORIES = Set.of(".git", ".hg", ".svn", "node_modules");
+  // Build output directories are only skipped when next to the corresponding build file
+  private static final Map<String, List<String>> BUILD_FILES_PER_OUTPUT_DIRECTORY = Map.of(
+    "target", List.of("pom.xml"),
+    "build", List.of("build.gradle", "build.gradle.kts"));
+
+  private final Path rootPath;
+  private final Executor changesExecutor;
+  private final Map<String, Set<Path>> filesPerExtension = new ConcurrentHashMap<>();
+  // Directories containing indexed files, so that deleting a directory only browses its own content
+  private final Map<Path, IndexedDirectory> directories = new ConcurrentHashMap<>();
+  private volatile boolean indexed;
+  // Guarded by pendingChanges
+  private final Queue<Change> pendingChanges = new LinkedList<>();
+  private boolean indexing;
+  private boolean applyingChanges;
+
+  public FolderFileIndex(Path rootPath) {
+    this(rootPath, ForkJoinPool.commonPool());
+  }
+
+  // Visible for testing
+  FolderFileIndex(Path rootPath, Executor changesExecutor) {
+    this.rootPath = rootPath;
+    this.changesExecutor = changesExecutor;
+  }
+
+  /**
+   * @return the files whose name ends with <code>.suffix</code>
+   */
+  public Collection<Path> files(String suffix) throws IOException {
+    ensureIndexed();
+    var files = filesPerExtension.getOrDefault(extensionOf(suffix), Set.of());
+    var fileNameSuffix = "." + suffix;
+    return files.stream()
+      .filter(file -> file.getFileName().toString().endsWith(fileNameSuffix))
+      .collect(Collectors.toList());
+  }
+
+  public Collection<Path> files() throws IOException {
+    ensureIndexed();
+    return filesPerExtension.values().stream()
+      .flatMap(Set::stream)
+      .collect(Collectors.toList());
+  }
+
+  private synchronized void ensureIndexed() throws IOException {
+    if (indexed) {
+      return;
+    }
+    var start = System.currentTimeMillis();
+    if (!Files.isDirectory(rootPath)) {
+      throw new IOException("Not a directory: " + rootPath);
+    }
+    synchronized (pendingChanges) {
+      indexing = true;
+    }
+    try {
+      ForkJoinPool.commonPool().invoke(new IndexDirectory(rootPath));
+    } catch (UncheckedIOException e) {
+      filesPerExtension.clear();
+      directories.clear();
+      synchronized (pendingChanges) {
+        indexing = false;
+        pendingChanges.clear();
+      }
+      throw e.getCause();
+    }
+    LOG.debug("Indexed {} files of folder '{}' in {}ms", filesPerExtension.values().stream().mapToInt(Set::size).sum(), rootPath,
+      System.currentTimeMillis() - start);
+    synchronized (pendingChanges) {
+      indexed = true;
+      scheduleChanges();
+    }
+  }
+
+  /**
+   * Changes notified before the folder is browsed are ignored, since it is browsed after them
+   */
+  public void didChange(Path file, FileChangeType type) {
+    if (type == FileChangeType.Changed || !file.startsWith(rootPath)) {
+      // Content changes do not matter
+      return;
+    }
+    synchronized (pendingChanges) {
+      if (!indexing && !indexed) {
+        return;
+      }
+      pendingChanges.add(new Change(file, type));
+      if (indexed) {
+        scheduleChanges();
+      }
+    }
+  }
+
+  private void scheduleChanges() {
+    if (!applyingChanges && !pendingChanges.isEmpty()) {
+      applyingChanges = true;
+      changesExecutor.execute(this::applyPendingChanges);
+    }
+  }
+
+  private void applyPendingChanges() {
+    while (true) {
+      Change change;
+      synchronized (pendingChanges) {
+        change = pendingChanges.poll();
+        if (change == null) {
+          applyingChanges = false;
+          return;
+        }
+      }
+      try {
+        apply(change.file, change.type);
+      } catch (Exception e) {
+        LOG.debug("Unable to index change of '{}'", change.file, e);
+      }
+    }
+  }
+
+  private void apply(Path file, FileChangeType type) {
+    if (isInSkippedDirectory(file)) {
+      return;
+    }
+    if (type == FileChangeType.Created) {
+      if (Files.isDirectory(file)) {
+        // Moved or restored directory, the client may not notify its files
+        if (!isSkipped(file)) {
+          ForkJoinPool.commonPool().invoke(new IndexDirectory(file));
+        }
+      } else if (Files.isRegularFile(file)) {
+        add(file);
+      }
+    } else {
+      // May be a directory
+      remove(file);
+    }
+  }
+
+  private void add(Path file) {
+    directory(file.getParent()).files.add(file);
+    filesPerExtension.computeIfAbsent(extensionOf(file.getFileName().toString()), e -> ConcurrentHashMap.newKeySet()).add(file);
+  }
+
+  private IndexedDirectory directory(Path dir) {
+    var existing = directories.get(dir);
+    if (existing != null) {
+      return existing;
+    }
+    var created = directories.computeIfAbsent(dir, d -> new IndexedDirectory());
+    if (!dir.equals(rootPath)) {
+      directory(dir.getParent()).subDirectories.add(dir);
+    }
+    return created;
+  }
+
+  private void remove(Path fileOrDir) {
+    var parent = directories.get(fileOrDir.getParent());
+    var removedDir = directories.remove(fileOrDir);
+    if (removedDir != null) {
+      removedDir.files.forEach(this::unindex);
+      removedDir.subDirectories.forEach(this::remove);
+      if (parent != null) {
+        parent.subDirectories.remove(fileOrDir);
+      }
+    } else if (parent != null && parent.files.remove(fileOrDir)) {
+      unindex(fileOrDir);
+    }
+  }
+
+  private void unindex(Path file) {
+    var files = filesPerExtension.get(extensionOf(file.getFileName().toString()));
+    if (files != null) {
+      files.remove(file);
+    }
+  }
+
+  private static String extensionOf(String fileName) {
+    return fileName.substring(fileName.lastIndexOf('.') + 1);
+  }
+
+  private boolean isInSkippedDirectory(Path file) {
+    for (var dir = file.getParent(); dir != null && dir.startsWith(rootPath) && !dir.equals(rootPath); dir = dir.getParent()) {
+      if (isSkipped(dir)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isSkipped(Path dir) {
+    var dirName = dir.getFileName().toString();
+    return SKIPPED_DIRECTORIES.contains(dirName)
+      || BUILD_FILES_PER_OUTPUT_DIRECTORY.getOrDefault(dirName, List.of()).stream().anyMatch(buildFile -> Files.exists(dir.resolveSibling(buildFile)));
+  }
+
+  private static class IndexedDirectory {
+    private final Set<Path> files = ConcurrentHashMap.newKeySet();
+    private final Set<Path> subDirectories = ConcurrentHashMap.newKeySet();
+  }
+
+  private static class Change {
+    private final Path file;
+    private final FileChangeType type;
+
+    private Change(Path file, FileChangeType type) {
+      this.file = file;
+      this.type = type;
+    }
+  }
+
+  private class IndexDirectory extends RecursiveAction {
+    private final Path dir;
+
+    private IndexDirectory(Path dir) {
+      this.dir = dir;
+    }
+
+    @Override
+    protected void compute() {
+      var subDirectories = new ArrayList<IndexDirectory>();
+      try (var entries = Files.newDirectoryStream(dir)) {
+        for (var entry : entries) {
+          var attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+          // Like Files.walk, symbolic links to directories are not followed
+          if (attributes.isDirectory()) {
+            if (!isSkipped(entry)) {
+              subDirectories.add(new IndexDirectory(entry));
+            }
+          } else if (attributes.isRegularFile() || (attributes.isSymbolicLink() && Files.isRegularFile(entry))) {
+            add(entry);
+          }
+        }
+      } catch (IOException e) {
+        if (dir.equals(rootPath)) {
+          throw new UncheckedIOException(e);
+        }
+        LOG.debug("Unable to browse directory '{}'", dir);
+      }
+      invokeAll(subDirectories);
+    }
+  }
+}
@@ -21,7 +21,6 @@ package org.sonarsource.sonarlint.ls.file;
 
 import java.io.IOException;
 import java.net.URI;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.stream.Stream;
 import org.sonar.api.batch.fs.InputFile;
@@ -47,9 +46,7 @@ public class FolderFileSystem implements ClientFileSystem {
   public Stream<ClientInputFile> files(String suffix, InputFile.Type type) {
     var settings = folder.getSettings();
     try {
-      return Files.walk(folder.getRootPath())
-        .filter(Files::isRegularFile)
-        .filter(filePath -> filePath.toString().endsWith("." + suffix))
+      return folder.getFileIndex().files(suffix).stream()
         .filter(filePath -> typeMatches(filePath.toUri(), type, settings))
         .map(filePath -> toClientInputFile(filePath, type));
     } catch (IOException e) {
@@ -61,8 +58,7 @@ public class FolderFileSystem implements ClientFileSystem {
   public Stream<ClientInputFile> files() {
     var settings = folder.getSettings();
     try {
-      return Files.walk(folder.getRootPath())
-        .filter(Files::isRegularFile)
+      return folder.getFileIndex().files().stream()
         .map(filePath -> toClientInputFile(filePath, isTestFile(settings, filePath.toUri()) ? InputFile.Type.TEST : InputFile.Type.MAIN));
     } catch (IOException e) {
       throw new IllegalStateException("Cannot browse the files", e);
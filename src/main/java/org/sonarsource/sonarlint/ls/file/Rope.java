@@ -0,0 +1,487 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable text representation allowing to replace a range of text in O(log n), where n is the length of the text.
+ * Text is split in chunks stored in the leaves of a height-balanced (AVL) binary tree. Each node keeps the length of
+ * its text and the number of line feeds it contains, which allows to convert a (line, character) position to an offset
+ * without scanning the whole text.
+ * <p>
+ * Offsets and lengths are expressed in UTF-16 code units, like in {@link String} and in the LSP specification.
+ * <p>
+ * Initial text is kept encoded in UTF-8, off-heap for big texts, and decoded only when needed. Text inserted by edits
+ * is kept as {@link String}s.
+ */
+public final class Rope {
+
+  // Visible for testing
+  static final int MAX_LEAF_LENGTH = 512;
+  // Visible for testing
+  static final int MAX_ENCODED_LEAF_SIZE = 4096;
+  // Visible for testing
+  static final int OFF_HEAP_THRESHOLD = 1024 * 1024;
+
+  private static final Rope EMPTY = new Rope(new TextLeaf(""));
+
+  private final Node root;
+
+  private Rope(Node root) {
+    this.root = root;
+  }
+
+  public static Rope of(String text) {
+    if (text.isEmpty()) {
+      return EMPTY;
+    }
+    var bytes = text.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer buffer;
+    if (bytes.length >= OFF_HEAP_THRESHOLD) {
+      buffer = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+    } else {
+      buffer = ByteBuffer.wrap(bytes);
+    }
+    return new Rope(buildEncoded(buffer, 0, bytes.length));
+  }
+
+  public int length() {
+    return root.length;
+  }
+
+  public int lineCount() {
+    return root.lineFeeds + 1;
+  }
+
+  /**
+   * @return the offset of the given position, clamped to the bounds of the text
+   */
+  public int offsetAt(int line, int character) {
+    if (line < 0) {
+      return 0;
+    }
+    if (line > root.lineFeeds) {
+      return length();
+    }
+    var lineStart = line == 0 ? 0 : (root.offsetOfLineFeed(line) + 1);
+    var lineEnd = line == root.lineFeeds ? length() : root.offsetOfLineFeed(line + 1);
+    return lineStart + Math.max(0, Math.min(character, lineEnd - lineStart));
+  }
+
+  public Rope replace(int start, int end, String text) {
+    if (start < 0 || end < start || end > length()) {
+      throw new IndexOutOfBoundsException("Invalid range [" + start + ", " + end + "] for text of length " + length());
+    }
+    var left = split(root, start)[0];
+    var right = split(root, end)[1];
+    var result = text.isEmpty() ? join(left, right) : join(join(left, build(text, 0, text.length())), right);
+    return new Rope(result);
+  }
+
+  /**
+   * @return the UTF-8 encoded text, without copying the parts of the initial text that were not modified
+   */
+  public InputStream inputStream() {
+    return new SequenceInputStream(new LeafInputStreams(root));
+  }
+
+  @Override
+  public String toString() {
+    var builder = new StringBuilder(length());
+    root.appendTo(builder);
+    return builder.toString();
+  }
+
+  // Visible for testing
+  int height() {
+    return root.height;
+  }
+
+  private static Node build(String text, int start, int end) {
+    var length = end - start;
+    if (length <= MAX_LEAF_LENGTH) {
+      return new TextLeaf(text.substring(start, end));
+    }
+    var middle = start + length / 2;
+    // Do not split a surrogate pair, its halves could not be encoded separately
+    if (Character.isHighSurrogate(text.charAt(middle - 1)) && Character.isLowSurrogate(text.charAt(middle))) {
+      middle++;
+    }
+    return new Branch(build(text, start, middle), build(text, middle, end));
+  }
+
+  private static Node buildEncoded(ByteBuffer buffer, int start, int end) {
+    if (end - start <= MAX_ENCODED_LEAF_SIZE) {
+      return new EncodedLeaf(buffer, start, end);
+    }
+    var middle = start + (end - start) / 2;
+    // Do not split a multi-byte character
+    while (isContinuationByte(buffer.get(middle))) {
+      middle++;
+    }
+    return new Branch(buildEncoded(buffer, start, middle), buildEncoded(buffer, middle, end));
+  }
+
+  private static boolean isContinuationByte(byte b) {
+    return (b & 0xC0) == 0x80;
+  }
+
+  private static Node[] split(Node node, int offset) {
+    if (offset <= 0) {
+      return new Node[] {EMPTY.root, node};
+    }
+    if (offset >= node.length) {
+      return new Node[] {node, EMPTY.root};
+    }
+    if (node instanceof Leaf) {
+      var text = ((Leaf) node).text();
+      return new Node[] {build(text, 0, offset), build(text, offset, text.length())};
+    }
+    var branch = (Branch) node;
+    if (offset < branch.left.length) {
+      var parts = split(branch.left, offset);
+      return new Node[] {parts[0], join(parts[1], branch.right)};
+    }
+    var parts = split(branch.right, offset - branch.left.length);
+    return new Node[] {join(branch.left, parts[0]), parts[1]};
+  }
+
+  private static Node join(Node left, Node right) {
+    if (left.length == 0) {
+      return right;
+    }
+    if (right.length == 0) {
+      return left;
+    }
+    if (left.endsWithHighSurrogate() && right.startsWithLowSurrogate()) {
+      // Keep both halves of the surrogate pair in the same leaf, so that it is encoded as one character
+      var leftParts = split(left, left.length - 1);
+      var rightParts = split(right, 1);
+      var pair = new TextLeaf(((Leaf) leftParts[1]).text() + ((Leaf) rightParts[0]).text());
+      return join(join(leftParts[0], pair), rightParts[1]);
+    }
+    if (left instanceof TextLeaf && right instanceof TextLeaf && left.length + right.length <= MAX_LEAF_LENGTH) {
+      // Avoid fragmentation when typing characters one by one
+      return new TextLeaf(((TextLeaf) left).text + ((TextLeaf) right).text);
+    }
+    if (left.height > right.height + 1) {
+      var branch = (Branch) left;
+      return rebalance(branch.left, join(branch.right, right));
+    }
+    if (right.height > left.height + 1) {
+      var branch = (Branch) right;
+      return rebalance(join(left, branch.left), branch.right);
+    }
+    return new Branch(left, right);
+  }
+
+  private static Node rebalance(Node left, Node right) {
+    if (left.height > right.height + 1) {
+      var branch = (Branch) left;
+      if (branch.right.height > branch.left.height) {
+        var pivot = (Branch) branch.right;
+        return new Branch(new Branch(branch.left, pivot.left), new Branch(pivot.right, right));
+      }
+      return new Branch(branch.left, new Branch(branch.right, right));
+    }
+    if (right.height > left.height + 1) {
+      var branch = (Branch) right;
+      if (branch.left.height > branch.right.height) {
+        var pivot = (Branch) branch.left;
+        return new Branch(new Branch(left, pivot.left), new Branch(pivot.right, branch.right));
+      }
+      return new Branch(new Branch(left, branch.left), branch.right);
+    }
+    return new Branch(left, right);
+  }
+
+  private abstract static class Node {
+    final int length;
+    final int lineFeeds;
+    final int height;
+
+    Node(int length, int lineFeeds, int height) {
+      this.length = length;
+      this.lineFeeds = lineFeeds;
+      this.height = height;
+    }
+
+    /**
+     * @return the offset of the n-th line feed (starting at 1) in this node
+     */
+    abstract int offsetOfLineFeed(int n);
+
+    abstract void appendTo(StringBuilder builder);
+
+    abstract boolean startsWithLowSurrogate();
+
+    abstract boolean endsWithHighSurrogate();
+  }
+
+  private abstract static class Leaf extends Node {
+    Leaf(int length, int lineFeeds) {
+      super(length, lineFeeds, 0);
+    }
+
+    abstract String text();
+
+    abstract InputStream inputStream();
+
+    @Override
+    void appendTo(StringBuilder builder) {
+      builder.append(text());
+    }
+  }
+
+  private static final class TextLeaf extends Leaf {
+    private final String text;
+
+    TextLeaf(String text) {
+      super(text.length(), countLineFeeds(text));
+      this.text = text;
+    }
+
+    private static int countLineFeeds(String text) {
+      var count = 0;
+      for (var i = 0; i < text.length(); i++) {
+        if (text.charAt(i) == '\n') {
+          count++;
+        }
+      }
+      return count;
+    }
+
+    @Override
+    int offsetOfLineFeed(int n) {
+      var index = -1;
+      for (var i = 0; i < n; i++) {
+        index = text.indexOf('\n', index + 1);
+      }
+      return index;
+    }
+
+    @Override
+    String text() {
+      return text;
+    }
+
+    @Override
+    boolean startsWithLowSurrogate() {
+      return !text.isEmpty() && Character.isLowSurrogate(text.charAt(0));
+    }
+
+    @Override
+    boolean endsWithHighSurrogate() {
+      return !text.isEmpty() && Character.isHighSurrogate(text.charAt(text.length() - 1));
+    }
+
+    @Override
+    InputStream inputStream() {
+      return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Slice of a shared buffer containing UTF-8 encoded text. The slice never starts or ends in the middle of a character.
+   */
+  private static final class EncodedLeaf extends Leaf {
+    private final ByteBuffer buffer;
+    private final int start;
+    private final int end;
+
+    EncodedLeaf(ByteBuffer buffer, int start, int end) {
+      super(countUtf16Units(buffer, start, end), countLineFeeds(buffer, start, end));
+      this.buffer = buffer;
+      this.start = start;
+      this.end = end;
+    }
+
+    private static int countUtf16Units(ByteBuffer buffer, int start, int end) {
+      var count = 0;
+      for (var i = start; i < end; i++) {
+        count += utf16Units(buffer.get(i));
+      }
+      return count;
+    }
+
+    /**
+     * @return the number of UTF-16 code units of the character starting with this byte
+     */
+    private static int utf16Units(byte b) {
+      if (isContinuationByte(b)) {
+        return 0;
+      }
+      // 4 bytes sequences are encoded as surrogate pairs in UTF-16
+      return (b & 0xF8) == 0xF0 ? 2 : 1;
+    }
+
+    private static int countLineFeeds(ByteBuffer buffer, int start, int end) {
+      var count = 0;
+      for (var i = start; i < end; i++) {
+        if (buffer.get(i) == '\n') {
+          count++;
+        }
+      }
+      return count;
+    }
+
+    @Override
+    int offsetOfLineFeed(int n) {
+      var offset = 0;
+      var remaining = n;
+      for (var i = start; i < end; i++) {
+        var b = buffer.get(i);
+        if (b == '\n' && --remaining == 0) {
+          return offset;
+        }
+        offset += utf16Units(b);
+      }
+      return -1;
+    }
+
+    @Override
+    boolean startsWithLowSurrogate() {
+      return false;
+    }
+
+    @Override
+    boolean endsWithHighSurrogate() {
+      return false;
+    }
+
+    private ByteBuffer slice() {
+      return buffer.duplicate().position(start).limit(end);
+    }
+
+    @Override
+    String text() {
+      return StandardCharsets.UTF_8.decode(slice()).toString();
+    }
+
+    @Override
+    InputStream inputStream() {
+      return new ByteBufferInputStream(slice());
+    }
+  }
+
+  private static final class Branch extends Node {
+    private final Node left;
+    private final Node right;
+
+    Branch(Node left, Node right) {
+      super(left.length + right.length, left.lineFeeds + right.lineFeeds, Math.max(left.height, right.height) + 1);
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    int offsetOfLineFeed(int n) {
+      if (n <= left.lineFeeds) {
+        return left.offsetOfLineFeed(n);
+      }
+      return left.length + right.offsetOfLineFeed(n - left.lineFeeds);
+    }
+
+    @Override
+    void appendTo(StringBuilder builder) {
+      left.appendTo(builder);
+      right.appendTo(builder);
+    }
+
+    @Override
+    boolean startsWithLowSurrogate() {
+      return left.startsWithLowSurrogate();
+    }
+
+    @Override
+    boolean endsWithHighSurrogate() {
+      return right.endsWithHighSurrogate();
+    }
+  }
+
+  private static final class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      var count = Math.min(len, buffer.remaining());
+      buffer.get(b, off, count);
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+
+  /**
+   * Iterate over the leaves of a tree, from left to right.
+   */
+  private static final class LeafInputStreams implements Enumeration<InputStream> {
+    private final Deque<Node> pending = new ArrayDeque<>();
+
+    LeafInputStreams(Node root) {
+      pending.push(root);
+    }
+
+    @Override
+    public boolean hasMoreElements() {
+      return !pending.isEmpty();
+    }
+
+    @Override
+    public InputStream nextElement() {
+      if (pending.isEmpty()) {
+        throw new NoSuchElementException();
+      }
+      var node = pending.pop();
+      while (node instanceof Branch) {
+        pending.push(((Branch) node).right);
+        node = ((Branch) node).left;
+      }
+      return ((Leaf) node).inputStream();
+    }
+  }
+}
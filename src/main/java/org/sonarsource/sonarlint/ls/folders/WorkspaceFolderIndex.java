@@ -0,0 +1,140 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls.folders;
+
+import java.net.URI;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.CheckForNull;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Immutable prefix tree of workspace folder URIs, segment by segment, to find the deepest folder containing a file in a single
+ * walk. The same rules as {@link WorkspaceFoldersManager#isAncestor(URI, URI)} apply. Results are memoized per file.
+ */
+class WorkspaceFolderIndex {
+
+  private static final Logger LOG = Loggers.get(WorkspaceFolderIndex.class);
+
+  private static final int MAX_MEMOIZED_FILES = 10_000;
+  private static final boolean CASE_INSENSITIVE_PATHS = Paths.get("a").equals(Paths.get("A"));
+
+  private final Node root = new Node();
+  private final Map<URI, Optional<URI>> folderUriPerFileUri = new ConcurrentHashMap<>();
+
+  WorkspaceFolderIndex(Collection<URI> folderUris) {
+    folderUris.forEach(this::add);
+  }
+
+  private void add(URI folderUri) {
+    var segments = segments(folderUri);
+    if (segments == null) {
+      LOG.debug("Unsupported workspace folder URI {}", folderUri);
+      return;
+    }
+    var node = root;
+    for (var segment : segments) {
+      node = node.children.computeIfAbsent(segment, s -> new Node());
+    }
+    node.folderUri = folderUri;
+  }
+
+  Optional<URI> findDeepestFolder(URI fileUri) {
+    var memoized = folderUriPerFileUri.get(fileUri);
+    if (memoized != null) {
+      return memoized;
+    }
+    var segments = segments(fileUri);
+    if (segments == null) {
+      return Optional.empty();
+    }
+    URI deepest = null;
+    var candidates = 0;
+    var node = root;
+    for (var segment : segments) {
+      node = node.children.get(segment);
+      if (node == null) {
+        break;
+      }
+      if (node.folderUri != null) {
+        deepest = node.folderUri;
+        candidates++;
+      }
+    }
+    if (candidates > 1) {
+      LOG.debug("Multiple candidates workspace folders to contains {}. Default to the deepest one.", fileUri);
+    }
+    if (folderUriPerFileUri.size() >= MAX_MEMOIZED_FILES) {
+      folderUriPerFileUri.clear();
+    }
+    var result = Optional.ofNullable(deepest);
+    folderUriPerFileUri.put(fileUri, result);
+    return result;
+  }
+
+  /**
+   * @return null if the URI is not supported
+   */
+  @CheckForNull
+  private static List<String> segments(URI uri) {
+    if (uri.isOpaque() || uri.getScheme() == null) {
+      return null;
+    }
+    var segments = new ArrayList<String>();
+    segments.add(uri.getScheme().toLowerCase(Locale.ENGLISH) + "://" + uri.getHost() + ":" + uri.getPort());
+    if (uri.getScheme().equalsIgnoreCase("file")) {
+      Path path;
+      try {
+        path = Paths.get(uri);
+      } catch (IllegalArgumentException | FileSystemNotFoundException e) {
+        return null;
+      }
+      if (path.getRoot() != null) {
+        segments.add(pathSegment(path.getRoot()));
+      }
+      path.forEach(name -> segments.add(pathSegment(name)));
+    } else {
+      // Assume "/" is the separator of "folders"
+      segments.addAll(Arrays.asList(uri.getPath().split("/")));
+    }
+    return segments;
+  }
+
+  private static String pathSegment(Path name) {
+    return CASE_INSENSITIVE_PATHS ? name.toString().toLowerCase(Locale.ENGLISH) : name.toString();
+  }
+
+  private static class Node {
+    private final Map<String, Node> children = new HashMap<>();
+    @CheckForNull
+    private URI folderUri;
+  }
+}
@@ -22,14 +22,17 @@ package org.sonarsource.sonarlint.ls.folders;
 import java.net.URI;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.annotation.CheckForNull;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 import org.eclipse.lsp4j.WorkspaceFolder;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
+import org.sonarsource.sonarlint.ls.file.FolderFileIndex;
 import org.sonarsource.sonarlint.ls.settings.WorkspaceFolderSettings;
 
 public class WorkspaceFolderWrapper {
@@ -39,7 +42,8 @@ public class WorkspaceFolderWrapper {
   private final URI uri;
   private final WorkspaceFolder lspFolder;
   private WorkspaceFolderSettings settings;
-  private final CountDownLatch initLatch = new CountDownLatch(1);
+  private final CompletableFuture<Void> initialized = new CompletableFuture<>();
+  private FolderFileIndex fileIndex;
 
   public WorkspaceFolderWrapper(URI uri, WorkspaceFolder lspFolder) {
     this.uri = uri;
@@ -55,6 +59,13 @@ public class WorkspaceFolderWrapper {
     return uri;
   }
 
+  public synchronized FolderFileIndex getFileIndex() {
+    if (fileIndex == null) {
+      fileIndex = new FolderFileIndex(getRootPath());
+    }
+    return fileIndex;
+  }
+
   @Override
   public String toString() {
     return ToStringBuilder.reflectionToString(lspFolder, ToStringStyle.SHORT_PREFIX_STYLE);
@@ -65,16 +76,24 @@ public class WorkspaceFolderWrapper {
    */
   public WorkspaceFolderSettings getSettings() {
     try {
-      if (initLatch.await(1, TimeUnit.MINUTES)) {
-        return settings;
-      }
+      initialized.get(1, TimeUnit.MINUTES);
+      return settings;
     } catch (InterruptedException e) {
       LOG.debug("Interrupted!", e);
       Thread.currentThread().interrupt();
+    } catch (ExecutionException | TimeoutException e) {
+      // Fall through
     }
     throw new IllegalStateException("Unable to get settings in time");
   }
 
+  /**
+   * Completed once settings are initialized
+   */
+  public CompletableFuture<Void> initialized() {
+    return initialized.copy();
+  }
+
   @CheckForNull
   public WorkspaceFolderSettings getRawSettings() {
     return settings;
@@ -82,7 +101,7 @@ public class WorkspaceFolderWrapper {
 
   public void setSettings(WorkspaceFolderSettings settings) {
     this.settings = settings;
-    initLatch.countDown();
+    initialized.complete(null);
   }
 
 }
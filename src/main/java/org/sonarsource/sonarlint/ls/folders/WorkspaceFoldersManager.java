@@ -24,13 +24,11 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import org.eclipse.lsp4j.WorkspaceFolder;
 import org.eclipse.lsp4j.WorkspaceFoldersChangeEvent;
@@ -45,6 +43,7 @@ public class WorkspaceFoldersManager {
 
   private final Map<URI, WorkspaceFolderWrapper> folders = new ConcurrentHashMap<>();
   private final List<WorkspaceFolderLifecycleListener> listeners = new ArrayList<>();
+  private volatile WorkspaceFolderIndex index = new WorkspaceFolderIndex(List.of());
 
   public void initialize(@Nullable List<WorkspaceFolder> workspaceFolders) {
     if (workspaceFolders != null) {
@@ -74,6 +73,7 @@ public class WorkspaceFoldersManager {
       LOG.warn("Unregistered workspace folder was missing: " + uri);
       return;
     }
+    reindex();
     LOG.debug("Folder {} removed", removed);
     listeners.forEach(l -> l.removed(removed));
   }
@@ -85,22 +85,16 @@ public class WorkspaceFoldersManager {
     } else {
       LOG.debug("Folder {} added", addedWrapper);
     }
+    reindex();
     return addedWrapper;
   }
 
+  private synchronized void reindex() {
+    index = new WorkspaceFolderIndex(folders.keySet());
+  }
+
   public Optional<WorkspaceFolderWrapper> findFolderForFile(URI uri) {
-    var folderUriCandidates = folders.keySet().stream()
-      .filter(wfRoot -> isAncestor(wfRoot, uri))
-      // Sort by path descending length to prefer the deepest one in case of multiple nested workspace folders
-      .sorted(Comparator.<URI>comparingInt(wfRoot -> wfRoot.getPath().length()).reversed())
-      .collect(Collectors.toList());
-    if (folderUriCandidates.isEmpty()) {
-      return Optional.empty();
-    }
-    if (folderUriCandidates.size() > 1) {
-      LOG.debug("Multiple candidates workspace folders to contains {}. Default to the deepest one.", uri);
-    }
-    return Optional.of(folders.get(folderUriCandidates.get(0)));
+    return index.findDeepestFolder(uri).map(folders::get);
   }
 
   // Visible for testing
@@ -0,0 +1,97 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls.java;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonarsource.sonarlint.ls.SonarLintExtendedLanguageClient.GetJavaConfigResponse;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Analysis properties derived from a Java configuration, with the classpath entries that do not exist filtered out.
+ */
+class JavaAnalysisProperties {
+
+  private static final Logger LOG = Loggers.get(JavaAnalysisProperties.class);
+
+  private final Map<String, String> properties;
+  // Existing or not, all the entries the properties depend on
+  private final Set<String> classpathEntries;
+
+  private JavaAnalysisProperties(Map<String, String> properties, Set<String> classpathEntries) {
+    this.properties = properties;
+    this.classpathEntries = classpathEntries;
+  }
+
+  static JavaAnalysisProperties compute(GetJavaConfigResponse javaConfig, Function<Path, List<Path>> jdkClassesRootsProvider) {
+    Map<String, String> props = new HashMap<>();
+    var vmLocationStr = javaConfig.getVmLocation();
+    List<Path> jdkClassesRoots = new ArrayList<>();
+    if (vmLocationStr != null) {
+      var vmLocation = Paths.get(vmLocationStr);
+      jdkClassesRoots = jdkClassesRootsProvider.apply(vmLocation);
+      props.put("sonar.java.jdkHome", vmLocationStr);
+    }
+    var classpathEntries = Stream.concat(
+      jdkClassesRoots.stream().map(Path::toAbsolutePath).map(Path::toString),
+      Stream.of(javaConfig.getClasspath()))
+      .collect(Collectors.toList());
+    var classpath = classpathEntries.stream()
+      .filter(path -> {
+        boolean exists = new File(path).exists();
+        if (!exists) {
+          LOG.debug(String.format("Classpath '%s' from configuration does not exist, skipped", path));
+        }
+        return exists;
+      })
+      .collect(joining(","));
+    props.put("sonar.java.source", javaConfig.getSourceLevel());
+    if (!javaConfig.isTest()) {
+      props.put("sonar.java.libraries", classpath);
+    } else {
+      props.put("sonar.java.test.libraries", classpath);
+    }
+    return new JavaAnalysisProperties(Collections.unmodifiableMap(props), Set.copyOf(classpathEntries));
+  }
+
+  Map<String, String> getProperties() {
+    return properties;
+  }
+
+  /**
+   * @return all the entries the properties depend on, existing or not
+   */
+  Set<String> getClasspathEntries() {
+    return classpathEntries;
+  }
+}
@@ -20,46 +20,96 @@
 package org.sonarsource.sonarlint.ls.java;
 
 import java.net.URI;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.eclipse.lsp4j.FileChangeType;
+import org.eclipse.lsp4j.FileEvent;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonarsource.sonarlint.ls.SonarLintExtendedLanguageClient;
+import org.sonarsource.sonarlint.ls.SonarLintExtendedLanguageClient.GetJavaConfigResponse;
 import org.sonarsource.sonarlint.ls.Utils;
 import org.sonarsource.sonarlint.ls.file.FileLanguageCache;
 
 import static java.util.Optional.empty;
 import static java.util.Optional.ofNullable;
 
+/**
+ * Java configuration of files. The client answers per file, but files of the same project and kind of sources (main or test)
+ * share the same configuration: only one instance of it is kept per project root, referenced by each file, and classpath
+ * entries are shared between configurations.
+ */
 public class JavaConfigCache {
   private static final Logger LOG = Loggers.get(JavaConfigCache.class);
   private final SonarLintExtendedLanguageClient client;
   private final FileLanguageCache fileLanguageCache;
-  public final Map<URI, Optional<SonarLintExtendedLanguageClient.GetJavaConfigResponse>> javaConfigPerFileURI = new ConcurrentHashMap<>();
+  private final Map<URI, Optional<GetJavaConfigResponse>> javaConfigPerFileURI = new ConcurrentHashMap<>();
+  private final Map<URI, CompletableFuture<Optional<GetJavaConfigResponse>>> pendingFetchPerFileURI = new ConcurrentHashMap<>();
+  private final Map<ProjectKey, GetJavaConfigResponse> javaConfigPerProject = new ConcurrentHashMap<>();
+  private final Map<String, String> classpathEntries = new ConcurrentHashMap<>();
+  // Keys are the configurations shared per project, compared by identity
+  private final Map<GetJavaConfigResponse, JavaAnalysisProperties> javaPropertiesPerConfig = new ConcurrentHashMap<>();
+  // Configurations having analysis properties, per classpath entry and per parent directory of classpath entries
+  private final Map<Path, Set<GetJavaConfigResponse>> configsPerClasspathPath = new ConcurrentHashMap<>();
+  // Only kept for the Java homes of the configurations shared per project
+  private final Map<Path, List<Path>> jvmClasspathPerJavaHome = new ConcurrentHashMap<>();
 
   public JavaConfigCache(SonarLintExtendedLanguageClient client, FileLanguageCache fileLanguageCache) {
     this.client = client;
     this.fileLanguageCache = fileLanguageCache;
   }
 
-  public Optional<SonarLintExtendedLanguageClient.GetJavaConfigResponse> get(URI fileUri) {
+  public Optional<GetJavaConfigResponse> get(URI fileUri) {
     return Optional.ofNullable(javaConfigPerFileURI.get(fileUri)).orElse(Optional.empty());
   }
 
+  /**
+   * @return the root of the Java project of the file, if its configuration is known
+   */
+  public Optional<Path> getProjectPath(URI fileUri) {
+    return get(fileUri)
+      .filter(javaConfig -> javaConfig.getProjectRoot() != null)
+      .flatMap(javaConfig -> {
+        try {
+          return Optional.of(projectPath(javaConfig));
+        } catch (IllegalArgumentException | FileSystemNotFoundException e) {
+          // Not a file URI
+          return Optional.empty();
+        }
+      });
+  }
+
   public void remove(URI fileUri) {
     javaConfigPerFileURI.remove(fileUri);
   }
 
   public void clear() {
     javaConfigPerFileURI.clear();
+    pendingFetchPerFileURI.clear();
+    javaConfigPerProject.clear();
+    classpathEntries.clear();
+    javaPropertiesPerConfig.clear();
+    configsPerClasspathPath.clear();
+    jvmClasspathPerJavaHome.clear();
   }
 
-  public Optional<SonarLintExtendedLanguageClient.GetJavaConfigResponse> getOrFetch(URI fileUri) {
-    Optional<SonarLintExtendedLanguageClient.GetJavaConfigResponse> javaConfigOpt;
+  public Optional<GetJavaConfigResponse> getOrFetch(URI fileUri) {
+    Optional<GetJavaConfigResponse> javaConfigOpt;
     try {
       javaConfigOpt = getOrFetchAsync(fileUri).get(1, TimeUnit.MINUTES);
     } catch (InterruptedException e) {
@@ -75,13 +125,21 @@ public class JavaConfigCache {
   /**
    * Try to fetch Java config. In case of any error, cache an empty result to avoid repeated calls.
    */
-  private CompletableFuture<Optional<SonarLintExtendedLanguageClient.GetJavaConfigResponse>> getOrFetchAsync(URI fileUri) {
+  public CompletableFuture<Optional<GetJavaConfigResponse>> getOrFetchAsync(URI fileUri) {
     if (!fileLanguageCache.isJava(fileUri)) {
       return CompletableFuture.completedFuture(Optional.empty());
     }
-    if (javaConfigPerFileURI.containsKey(fileUri)) {
-      return CompletableFuture.completedFuture(javaConfigPerFileURI.get(fileUri));
+    var cachedJavaConfig = javaConfigPerFileURI.get(fileUri);
+    if (cachedJavaConfig != null) {
+      return CompletableFuture.completedFuture(cachedJavaConfig);
     }
+    // Concurrent requests for the same file share the same fetch
+    var pendingFetch = pendingFetchPerFileURI.computeIfAbsent(fileUri, this::fetch);
+    pendingFetch.whenComplete((r, t) -> pendingFetchPerFileURI.remove(fileUri, pendingFetch));
+    return pendingFetch;
+  }
+
+  private CompletableFuture<Optional<GetJavaConfigResponse>> fetch(URI fileUri) {
     return client.getJavaConfig(fileUri.toString())
       .handle((r, t) -> {
         if (t != null) {
@@ -90,28 +148,191 @@ public class JavaConfigCache {
         return r;
       })
       .thenApply(javaConfig -> {
-        var configOpt = ofNullable(javaConfig);
+        var configOpt = ofNullable(javaConfig).map(this::share);
         javaConfigPerFileURI.put(fileUri, configOpt);
         LOG.debug("Cached Java config for file '{}'", fileUri);
         return configOpt;
       });
   }
 
+  /**
+   * @return the configuration already known for the same project and kind of sources if it is the same, the given one otherwise
+   */
+  private GetJavaConfigResponse share(GetJavaConfigResponse javaConfig) {
+    if (javaConfig.getProjectRoot() == null) {
+      return javaConfig;
+    }
+    Path projectPath;
+    try {
+      projectPath = projectPath(javaConfig);
+    } catch (IllegalArgumentException | FileSystemNotFoundException e) {
+      // Not a file URI, don't share
+      return javaConfig;
+    }
+    var key = new ProjectKey(projectPath, javaConfig.isTest());
+    var replaced = new AtomicBoolean();
+    var shared = javaConfigPerProject.compute(key, (k, known) -> {
+      if (known != null && sameConfig(known, javaConfig)) {
+        return known;
+      }
+      if (known != null) {
+        removeJavaProperties(known);
+        replaced.set(true);
+      }
+      var classpath = javaConfig.getClasspath();
+      if (classpath != null) {
+        javaConfig.setClasspath(Arrays.stream(classpath).map(entry -> classpathEntries.computeIfAbsent(entry, e -> e)).toArray(String[]::new));
+      }
+      return javaConfig;
+    });
+    if (replaced.get()) {
+      evictUnusedJvmClasspaths();
+    }
+    return shared;
+  }
+
+  private static boolean sameConfig(GetJavaConfigResponse config1, GetJavaConfigResponse config2) {
+    return Objects.equals(config1.getSourceLevel(), config2.getSourceLevel())
+      && Objects.equals(config1.getVmLocation(), config2.getVmLocation())
+      && Arrays.equals(config1.getClasspath(), config2.getClasspath());
+  }
+
   public void clear(URI projectUri) {
+    var projectPath = Paths.get(projectUri);
     for (var it = javaConfigPerFileURI.entrySet().iterator(); it.hasNext();) {
       var entry = it.next();
       var cachedResponseOpt = entry.getValue();
       // If we have cached an empty result, still clear the value on classpath update to force next analysis to re-attempt fetch
-      if (cachedResponseOpt.isEmpty() || sameProject(projectUri, cachedResponseOpt.get())) {
+      if (cachedResponseOpt.isEmpty() || sameProject(projectPath, cachedResponseOpt.get())) {
         it.remove();
         LOG.debug("Evicted Java config cache for file '{}'", entry.getKey());
       }
     }
+    // Pending fetches may return the configuration before the update
+    pendingFetchPerFileURI.clear();
+    javaConfigPerProject.keySet().removeIf(key -> key.projectPath.equals(projectPath));
+    javaPropertiesPerConfig.keySet().stream()
+      .filter(config -> sameProject(projectPath, config))
+      .collect(Collectors.toList())
+      .forEach(this::removeJavaProperties);
+    evictUnusedJvmClasspaths();
+  }
+
+  /**
+   * @return the analysis properties of the file, computed once per project and kind of sources (main or test)
+   */
+  public Map<String, String> getJavaProperties(URI fileUri) {
+    return get(fileUri).map(javaConfig -> {
+      if (isShared(javaConfig)) {
+        return javaPropertiesPerConfig.computeIfAbsent(javaConfig, config -> index(config, computeJavaProperties(config, true))).getProperties();
+      }
+      return computeJavaProperties(javaConfig, false).getProperties();
+    }).orElse(Collections.emptyMap());
+  }
+
+  private boolean isShared(GetJavaConfigResponse javaConfig) {
+    return javaConfigPerProject.containsValue(javaConfig);
+  }
+
+  private JavaAnalysisProperties computeJavaProperties(GetJavaConfigResponse javaConfig, boolean shared) {
+    return JavaAnalysisProperties.compute(javaConfig, vmLocation -> shared
+      ? jvmClasspathPerJavaHome.computeIfAbsent(vmLocation, JavaSdkUtil::getJdkClassesRoots)
+      : Optional.ofNullable(jvmClasspathPerJavaHome.get(vmLocation)).orElseGet(() -> JavaSdkUtil.getJdkClassesRoots(vmLocation)));
+  }
+
+  private JavaAnalysisProperties index(GetJavaConfigResponse javaConfig, JavaAnalysisProperties javaProperties) {
+    classpathPaths(javaProperties).forEach(path -> configsPerClasspathPath.computeIfAbsent(path, p -> ConcurrentHashMap.newKeySet()).add(javaConfig));
+    return javaProperties;
+  }
+
+  private void removeJavaProperties(GetJavaConfigResponse javaConfig) {
+    var javaProperties = javaPropertiesPerConfig.remove(javaConfig);
+    if (javaProperties == null) {
+      return;
+    }
+    classpathPaths(javaProperties).forEach(path -> configsPerClasspathPath.computeIfPresent(path, (p, configs) -> {
+      configs.remove(javaConfig);
+      return configs.isEmpty() ? null : configs;
+    }));
+  }
+
+  /**
+   * @return the classpath entries of the properties and their parent directories
+   */
+  private static Set<Path> classpathPaths(JavaAnalysisProperties javaProperties) {
+    return javaProperties.getClasspathEntries().stream()
+      .flatMap(entry -> {
+        try {
+          return Stream.iterate(Paths.get(entry), Objects::nonNull, Path::getParent);
+        } catch (InvalidPathException e) {
+          return Stream.empty();
+        }
+      })
+      .collect(Collectors.toSet());
+  }
+
+  private void evictUnusedJvmClasspaths() {
+    var usedJavaHomes = javaConfigPerProject.values().stream()
+      .map(GetJavaConfigResponse::getVmLocation)
+      .filter(Objects::nonNull)
+      .map(Paths::get)
+      .collect(Collectors.toSet());
+    jvmClasspathPerJavaHome.keySet().retainAll(usedJavaHomes);
+  }
+
+  // Visible for testing
+  Set<Path> getCachedJavaHomes() {
+    return Set.copyOf(jvmClasspathPerJavaHome.keySet());
   }
 
-  private static boolean sameProject(URI projectUri, SonarLintExtendedLanguageClient.GetJavaConfigResponse cachedResponse) {
+  /**
+   * Classpath entries appearing or disappearing change the analysis properties
+   */
+  public void didChangeWatchedFiles(List<FileEvent> changes) {
+    changes.stream()
+      .filter(change -> change.getType() != FileChangeType.Changed)
+      .map(change -> URI.create(change.getUri()))
+      .filter(uri -> "file".equalsIgnoreCase(uri.getScheme()))
+      .map(Paths::get)
+      .map(path -> configsPerClasspathPath.getOrDefault(path, Set.of()))
+      .flatMap(configs -> List.copyOf(configs).stream())
+      .forEach(this::removeJavaProperties);
+  }
+
+  private static boolean sameProject(Path projectPath, GetJavaConfigResponse cachedResponse) {
+    return cachedResponse.getProjectRoot() != null && projectPath(cachedResponse).equals(projectPath);
+  }
+
+  private static Path projectPath(GetJavaConfigResponse javaConfig) {
     // Compare file and not directly URI because
     // file:/foo/bar and file:///foo/bar/ are not considered equals by java.net.URI
-    return Paths.get(URI.create(cachedResponse.getProjectRoot())).equals(Paths.get(projectUri));
+    return Paths.get(URI.create(javaConfig.getProjectRoot()));
+  }
+
+  private static class ProjectKey {
+    private final Path projectPath;
+    private final boolean isTest;
+
+    private ProjectKey(Path projectPath, boolean isTest) {
+      this.projectPath = projectPath;
+      this.isTest = isTest;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      var that = (ProjectKey) o;
+      return isTest == that.isTest && projectPath.equals(that.projectPath);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(projectPath, isTest);
+    }
   }
 }
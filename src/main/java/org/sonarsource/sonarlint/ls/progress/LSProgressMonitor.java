@@ -40,6 +40,7 @@ public class LSProgressMonitor extends ProgressMonitor implements ProgressFacade
   private boolean ended;
   private String lastMessage = null;
   private float lastPercentage = 0.0f;
+  private int nonCancelableSections = 0;
 
   public LSProgressMonitor(LanguageClient client, Either<String, Integer> progressToken, CancelChecker cancelToken) {
     this.client = client;
@@ -82,13 +83,22 @@ public class LSProgressMonitor extends ProgressMonitor implements ProgressFacade
     }
   }
 
-  void enableCancelation() {
+  synchronized void enableCancelation() {
+    nonCancelableSections--;
+    if (nonCancelableSections > 0) {
+      // Another concurrent section is still running
+      return;
+    }
     var progressReport = prepareProgressReport();
     progressReport.setCancellable(true);
     client.notifyProgress(new ProgressParams(progressToken, Either.forLeft(progressReport)));
   }
 
-  void disableCancelation() {
+  synchronized void disableCancelation() {
+    nonCancelableSections++;
+    if (nonCancelableSections > 1) {
+      return;
+    }
     var progressReport = prepareProgressReport();
     progressReport.setCancellable(false);
     client.notifyProgress(new ProgressParams(progressToken, Either.forLeft(progressReport)));
@@ -125,9 +135,9 @@ public class LSProgressMonitor extends ProgressMonitor implements ProgressFacade
     sendReport(null, 100.0f * fraction);
   }
 
-  void sendReport(@Nullable String message, @Nullable Float percentage) {
+  synchronized void sendReport(@Nullable String message, @Nullable Float percentage) {
     if (percentage != null) {
-      this.lastPercentage = percentage;
+      this.lastPercentage = Math.min(100.0f, percentage);
     }
     if (message != null) {
       this.lastMessage = message;
@@ -156,8 +166,8 @@ public class LSProgressMonitor extends ProgressMonitor implements ProgressFacade
     }
   }
 
-  float getLastPercentage() {
-    return lastPercentage;
+  synchronized void progressed(@Nullable String message, float percentageIncrement) {
+    sendReport(message, lastPercentage + percentageIncrement);
   }
 
 }
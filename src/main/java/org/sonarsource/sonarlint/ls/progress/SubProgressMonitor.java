@@ -20,23 +20,34 @@
 package org.sonarsource.sonarlint.ls.progress;
 
 import java.util.function.Consumer;
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import org.sonarsource.sonarlint.core.client.api.common.ProgressMonitor;
 
+/**
+ * Progress of a fraction of a parent progress. Reports are forwarded to the parent as increments, so that sibling sub progresses
+ * can safely run concurrently.
+ */
 public class SubProgressMonitor extends ProgressMonitor implements ProgressFacade {
 
-  private final LSProgressMonitor parent;
+  private final LSProgressMonitor root;
+  @CheckForNull
+  private final SubProgressMonitor parent;
   private final String title;
   private final float subFraction;
-  private final float startPercentage;
+  private float lastPercentage = 0.0f;
   boolean ended;
 
-  public SubProgressMonitor(LSProgressMonitor parent, String title, float subFraction) {
+  public SubProgressMonitor(LSProgressMonitor root, String title, float subFraction) {
+    this(root, null, title, subFraction);
+  }
+
+  private SubProgressMonitor(LSProgressMonitor root, @Nullable SubProgressMonitor parent, String title, float subFraction) {
+    this.root = root;
     this.parent = parent;
     this.title = title;
     this.subFraction = subFraction;
-    this.startPercentage = parent.getLastPercentage();
-    parent.setMessage(title);
+    reportToParent(title, 0.0f);
   }
 
   @Override
@@ -52,10 +63,9 @@ public class SubProgressMonitor extends ProgressMonitor implements ProgressFacad
 
   @Override
   public void doInSubProgress(String subTitle, float subFraction, Consumer<ProgressFacade> subRunnable) {
-    parent.checkCanceled();
+    root.checkCanceled();
 
-    float subSubFraction = this.subFraction * subFraction;
-    var subProgressMonitor = new SubProgressMonitor(parent, title + " - " + subTitle, subSubFraction);
+    var subProgressMonitor = new SubProgressMonitor(root, this, subTitle, subFraction);
     subRunnable.accept(subProgressMonitor);
 
     if (!subProgressMonitor.ended) {
@@ -66,7 +76,7 @@ public class SubProgressMonitor extends ProgressMonitor implements ProgressFacad
 
   @Override
   public void executeNonCancelableSection(Runnable nonCancelable) {
-    parent.executeNonCancelableSection(nonCancelable);
+    root.executeNonCancelableSection(nonCancelable);
   }
 
   @Override
@@ -76,7 +86,7 @@ public class SubProgressMonitor extends ProgressMonitor implements ProgressFacad
 
   @Override
   public boolean isCanceled() {
-    return parent.isCanceled();
+    return root.isCanceled();
   }
 
   @Override
@@ -85,12 +95,39 @@ public class SubProgressMonitor extends ProgressMonitor implements ProgressFacad
   }
 
   void sendReport(@Nullable String message, @Nullable Float percentage) {
-    parent.sendReport(message == null ? null : (title + " - " + message), percentage == null ? null : (startPercentage + percentage * subFraction));
+    float percentageIncrement;
+    synchronized (this) {
+      percentageIncrement = percentage == null ? 0.0f : (percentage - lastPercentage);
+      if (percentage != null) {
+        lastPercentage = percentage;
+      }
+    }
+    reportToParent(prefixWithTitle(message), percentageIncrement * subFraction);
+  }
+
+  private void childProgressed(@Nullable String message, float percentageIncrement) {
+    synchronized (this) {
+      lastPercentage += percentageIncrement;
+    }
+    reportToParent(prefixWithTitle(message), percentageIncrement * subFraction);
+  }
+
+  private void reportToParent(@Nullable String message, float percentageIncrement) {
+    if (parent != null) {
+      parent.childProgressed(message, percentageIncrement);
+    } else {
+      root.progressed(message, percentageIncrement);
+    }
+  }
+
+  @CheckForNull
+  private String prefixWithTitle(@Nullable String message) {
+    return message == null ? null : (title + " - " + message);
   }
 
   @Override
   public void checkCanceled() {
-    parent.checkCanceled();
+    root.checkCanceled();
   }
 
 }
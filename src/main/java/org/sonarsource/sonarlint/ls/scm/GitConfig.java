@@ -0,0 +1,99 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls.scm;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import javax.annotation.CheckForNull;
+
+/**
+ * The few entries of a git configuration file that are relevant to evaluate ignore rules.
+ * Only the <code>core</code> section is read, other sections and includes are not supported.
+ */
+class GitConfig {
+
+  static final GitConfig EMPTY = new GitConfig(null, null, false);
+
+  @CheckForNull
+  private final String excludesFile;
+  @CheckForNull
+  private final Boolean ignoreCase;
+  private final boolean hasIncludes;
+
+  private GitConfig(@CheckForNull String excludesFile, @CheckForNull Boolean ignoreCase, boolean hasIncludes) {
+    this.excludesFile = excludesFile;
+    this.ignoreCase = ignoreCase;
+    this.hasIncludes = hasIncludes;
+  }
+
+  static GitConfig read(Path configFile) throws IOException {
+    if (!Files.isRegularFile(configFile)) {
+      return EMPTY;
+    }
+    String excludesFile = null;
+    Boolean ignoreCase = null;
+    var hasIncludes = false;
+    var inCoreSection = false;
+    for (var rawLine : Files.readAllLines(configFile, StandardCharsets.UTF_8)) {
+      var line = rawLine.trim();
+      if (line.startsWith("[")) {
+        var section = line.toLowerCase(Locale.ENGLISH);
+        inCoreSection = section.matches("\\[\\s*core\\s*].*");
+        hasIncludes |= section.startsWith("[include");
+      } else if (inCoreSection && line.indexOf('=') > 0) {
+        var key = line.substring(0, line.indexOf('=')).trim().toLowerCase(Locale.ENGLISH);
+        var value = unquote(line.substring(line.indexOf('=') + 1).trim());
+        if ("excludesfile".equals(key)) {
+          excludesFile = value;
+        } else if ("ignorecase".equals(key)) {
+          ignoreCase = "true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value) || "on".equalsIgnoreCase(value) || "1".equals(value);
+        }
+      }
+    }
+    return new GitConfig(excludesFile, ignoreCase, hasIncludes);
+  }
+
+  private static String unquote(String value) {
+    if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+      return value.substring(1, value.length() - 1);
+    }
+    return value;
+  }
+
+  @CheckForNull
+  String getExcludesFile() {
+    return excludesFile;
+  }
+
+  @CheckForNull
+  Boolean getIgnoreCase() {
+    return ignoreCase;
+  }
+
+  /**
+   * Included configuration files are not followed, ignore rules can not be evaluated reliably
+   */
+  boolean hasIncludes() {
+    return hasIncludes;
+  }
+}
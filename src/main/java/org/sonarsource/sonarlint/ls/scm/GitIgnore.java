@@ -0,0 +1,122 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls.scm;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Ignore rules of a git repository: global excludes file, <code>.git/info/exclude</code> and <code>.gitignore</code> files of
+ * the working tree. The <code>.gitignore</code> files are read lazily, when a file of their directory is evaluated.
+ */
+class GitIgnore {
+
+  private static final Logger LOG = Loggers.get(GitIgnore.class);
+
+  static final String GITIGNORE = ".gitignore";
+
+  private final Path workTree;
+  private final boolean ignoreCase;
+  private final List<GitIgnorePattern> excludePatterns;
+  // keys are directories relative to the working tree, with '/' as separator, empty for the root
+  private final Map<String, List<GitIgnorePattern>> patternsPerDirectory = new ConcurrentHashMap<>();
+
+  GitIgnore(Path workTree, boolean ignoreCase, List<GitIgnorePattern> excludePatterns) {
+    this.workTree = workTree;
+    this.ignoreCase = ignoreCase;
+    this.excludePatterns = excludePatterns;
+  }
+
+  static List<GitIgnorePattern> readPatterns(Path ignoreFile, boolean ignoreCase) {
+    if (!Files.isRegularFile(ignoreFile)) {
+      return List.of();
+    }
+    try {
+      return Files.readAllLines(ignoreFile, StandardCharsets.UTF_8).stream()
+        .map(line -> GitIgnorePattern.parse(line, ignoreCase))
+        .flatMap(Optional::stream)
+        .collect(Collectors.toList());
+    } catch (IOException e) {
+      LOG.debug("Unable to read ignore rules from '{}'", ignoreFile);
+      return List.of();
+    }
+  }
+
+  /**
+   * @param file a file of the working tree
+   */
+  boolean isIgnored(Path file) {
+    var segments = new ArrayList<String>();
+    workTree.relativize(file).forEach(segment -> segments.add(segment.toString()));
+    var ancestorDirectories = new ArrayList<String>();
+    ancestorDirectories.add("");
+    var path = "";
+    for (var i = 0; i < segments.size(); i++) {
+      path = path.isEmpty() ? segments.get(i) : (path + "/" + segments.get(i));
+      var isDirectory = i < segments.size() - 1;
+      // Files of an excluded directory can not be re-included
+      if (isExcluded(path, isDirectory, ancestorDirectories)) {
+        return true;
+      }
+      ancestorDirectories.add(path);
+    }
+    return false;
+  }
+
+  private boolean isExcluded(String path, boolean isDirectory, List<String> ancestorDirectories) {
+    var excluded = lastMatch(excludePatterns, path, isDirectory, false);
+    // Patterns of the deepest .gitignore files take precedence
+    for (var directory : ancestorDirectories) {
+      var relativePath = directory.isEmpty() ? path : path.substring(directory.length() + 1);
+      excluded = lastMatch(patternsOf(directory), relativePath, isDirectory, excluded);
+    }
+    return excluded;
+  }
+
+  private static boolean lastMatch(List<GitIgnorePattern> patterns, String relativePath, boolean isDirectory, boolean excluded) {
+    var result = excluded;
+    for (var pattern : patterns) {
+      if (pattern.matches(relativePath, isDirectory)) {
+        result = !pattern.isNegated();
+      }
+    }
+    return result;
+  }
+
+  private List<GitIgnorePattern> patternsOf(String directory) {
+    return patternsPerDirectory.computeIfAbsent(directory, d -> readPatterns(workTree.resolve(d).resolve(GITIGNORE), ignoreCase));
+  }
+
+  void didChangeGitIgnore(Path gitIgnoreFile) {
+    var directory = workTree.relativize(gitIgnoreFile.getParent());
+    var key = directory.toString().replace(directory.getFileSystem().getSeparator(), "/");
+    patternsPerDirectory.remove(key);
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls.scm;
+
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * A line of a <code>.gitignore</code> file, compiled to a regular expression.
+ * See https://git-scm.com/docs/gitignore#_pattern_format
+ */
+class GitIgnorePattern {
+
+  private final Pattern regex;
+  private final boolean negated;
+  private final boolean directoryOnly;
+
+  private GitIgnorePattern(Pattern regex, boolean negated, boolean directoryOnly) {
+    this.regex = regex;
+    this.negated = negated;
+    this.directoryOnly = directoryOnly;
+  }
+
+  /**
+   * @return empty for blank lines and comments
+   */
+  static Optional<GitIgnorePattern> parse(String line, boolean ignoreCase) {
+    var pattern = trimTrailingSpaces(line);
+    if (pattern.isEmpty() || pattern.startsWith("#")) {
+      return Optional.empty();
+    }
+    var negated = pattern.startsWith("!");
+    if (negated) {
+      pattern = pattern.substring(1);
+    }
+    var directoryOnly = pattern.endsWith("/");
+    if (directoryOnly) {
+      pattern = pattern.substring(0, pattern.length() - 1);
+    }
+    if (pattern.isEmpty()) {
+      return Optional.empty();
+    }
+    // A separator at the beginning or in the middle makes the pattern relative to the directory of the .gitignore file
+    var anchored = pattern.indexOf('/') >= 0;
+    if (pattern.startsWith("/")) {
+      pattern = pattern.substring(1);
+    }
+    var regex = (anchored ? "" : "(?:.*/)?") + toRegex(pattern);
+    return Optional.of(new GitIgnorePattern(Pattern.compile(regex, ignoreCase ? (Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE) : 0), negated, directoryOnly));
+  }
+
+  private static String trimTrailingSpaces(String line) {
+    var end = line.length();
+    while (end > 0 && line.charAt(end - 1) == ' ' && (end < 2 || line.charAt(end - 2) != '\\')) {
+      end--;
+    }
+    return line.substring(0, end);
+  }
+
+  private static String toRegex(String pattern) {
+    var regex = new StringBuilder();
+    var i = 0;
+    if (pattern.startsWith("**/")) {
+      regex.append("(?:.*/)?");
+      i = 3;
+    }
+    var length = pattern.length();
+    while (i < length) {
+      var c = pattern.charAt(i);
+      if (c == '/' && pattern.startsWith("/**/", i)) {
+        regex.append("/(?:.*/)?");
+        i += 4;
+      } else if (c == '/' && pattern.startsWith("/**", i) && i + 3 == length) {
+        regex.append("/.*");
+        i += 3;
+      } else if (c == '*') {
+        while (i < length && pattern.charAt(i) == '*') {
+          i++;
+        }
+        regex.append("[^/]*");
+      } else if (c == '?') {
+        regex.append("[^/]");
+        i++;
+      } else if (c == '[') {
+        i = appendBracketExpression(pattern, i, regex);
+      } else if (c == '\\' && i + 1 < length) {
+        regex.append(Pattern.quote(String.valueOf(pattern.charAt(i + 1))));
+        i += 2;
+      } else {
+        regex.append(Pattern.quote(String.valueOf(c)));
+        i++;
+      }
+    }
+    return regex.toString();
+  }
+
+  /**
+   * @return the index following the bracket expression
+   */
+  private static int appendBracketExpression(String pattern, int start, StringBuilder regex) {
+    var i = start + 1;
+    var expression = new StringBuilder("[");
+    if (i < pattern.length() && (pattern.charAt(i) == '!' || pattern.charAt(i) == '^')) {
+      expression.append('^');
+      i++;
+    }
+    // A closing bracket right after the opening one is part of the set
+    if (i < pattern.length() && pattern.charAt(i) == ']') {
+      expression.append("\\]");
+      i++;
+    }
+    while (i < pattern.length() && pattern.charAt(i) != ']') {
+      var c = pattern.charAt(i);
+      if (c == '\\' || c == '[' || c == '&' || c == '^') {
+        expression.append('\\');
+      }
+      expression.append(c);
+      i++;
+    }
+    if (i >= pattern.length()) {
+      // Not a bracket expression, match the bracket literally
+      regex.append("\\[");
+      return start + 1;
+    }
+    regex.append(expression).append(']');
+    return i + 1;
+  }
+
+  /**
+   * @param relativePath path relative to the directory of the .gitignore file, with '/' as separator
+   */
+  boolean matches(String relativePath, boolean isDirectory) {
+    return (isDirectory || !directoryOnly) && regex.matcher(relativePath).matches();
+  }
+
+  boolean isNegated() {
+    return negated;
+  }
+}
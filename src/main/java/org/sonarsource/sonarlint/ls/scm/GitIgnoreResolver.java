@@ -0,0 +1,152 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls.scm;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Evaluate git ignore rules in process, without asking the client.
+ * Only regular repositories are supported: files of worktrees and submodules (where <code>.git</code> is a file), or of
+ * repositories whose configuration includes other files, are not evaluated.
+ */
+public class GitIgnoreResolver {
+
+  private static final Logger LOG = Loggers.get(GitIgnoreResolver.class);
+
+  private static final String DOT_GIT = ".git";
+
+  private final Path userHome;
+  private final Path xdgConfigHome;
+  private final Map<Path, Optional<GitIgnore>> gitIgnorePerWorkTree = new ConcurrentHashMap<>();
+
+  public GitIgnoreResolver() {
+    this(Paths.get(System.getProperty("user.home")), System.getenv("XDG_CONFIG_HOME"));
+  }
+
+  // Visible for testing
+  GitIgnoreResolver(Path userHome, @Nullable String xdgConfigHome) {
+    this.userHome = userHome;
+    this.xdgConfigHome = xdgConfigHome != null && !xdgConfigHome.isEmpty() ? Paths.get(xdgConfigHome) : userHome.resolve(".config");
+  }
+
+  /**
+   * @return empty if the file is not part of a supported git repository
+   */
+  public Optional<Boolean> isIgnored(Path file) {
+    return findWorkTree(file)
+      .flatMap(workTree -> gitIgnorePerWorkTree.computeIfAbsent(workTree, this::load))
+      .map(gitIgnore -> gitIgnore.isIgnored(file));
+  }
+
+  private static Optional<Path> findWorkTree(Path file) {
+    for (var dir = file.getParent(); dir != null; dir = dir.getParent()) {
+      var dotGit = dir.resolve(DOT_GIT);
+      if (Files.isDirectory(dotGit)) {
+        return Optional.of(dir);
+      }
+      if (Files.exists(dotGit)) {
+        LOG.debug("Git worktree or submodule not supported: '{}'", dir);
+        return Optional.empty();
+      }
+    }
+    return Optional.empty();
+  }
+
+  private Optional<GitIgnore> load(Path workTree) {
+    try {
+      var repositoryConfig = GitConfig.read(workTree.resolve(DOT_GIT).resolve("config"));
+      var homeConfig = GitConfig.read(userHome.resolve(".gitconfig"));
+      var xdgConfig = GitConfig.read(xdgConfigHome.resolve("git").resolve("config"));
+      if (Stream.of(repositoryConfig, homeConfig, xdgConfig).anyMatch(GitConfig::hasIncludes)) {
+        LOG.debug("Git configuration with includes not supported: '{}'", workTree);
+        return Optional.empty();
+      }
+      // Most specific configuration wins
+      var ignoreCase = Stream.of(repositoryConfig, homeConfig, xdgConfig)
+        .map(GitConfig::getIgnoreCase)
+        .filter(Objects::nonNull)
+        .findFirst()
+        .orElse(false);
+      var excludesFile = Stream.of(repositoryConfig, homeConfig, xdgConfig)
+        .map(GitConfig::getExcludesFile)
+        .filter(Objects::nonNull)
+        .findFirst()
+        .map(this::expandHome)
+        .orElse(xdgConfigHome.resolve("git").resolve("ignore"));
+      var excludePatterns = new ArrayList<>(GitIgnore.readPatterns(excludesFile, ignoreCase));
+      excludePatterns.addAll(GitIgnore.readPatterns(workTree.resolve(DOT_GIT).resolve("info").resolve("exclude"), ignoreCase));
+      return Optional.of(new GitIgnore(workTree, ignoreCase, excludePatterns));
+    } catch (IOException e) {
+      LOG.debug("Unable to read git configuration of '{}'", workTree);
+      return Optional.empty();
+    }
+  }
+
+  private Path expandHome(String path) {
+    if (path.startsWith("~/")) {
+      return userHome.resolve(path.substring(2));
+    }
+    return Paths.get(path);
+  }
+
+  /**
+   * @return true if the changed file may modify the ignore status of other files
+   */
+  public boolean didChange(Path file) {
+    var fileName = file.getFileName();
+    if (fileName == null) {
+      return false;
+    }
+    if (fileName.toString().equals(GitIgnore.GITIGNORE)) {
+      findWorkTree(file)
+        .flatMap(workTree -> gitIgnorePerWorkTree.getOrDefault(workTree, Optional.empty()))
+        .ifPresent(gitIgnore -> gitIgnore.didChangeGitIgnore(file));
+      return true;
+    }
+    if (fileName.toString().equals(DOT_GIT)) {
+      gitIgnorePerWorkTree.remove(file.getParent());
+      return true;
+    }
+    // Configuration or exclude file of a repository
+    for (var dir = file.getParent(); dir != null; dir = dir.getParent()) {
+      var dirName = dir.getFileName();
+      if (dirName != null && dirName.toString().equals(DOT_GIT)) {
+        var changed = file.endsWith("config") || file.endsWith(Paths.get("info", "exclude"));
+        if (changed) {
+          gitIgnorePerWorkTree.remove(dir.getParent());
+        }
+        return changed;
+      }
+    }
+    return false;
+  }
+}
@@ -27,10 +27,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import org.eclipse.lsp4j.ConfigurationItem;
@@ -76,7 +77,7 @@ public class SettingsManager implements WorkspaceFolderLifecycleListener {
   private final ApacheHttpClient httpClient;
 
   private WorkspaceSettings currentSettings = null;
-  private final CountDownLatch initLatch = new CountDownLatch(1);
+  private final CompletableFuture<Void> initialized = new CompletableFuture<>();
   // Setting that are normally specific per workspace folder, but we also keep a cache of global values to analyze files outside any
   // workspace
   private WorkspaceFolderSettings currentDefaultSettings = null;
@@ -96,26 +97,33 @@ public class SettingsManager implements WorkspaceFolderLifecycleListener {
    * Get workspace level settings, waiting for them to be initialized
    */
   public WorkspaceSettings getCurrentSettings() {
-    try {
-      if (initLatch.await(1, TimeUnit.MINUTES)) {
-        return currentSettings;
-      }
-    } catch (InterruptedException e) {
-      interrupted(e);
-    }
-    throw new IllegalStateException("Unable to get settings in time");
+    awaitInitialization();
+    return currentSettings;
   }
 
   /**
    * Get default workspace folder level settings, waiting for them to be initialized
    */
   public WorkspaceFolderSettings getCurrentDefaultFolderSettings() {
+    awaitInitialization();
+    return currentDefaultSettings;
+  }
+
+  /**
+   * Completed once workspace level and default workspace folder level settings are initialized
+   */
+  public CompletableFuture<Void> initialized() {
+    return initialized.copy();
+  }
+
+  private void awaitInitialization() {
     try {
-      if (initLatch.await(1, TimeUnit.MINUTES)) {
-        return currentDefaultSettings;
-      }
+      initialized.get(1, TimeUnit.MINUTES);
+      return;
     } catch (InterruptedException e) {
       interrupted(e);
+    } catch (ExecutionException | TimeoutException e) {
+      // Fall through
     }
     throw new IllegalStateException("Unable to get settings in time");
   }
@@ -130,7 +138,7 @@ public class SettingsManager implements WorkspaceFolderLifecycleListener {
         var newDefaultFolderSettings = parseFolderSettings(workspaceSettingsMap);
         var oldDefaultFolderSettings = currentDefaultSettings;
         this.currentDefaultSettings = newDefaultFolderSettings;
-        initLatch.countDown();
+        initialized.complete(null);
 
         foldersManager.getAll().forEach(f -> updateWorkspaceFolderSettings(f, true));
 
@@ -19,17 +19,29 @@
  */
 package org.sonarsource.sonarlint.ls;
 
-
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.sonarsource.sonarlint.core.client.api.common.Language;
+import org.sonarsource.sonarlint.ls.file.Rope;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
 class AnalysisClientInputFileTest {
 
+  @Test
+  void shouldProvideContentOfEditedDocument() throws IOException {
+    var content = Rope.of("var café = 0;\n").replace(14, 14, "var thé = 1;\n");
+    var inputFile = new AnalysisClientInputFile(null, null, content, false, "javascript");
+
+    assertThat(inputFile.contents()).isEqualTo("var café = 0;\nvar thé = 1;\n");
+    assertThat(inputFile.inputStream().readAllBytes()).isEqualTo("var café = 0;\nvar thé = 1;\n".getBytes(StandardCharsets.UTF_8));
+  }
+
   @ParameterizedTest(name = "Should detect {0} as {1}")
   @MethodSource("provideParametersForLanguageDetection")
   void shouldDetectLanguage(String clientLanguageId, Language expected) {
@@ -0,0 +1,98 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class AnalysisDebouncerTests {
+
+  private static final URI FILE1 = URI.create("file:///folder/file1.js");
+  private static final URI FILE2 = URI.create("file:///folder/file2.js");
+  private static final long DELAY_MS = 200;
+
+  private final List<URI> triggered = new CopyOnWriteArrayList<>();
+  private final AnalysisDebouncer underTest = new AnalysisDebouncer(Executors.newSingleThreadScheduledExecutor(), uri -> DELAY_MS, triggered::add);
+
+  @AfterEach
+  void stop() {
+    underTest.shutdown();
+  }
+
+  @Test
+  void should_trigger_once_after_delay() {
+    var start = System.nanoTime();
+    underTest.schedule(FILE1);
+
+    await().atMost(5, TimeUnit.SECONDS).until(() -> !triggered.isEmpty());
+    assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(DELAY_MS);
+    assertThat(triggered).containsExactly(FILE1);
+  }
+
+  @Test
+  void should_push_back_deadline_when_rescheduled() throws Exception {
+    underTest.schedule(FILE1);
+    for (var i = 0; i < 5; i++) {
+      Thread.sleep(DELAY_MS / 2);
+      underTest.schedule(FILE1);
+    }
+    assertThat(triggered).isEmpty();
+
+    await().atMost(5, TimeUnit.SECONDS).until(() -> !triggered.isEmpty());
+    Thread.sleep(DELAY_MS);
+    assertThat(triggered).containsExactly(FILE1);
+  }
+
+  @Test
+  void should_track_one_deadline_per_file() {
+    underTest.schedule(FILE1);
+    underTest.schedule(FILE2);
+
+    await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> assertThat(triggered).containsExactlyInAnyOrder(FILE1, FILE2));
+  }
+
+  @Test
+  void should_not_trigger_when_canceled() throws Exception {
+    underTest.schedule(FILE1);
+    underTest.schedule(FILE2);
+    underTest.cancel(FILE1);
+
+    await().atMost(5, TimeUnit.SECONDS).until(() -> !triggered.isEmpty());
+    Thread.sleep(DELAY_MS);
+    assertThat(triggered).containsExactly(FILE2);
+  }
+
+  @Test
+  void should_ignore_schedule_after_shutdown() throws Exception {
+    underTest.shutdown();
+    underTest.schedule(FILE1);
+
+    Thread.sleep(DELAY_MS * 2);
+    assertThat(triggered).isEmpty();
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls;
+
+import java.net.URI;
+import org.junit.jupiter.api.Test;
+import org.sonarsource.sonarlint.core.client.api.common.Language;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.sonarsource.sonarlint.ls.AnalysisDelayEstimator.DEFAULT_DELAY_MS;
+import static org.sonarsource.sonarlint.ls.AnalysisDelayEstimator.MAX_DELAY_MS;
+import static org.sonarsource.sonarlint.ls.AnalysisDelayEstimator.MIN_DELAY_MS;
+
+class AnalysisDelayEstimatorTests {
+
+  private static final URI PY_FILE1 = URI.create("file:///folder/file1.py");
+  private static final URI PY_FILE2 = URI.create("file:///folder/file2.py");
+  private static final URI TS_FILE = URI.create("file:///folder/file.ts");
+
+  private final AnalysisDelayEstimator underTest = new AnalysisDelayEstimator();
+
+  @Test
+  void should_use_default_delay_for_unknown_file() {
+    assertThat(underTest.delayMs(PY_FILE1)).isEqualTo(DEFAULT_DELAY_MS);
+  }
+
+  @Test
+  void should_adapt_delay_to_language() {
+    underTest.analysisDone(PY_FILE1, Language.PYTHON, 80);
+    underTest.analysisDone(TS_FILE, Language.TS, 900);
+
+    assertThat(underTest.delayMs(PY_FILE1)).isEqualTo(160);
+    assertThat(underTest.delayMs(TS_FILE)).isEqualTo(1800);
+  }
+
+  @Test
+  void should_clamp_delay() {
+    underTest.analysisDone(PY_FILE1, Language.PYTHON, 10);
+    underTest.analysisDone(TS_FILE, Language.TS, 5000);
+
+    assertThat(underTest.delayMs(PY_FILE1)).isEqualTo(MIN_DELAY_MS);
+    assertThat(underTest.delayMs(TS_FILE)).isEqualTo(MAX_DELAY_MS);
+  }
+
+  @Test
+  void should_prefer_file_history_once_enough_samples() {
+    underTest.analysisDone(PY_FILE1, Language.PYTHON, 100);
+    underTest.analysisDone(PY_FILE2, Language.PYTHON, 600);
+    underTest.analysisDone(PY_FILE2, Language.PYTHON, 600);
+    assertThat(underTest.delayMs(PY_FILE2)).isEqualTo(1200);
+
+    underTest.analysisDone(PY_FILE1, Language.PYTHON, 100);
+    underTest.analysisDone(PY_FILE1, Language.PYTHON, 100);
+    assertThat(underTest.delayMs(PY_FILE1)).isEqualTo(200);
+  }
+
+  @Test
+  void should_only_keep_recent_analyses() {
+    for (var i = 0; i < 50; i++) {
+      underTest.analysisDone(PY_FILE1, Language.PYTHON, 900);
+    }
+    for (var i = 0; i < 20; i++) {
+      underTest.analysisDone(PY_FILE1, Language.PYTHON, 100);
+    }
+
+    assertThat(underTest.delayMs(PY_FILE1)).isEqualTo(200);
+  }
+
+  @Test
+  void should_forget_closed_file() {
+    underTest.analysisDone(PY_FILE1, Language.PYTHON, 100);
+
+    underTest.forget(PY_FILE1);
+
+    assertThat(underTest.delayMs(PY_FILE1)).isEqualTo(DEFAULT_DELAY_MS);
+  }
+}
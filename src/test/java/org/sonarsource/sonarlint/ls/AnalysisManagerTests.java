@@ -22,9 +22,7 @@ package org.sonarsource.sonarlint.ls;
 import java.net.URI;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
 import org.eclipse.lsp4j.Diagnostic;
 import org.eclipse.lsp4j.DiagnosticSeverity;
 import org.eclipse.lsp4j.FileChangeType;
@@ -68,7 +66,7 @@ import static org.sonarsource.sonarlint.ls.AnalysisManager.convert;
 class AnalysisManagerTests {
 
   AnalysisManager underTest;
-  Map<URI, List<ServerIssue>> taintVulnerabilitiesPerFile;
+  TaintVulnerabilitiesCache taintVulnerabilitiesCache;
   private EnginesFactory enginesFactory;
   private WorkspaceFoldersManager foldersManager;
   private StandaloneEngineManager standaloneEngineManager;
@@ -76,14 +74,14 @@ class AnalysisManagerTests {
 
   @BeforeEach
   void prepare() {
-    taintVulnerabilitiesPerFile = new ConcurrentHashMap<>();
+    taintVulnerabilitiesCache = new TaintVulnerabilitiesCache();
     var fileLanguageCache = new FileLanguageCache();
     enginesFactory = mock(EnginesFactory.class);
     foldersManager = mock(WorkspaceFoldersManager.class);
     standaloneEngineManager = mock(StandaloneEngineManager.class);
     languageClient = mock(SonarLintExtendedLanguageClient.class);
     underTest = new AnalysisManager(mock(LanguageClientLogOutput.class), standaloneEngineManager, languageClient, mock(SonarLintTelemetry.class),
-      foldersManager, mock(SettingsManager.class), mock(ProjectBindingManager.class), new FileTypeClassifier(fileLanguageCache), fileLanguageCache, mock(JavaConfigCache.class), taintVulnerabilitiesPerFile);
+      foldersManager, mock(SettingsManager.class), mock(ProjectBindingManager.class), new FileTypeClassifier(fileLanguageCache), fileLanguageCache, mock(JavaConfigCache.class), taintVulnerabilitiesCache);
 
   }
 
@@ -145,11 +143,12 @@ class AnalysisManagerTests {
     when(issue.getEndLineOffset()).thenReturn(14);
 
     var diagnostic = mock(Diagnostic.class);
-    when(diagnostic.getCode()).thenReturn(Either.forLeft("ruleKey"));
+    when(diagnostic.getCode()).thenReturn(Either.forLeft("javasecurity:S123"));
     var range = new Range(new Position(227, 14), new Position(321, 14));
     when(diagnostic.getRange()).thenReturn(range);
-    when(issue.ruleKey()).thenReturn("ruleKey");
-    taintVulnerabilitiesPerFile.put(uri, List.of(issue));
+    when(issue.ruleKey()).thenReturn("javasecurity:S123");
+    when(issue.resolution()).thenReturn("");
+    taintVulnerabilitiesCache.reload(uri, List.of(issue));
 
     assertThat(underTest.getTaintVulnerabilityForDiagnostic(uri, diagnostic)).hasValue(issue);
   }
@@ -159,10 +158,12 @@ class AnalysisManagerTests {
     var uri = new URI("/");
     var issue = mock(ServerIssue.class);
     when(issue.key()).thenReturn("issueKey");
+    when(issue.ruleKey()).thenReturn("javasecurity:S123");
+    when(issue.resolution()).thenReturn("");
 
     var diagnostic = mock(Diagnostic.class);
     when(diagnostic.getData()).thenReturn("issueKey");
-    taintVulnerabilitiesPerFile.put(uri, List.of(issue));
+    taintVulnerabilitiesCache.reload(uri, List.of(issue));
 
     assertThat(underTest.getTaintVulnerabilityForDiagnostic(uri, diagnostic)).hasValue(issue);
   }
@@ -171,13 +172,14 @@ class AnalysisManagerTests {
   void testGetServerIssueForDiagnosticNotFound() throws Exception {
     var uri = new URI("/");
     var issue = mock(ServerIssue.class);
-    when(issue.ruleKey()).thenReturn("someRuleKey");
+    when(issue.ruleKey()).thenReturn("javasecurity:S123");
+    when(issue.resolution()).thenReturn("");
     when(issue.key()).thenReturn("issueKey");
 
     var diagnostic = mock(Diagnostic.class);
     when(diagnostic.getData()).thenReturn("anotherKey");
     when(diagnostic.getCode()).thenReturn(Either.forLeft("anotherRuleKey"));
-    taintVulnerabilitiesPerFile.put(uri, List.of(issue));
+    taintVulnerabilitiesCache.reload(uri, List.of(issue));
 
     assertThat(underTest.getTaintVulnerabilityForDiagnostic(uri, diagnostic)).isEmpty();
   }
@@ -188,8 +190,10 @@ class AnalysisManagerTests {
     var issue = mock(ServerIssue.class);
     var issueKey = "key";
     when(issue.key()).thenReturn(issueKey);
+    when(issue.ruleKey()).thenReturn("javasecurity:S123");
+    when(issue.resolution()).thenReturn("");
 
-    taintVulnerabilitiesPerFile.put(uri, List.of(issue));
+    taintVulnerabilitiesCache.reload(uri, List.of(issue));
 
     assertThat(underTest.getTaintVulnerabilityByKey(issueKey)).hasValue(issue);
     assertThat(underTest.getTaintVulnerabilityByKey("otherKey")).isEmpty();
@@ -0,0 +1,203 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+import org.sonarsource.sonarlint.core.client.api.common.Language;
+import org.sonarsource.sonarlint.core.client.api.common.PluginDetails;
+import org.sonarsource.sonarlint.core.client.api.common.RuleKey;
+import org.sonarsource.sonarlint.core.client.api.common.SkipReason;
+import org.sonarsource.sonarlint.core.client.api.common.TextRange;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+import org.sonarsource.sonarlint.core.client.api.standalone.StandaloneAnalysisConfiguration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AnalysisResultCacheTests {
+
+  private static final URI BASE_DIR = Paths.get("/folder").toAbsolutePath().toUri();
+  private static final URI FILE = BASE_DIR.resolve("file.js");
+  private static final PluginDetails JS_PLUGIN = plugin("javascript", "6.2.1");
+  private static final AnalysisClientInputFile INPUT_FILE = new AnalysisClientInputFile(FILE, "file.js", "", false, "javascript");
+
+  private final AnalysisResultCache underTest = new AnalysisResultCache(AnalysisResultCache.DEFAULT_MAX_WEIGHT);
+
+  @Test
+  void key_should_be_stable() {
+    var key = AnalysisResultCache.keyOf(configuration("var a = 0;", Map.of("a", "1", "b", "2")), List.of(JS_PLUGIN));
+
+    assertThat(AnalysisResultCache.keyOf(configuration("var a = 0;", Map.of("b", "2", "a", "1")), List.of(JS_PLUGIN))).isEqualTo(key);
+  }
+
+  @Test
+  void key_should_depend_on_content_configuration_and_plugins() {
+    var key = AnalysisResultCache.keyOf(configuration("var a = 0;", Map.of()), List.of(JS_PLUGIN));
+
+    assertThat(AnalysisResultCache.keyOf(configuration("var a = 1;", Map.of()), List.of(JS_PLUGIN))).isNotEqualTo(key);
+    assertThat(AnalysisResultCache.keyOf(configuration("var a = 0;", Map.of("sonar.java.libraries", "lib.jar")), List.of(JS_PLUGIN))).isNotEqualTo(key);
+    assertThat(AnalysisResultCache.keyOf(configuration("var a = 0;", Map.of()), List.of(plugin("javascript", "6.3.0")))).isNotEqualTo(key);
+    assertThat(AnalysisResultCache.keyOf(configurationBuilder("var a = 0;", false).addExcludedRule(RuleKey.parse("javascript:S1481")).build(), List.of(JS_PLUGIN)))
+      .isNotEqualTo(key);
+    assertThat(AnalysisResultCache.keyOf(configurationBuilder("var a = 0;", false).addRuleParameter(RuleKey.parse("javascript:S100"), "format", "^[a-z]+$").build(),
+      List.of(JS_PLUGIN))).isNotEqualTo(key);
+    assertThat(AnalysisResultCache.keyOf(configurationBuilder("var a = 0;", true).build(), List.of(JS_PLUGIN))).isNotEqualTo(key);
+  }
+
+  @Test
+  void should_not_support_languages_depending_on_other_files() {
+    assertThat(AnalysisResultCache.supports(Language.JAVA)).isTrue();
+    assertThat(AnalysisResultCache.supports(Language.PYTHON)).isTrue();
+    assertThat(AnalysisResultCache.supports(null)).isTrue();
+    assertThat(AnalysisResultCache.supports(Language.JS)).isFalse();
+    assertThat(AnalysisResultCache.supports(Language.TS)).isFalse();
+  }
+
+  @Test
+  void should_return_copies_of_cached_issues_attached_to_analyzed_file() {
+    var otherInputFile = new AnalysisClientInputFile(FILE, "file.js", "var a = 0;", false, "javascript");
+
+    underTest.put("key", null, INPUT_FILE, List.of(issue(INPUT_FILE, "Remove this variable")));
+
+    var cachedIssues = underTest.get("key", null, otherInputFile).orElseThrow();
+    assertThat(cachedIssues).hasSize(1);
+    assertThat(cachedIssues.get(0).getInputFile()).isSameAs(otherInputFile);
+    assertThat(cachedIssues.get(0).getMessage()).isEqualTo("Remove this variable");
+    assertThat(cachedIssues.get(0).getRuleKey()).isEqualTo("javascript:S1481");
+    assertThat(underTest.get("other", null, INPUT_FILE)).isEmpty();
+  }
+
+  @Test
+  void should_not_cache_issues_located_in_other_files() {
+    var otherInputFile = new AnalysisClientInputFile(BASE_DIR.resolve("other.js"), "other.js", "", false, "javascript");
+
+    underTest.put("key", null, INPUT_FILE, List.of(issue(otherInputFile, "Remove this variable")));
+
+    assertThat(underTest.get("key", null, INPUT_FILE)).isEmpty();
+  }
+
+  @Test
+  void should_evict_least_recently_used_entries_when_too_big() throws Exception {
+    var issues = List.of(issue(INPUT_FILE, "Remove this variable"));
+    var cache = new AnalysisResultCache(5 * entryWeight(issues) / 2);
+    cache.put("key1", null, INPUT_FILE, issues);
+    cache.put("key2", null, INPUT_FILE, issues);
+    cache.get("key1", null, INPUT_FILE);
+
+    cache.put("key3", null, INPUT_FILE, issues);
+
+    assertThat(cache.get("key1", null, INPUT_FILE)).isPresent();
+    assertThat(cache.get("key2", null, INPUT_FILE)).isEmpty();
+    assertThat(cache.get("key3", null, INPUT_FILE)).isPresent();
+  }
+
+  @Test
+  void should_not_cache_entries_bigger_than_max() throws Exception {
+    var smallIssues = List.of(issue(INPUT_FILE, "Remove this variable"));
+    var bigIssues = List.of(issue(INPUT_FILE, "Remove this variable".repeat(50)));
+    var cache = new AnalysisResultCache(2 * entryWeight(smallIssues));
+    cache.put("key1", null, INPUT_FILE, smallIssues);
+
+    cache.put("key2", null, INPUT_FILE, bigIssues);
+
+    assertThat(cache.get("key1", null, INPUT_FILE)).isPresent();
+    assertThat(cache.get("key2", null, INPUT_FILE)).isEmpty();
+  }
+
+  @Test
+  void should_load_persisted_issues() {
+    var issue = issue(INPUT_FILE, "Remove this variable");
+    var persistentCache = mock(PersistentAnalysisResultCache.class);
+    when(persistentCache.get("key", null, INPUT_FILE)).thenReturn(Optional.of(List.of(issue)));
+    underTest.enablePersistence(persistentCache);
+
+    assertThat(underTest.get("key", null, INPUT_FILE)).contains(List.of(issue));
+    assertThat(underTest.size()).isEqualTo(1);
+  }
+
+  @Test
+  void should_persist_issues() {
+    var issue = issue(INPUT_FILE, "Remove this variable");
+    var persistentCache = mock(PersistentAnalysisResultCache.class);
+    underTest.enablePersistence(persistentCache);
+
+    underTest.put("key", "/project", INPUT_FILE, List.of(issue));
+    underTest.clear("/project");
+
+    verify(persistentCache).put("key", "/project", INPUT_FILE, List.of(issue));
+    verify(persistentCache).clear("/project");
+  }
+
+  @Test
+  void should_clear_partition() {
+    underTest.put("key1", "/project1", INPUT_FILE, List.of());
+    underTest.put("key2", "/project2", INPUT_FILE, List.of());
+    underTest.put("key3", null, INPUT_FILE, List.of());
+
+    underTest.clear("/project1");
+
+    assertThat(underTest.get("key1", "/project1", INPUT_FILE)).isEmpty();
+    assertThat(underTest.get("key2", "/project2", INPUT_FILE)).isPresent();
+    assertThat(underTest.get("key3", null, INPUT_FILE)).isPresent();
+  }
+
+  private static long entryWeight(List<Issue> issues) throws IOException {
+    // Same overhead as the cache
+    return PersistentAnalysisResultCache.toBytes(INPUT_FILE, issues).length + 100L;
+  }
+
+  private static Issue issue(AnalysisClientInputFile inputFile, String message) {
+    var issue = mock(Issue.class);
+    when(issue.getSeverity()).thenReturn("MAJOR");
+    when(issue.getType()).thenReturn("CODE_SMELL");
+    when(issue.getRuleKey()).thenReturn("javascript:S1481");
+    when(issue.getRuleName()).thenReturn("Unused local variables should be removed");
+    when(issue.getMessage()).thenReturn(message);
+    when(issue.getTextRange()).thenReturn(new TextRange(1, 6, 1, 10));
+    when(issue.getInputFile()).thenReturn(inputFile);
+    return issue;
+  }
+
+  private static StandaloneAnalysisConfiguration configuration(String content, Map<String, String> properties) {
+    return configurationBuilder(content, false).putAllExtraProperties(properties).build();
+  }
+
+  private static StandaloneAnalysisConfiguration.Builder configurationBuilder(String content, boolean isTest) {
+    return StandaloneAnalysisConfiguration.builder()
+      .setBaseDir(Paths.get(BASE_DIR))
+      .addInputFile(new AnalysisClientInputFile(FILE, "file.js", content, isTest, "javascript"));
+  }
+
+  private static PluginDetails plugin(String key, String version) {
+    var plugin = mock(PluginDetails.class);
+    when(plugin.key()).thenReturn(key);
+    when(plugin.version()).thenReturn(version);
+    when(plugin.skipReason()).thenReturn(Optional.<SkipReason>empty());
+    return plugin;
+  }
+}
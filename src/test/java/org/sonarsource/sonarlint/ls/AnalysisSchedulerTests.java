@@ -0,0 +1,323 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.sonar.api.utils.log.LogTesterJUnit5;
+import org.sonar.api.utils.log.LoggerLevel;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.sonarsource.sonarlint.ls.AnalysisScheduler.Priority.BACKGROUND;
+import static org.sonarsource.sonarlint.ls.AnalysisScheduler.Priority.BULK;
+import static org.sonarsource.sonarlint.ls.AnalysisScheduler.Priority.EDIT;
+import static org.sonarsource.sonarlint.ls.AnalysisScheduler.Priority.OPEN;
+
+class AnalysisSchedulerTests {
+
+  private static final URI FOLDER = URI.create("file:///folder");
+  private static final URI FILE1 = URI.create("file:///folder/file1.js");
+  private static final URI FILE2 = URI.create("file:///folder/file2.js");
+  private static final URI FILE3 = URI.create("file:///other/file3.js");
+
+  @RegisterExtension
+  LogTesterJUnit5 logTester = new LogTesterJUnit5();
+
+  private AnalysisScheduler underTest = new AnalysisScheduler(2, Executors.newCachedThreadPool());
+
+  @AfterEach
+  void stop() {
+    underTest.shutdown();
+  }
+
+  @Test
+  void should_run_tasks_of_different_files_concurrently() throws Exception {
+    var bothStarted = new CountDownLatch(2);
+    var done = new CountDownLatch(2);
+    Runnable task = () -> {
+      bothStarted.countDown();
+      awaitQuietly(bothStarted);
+      done.countDown();
+    };
+
+    underTest.submit(FILE1, FOLDER, EDIT, task);
+    underTest.submit(FILE2, FOLDER, EDIT, task);
+
+    assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  void should_run_tasks_of_same_file_sequentially_in_order() {
+    var executed = new CopyOnWriteArrayList<Integer>();
+    var running = new AtomicInteger();
+    var maxRunning = new AtomicInteger();
+    for (var i = 0; i < 10; i++) {
+      var index = i;
+      underTest.submit(FILE1, FOLDER, EDIT, () -> {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        executed.add(index);
+        running.decrementAndGet();
+      });
+    }
+
+    await().atMost(5, TimeUnit.SECONDS).until(() -> executed.size() == 10);
+    assertThat(executed).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+    assertThat(maxRunning.get()).isEqualTo(1);
+  }
+
+  @Test
+  void should_not_exceed_parallelism() {
+    var running = new AtomicInteger();
+    var maxRunning = new AtomicInteger();
+    var executed = new AtomicInteger();
+    for (var i = 0; i < 20; i++) {
+      underTest.submit(URI.create("file:///folder/file" + i + ".js"), FOLDER, EDIT, () -> {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        sleepQuietly(5);
+        running.decrementAndGet();
+        executed.incrementAndGet();
+      });
+    }
+
+    await().atMost(5, TimeUnit.SECONDS).until(() -> executed.get() == 20);
+    assertThat(maxRunning.get()).isLessThanOrEqualTo(2);
+  }
+
+  @Test
+  void should_wait_for_folder_tasks_before_analyzing_files_of_this_folder() {
+    var folderTaskCanEnd = new CountDownLatch(1);
+    var executed = new CopyOnWriteArrayList<String>();
+
+    underTest.submitFolderTask(FOLDER, () -> {
+      awaitQuietly(folderTaskCanEnd);
+      executed.add("folder");
+    });
+    underTest.submit(FILE1, FOLDER, EDIT, () -> executed.add("file1"));
+    underTest.submit(FILE3, null, EDIT, () -> executed.add("file3"));
+
+    await().atMost(5, TimeUnit.SECONDS).until(() -> executed.contains("file3"));
+    assertThat(executed).containsExactly("file3");
+
+    folderTaskCanEnd.countDown();
+
+    await().atMost(5, TimeUnit.SECONDS).until(() -> executed.size() == 3);
+    assertThat(executed).containsExactly("file3", "folder", "file1");
+  }
+
+  @Test
+  void should_wait_for_tasks_of_files_of_this_folder_before_running_folder_task() {
+    var fileTaskCanEnd = new CountDownLatch(1);
+    var executed = new CopyOnWriteArrayList<String>();
+
+    underTest.submit(FILE1, FOLDER, BULK, () -> {
+      awaitQuietly(fileTaskCanEnd);
+      executed.add("file1");
+    });
+    underTest.submitFolderTask(FOLDER, () -> executed.add("folder"));
+    underTest.submit(FILE3, null, EDIT, () -> executed.add("file3"));
+
+    await().atMost(5, TimeUnit.SECONDS).until(() -> executed.contains("file3"));
+    assertThat(executed).containsExactly("file3");
+
+    fileTaskCanEnd.countDown();
+
+    await().atMost(5, TimeUnit.SECONDS).until(() -> executed.size() == 3);
+    assertThat(executed).containsExactly("file3", "file1", "folder");
+  }
+
+  @Test
+  void should_run_task_of_several_files_after_previous_tasks_of_any_of_them() {
+    var file2TaskCanEnd = new CountDownLatch(1);
+    var executed = new CopyOnWriteArrayList<String>();
+
+    underTest.submit(FILE2, FOLDER, EDIT, () -> {
+      awaitQuietly(file2TaskCanEnd);
+      executed.add("file2");
+    });
+    underTest.submit(List.of(FILE1, FILE2), FOLDER, EDIT, () -> executed.add("file1+file2"));
+    underTest.submit(FILE1, FOLDER, EDIT, () -> executed.add("file1"));
+    underTest.submit(FILE3, null, EDIT, () -> executed.add("file3"));
+
+    await().atMost(5, TimeUnit.SECONDS).until(() -> executed.contains("file3"));
+    assertThat(executed).containsExactly("file3");
+
+    file2TaskCanEnd.countDown();
+
+    await().atMost(5, TimeUnit.SECONDS).until(() -> executed.size() == 4);
+    assertThat(executed).containsExactly("file3", "file2", "file1+file2", "file1");
+  }
+
+  @Test
+  void should_count_task_of_several_files_once_for_parallelism() throws Exception {
+    var bothStarted = new CountDownLatch(2);
+    var done = new CountDownLatch(2);
+    Runnable task = () -> {
+      bothStarted.countDown();
+      awaitQuietly(bothStarted);
+      done.countDown();
+    };
+
+    underTest.submit(List.of(FILE1, FILE2), FOLDER, EDIT, task);
+    underTest.submit(FILE3, null, EDIT, task);
+
+    assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  void should_start_tasks_with_highest_priority_first() {
+    underTest = new AnalysisScheduler(1, Executors.newCachedThreadPool());
+    var firstTaskCanEnd = new CountDownLatch(1);
+    var executed = new CopyOnWriteArrayList<String>();
+
+    underTest.submit(URI.create("file:///folder/first.js"), FOLDER, EDIT, () -> awaitQuietly(firstTaskCanEnd));
+    underTest.submit(FILE1, FOLDER, BACKGROUND, () -> executed.add("background"));
+    underTest.submit(FILE2, FOLDER, BULK, () -> executed.add("bulk"));
+    underTest.submit(FILE3, null, OPEN, () -> executed.add("open"));
+    underTest.submit(URI.create("file:///folder/file4.js"), FOLDER, EDIT, () -> executed.add("edit"));
+    firstTaskCanEnd.countDown();
+
+    await().atMost(5, TimeUnit.SECONDS).until(() -> executed.size() == 4);
+    assertThat(executed).containsExactly("edit", "open", "bulk", "background");
+  }
+
+  @Test
+  void should_raise_priority_of_pending_tasks() {
+    underTest = new AnalysisScheduler(1, Executors.newCachedThreadPool());
+    var firstTaskCanEnd = new CountDownLatch(1);
+    var executed = new CopyOnWriteArrayList<String>();
+
+    underTest.submit(URI.create("file:///folder/first.js"), FOLDER, EDIT, () -> awaitQuietly(firstTaskCanEnd));
+    underTest.submit(FILE1, FOLDER, BULK, () -> executed.add("file1"));
+    underTest.submit(List.of(FILE2, FILE3), FOLDER, BACKGROUND, () -> executed.add("file2+file3"));
+    underTest.raisePriority(FILE3, OPEN);
+    firstTaskCanEnd.countDown();
+
+    await().atMost(5, TimeUnit.SECONDS).until(() -> executed.size() == 2);
+    assertThat(executed).containsExactly("file2+file3", "file1");
+  }
+
+  @Test
+  void should_raise_priority_of_tasks_waiting_for_prerequisites() {
+    underTest = new AnalysisScheduler(1, Executors.newCachedThreadPool());
+    var firstTaskCanEnd = new CountDownLatch(1);
+    var executed = new CopyOnWriteArrayList<String>();
+    var prerequisites = new CompletableFuture<Void>();
+
+    underTest.submit(URI.create("file:///folder/first.js"), FOLDER, EDIT, () -> awaitQuietly(firstTaskCanEnd));
+    underTest.submit(FILE1, FOLDER, BULK, () -> executed.add("file1"));
+    underTest.submitWhenReady(prerequisites, List.of(FILE2), FOLDER, BACKGROUND, () -> executed.add("file2"));
+    underTest.raisePriority(FILE2, EDIT);
+    prerequisites.complete(null);
+    firstTaskCanEnd.countDown();
+
+    await().atMost(5, TimeUnit.SECONDS).until(() -> executed.size() == 2);
+    assertThat(executed).containsExactly("file2", "file1");
+  }
+
+  @Test
+  void should_not_run_task_before_lower_priority_tasks_submitted_before_for_same_file() {
+    underTest = new AnalysisScheduler(1, Executors.newCachedThreadPool());
+    var firstTaskCanEnd = new CountDownLatch(1);
+    var executed = new CopyOnWriteArrayList<String>();
+
+    underTest.submit(URI.create("file:///folder/first.js"), FOLDER, EDIT, () -> awaitQuietly(firstTaskCanEnd));
+    underTest.submit(FILE1, FOLDER, BULK, () -> executed.add("file1 bulk"));
+    underTest.submit(List.of(FILE2, FILE3), FOLDER, BACKGROUND, () -> executed.add("file2+file3 background"));
+    underTest.submit(FILE3, null, EDIT, () -> executed.add("file3 edit"));
+    firstTaskCanEnd.countDown();
+
+    await().atMost(5, TimeUnit.SECONDS).until(() -> executed.size() == 3);
+    // Background task inherits the priority of the task waiting for it
+    assertThat(executed).containsExactly("file2+file3 background", "file3 edit", "file1 bulk");
+  }
+
+  @Test
+  void should_continue_after_failed_task() {
+    var executed = new CountDownLatch(1);
+
+    underTest.submit(FILE1, FOLDER, EDIT, () -> {
+      throw new IllegalStateException("Boom");
+    });
+    underTest.submit(FILE1, FOLDER, EDIT, executed::countDown);
+
+    await().atMost(5, TimeUnit.SECONDS).until(() -> executed.getCount() == 0);
+  }
+
+  @Test
+  void should_allow_increasing_parallelism() throws Exception {
+    underTest = new AnalysisScheduler(1, Executors.newCachedThreadPool());
+    var allStarted = new CountDownLatch(3);
+    var done = new CountDownLatch(3);
+    List.of(FILE1, FILE2, FILE3).forEach(uri -> underTest.submit(uri, null, EDIT, () -> {
+      allStarted.countDown();
+      awaitQuietly(allStarted);
+      done.countDown();
+    }));
+
+    underTest.setParallelism(3);
+
+    assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(underTest.getParallelism()).isEqualTo(3);
+  }
+
+  @Test
+  void should_use_one_worker_if_parallelism_is_invalid() {
+    underTest.setParallelism(0);
+
+    assertThat(underTest.getParallelism()).isEqualTo(1);
+    assertThat(logTester.logs(LoggerLevel.WARN)).containsExactly("Analysis parallelism should be strictly positive, was: 0. Using 1 instead.");
+  }
+
+  @Test
+  void should_ignore_tasks_after_shutdown() {
+    var executed = new AtomicInteger();
+    underTest.shutdown();
+
+    underTest.submit(FILE1, FOLDER, EDIT, executed::incrementAndGet);
+
+    assertThat(executed.get()).isZero();
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void sleepQuietly(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,245 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonarsource.sonarlint.core.client.api.common.ClientInputFileEdit;
+import org.sonarsource.sonarlint.core.client.api.common.PluginDetails;
+import org.sonarsource.sonarlint.core.client.api.common.QuickFix;
+import org.sonarsource.sonarlint.core.client.api.common.SkipReason;
+import org.sonarsource.sonarlint.core.client.api.common.TextEdit;
+import org.sonarsource.sonarlint.core.client.api.common.TextRange;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueLocation;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PersistentAnalysisResultCacheTests {
+
+  private static final String KEY1 = "0123456789abcdef";
+  private static final String KEY2 = "fedcba9876543210";
+
+  private final AnalysisClientInputFile inputFile = new AnalysisClientInputFile(URI.create("file:///folder/file.js"), "file.js", "", false, "javascript");
+
+  @TempDir
+  Path storageRoot;
+
+  @Test
+  void should_restore_issues_after_restart() {
+    var issue = mockIssue(inputFile);
+    var location = mock(IssueLocation.class);
+    when(location.getInputFile()).thenReturn(inputFile);
+    when(location.getMessage()).thenReturn("secondary");
+    when(location.getTextRange()).thenReturn(new TextRange(3, 1, 3, 5));
+    when(issue.flows()).thenReturn(List.of(() -> List.of(location)));
+    var textEdit = mock(TextEdit.class);
+    when(textEdit.range()).thenReturn(new TextRange(1, 6, 1, 10));
+    when(textEdit.newText()).thenReturn("tata");
+    var fileEdit = mock(ClientInputFileEdit.class);
+    when(fileEdit.target()).thenReturn(inputFile);
+    when(fileEdit.textEdits()).thenReturn(List.of(textEdit));
+    var quickFix = mock(QuickFix.class);
+    when(quickFix.message()).thenReturn("Rename");
+    when(quickFix.inputFileEdits()).thenReturn(List.of(fileEdit));
+    when(issue.quickFixes()).thenReturn(List.of(quickFix));
+    newCache().put(KEY1, null, inputFile, List.of(issue));
+
+    var newInputFile = new AnalysisClientInputFile(URI.create("file:///folder/file.js"), "file.js", "", false, "javascript");
+    var restored = newCache().get(KEY1, null, newInputFile);
+
+    assertThat(restored).isPresent();
+    assertThat(restored.get())
+      .extracting(Issue::getSeverity, Issue::getType, Issue::getRuleKey, Issue::getRuleName, Issue::getMessage, Issue::getStartLine, Issue::getEndLineOffset, Issue::getInputFile)
+      .containsExactly(tuple("MAJOR", "CODE_SMELL", "javascript:S1481", "Unused local variables should be removed", "Remove this variable", 1, 10, newInputFile));
+    var restoredIssue = restored.get().get(0);
+    assertThat(restoredIssue.flows()).hasSize(1);
+    assertThat(restoredIssue.flows().get(0).locations())
+      .extracting(IssueLocation::getInputFile, IssueLocation::getMessage, IssueLocation::getStartLine, IssueLocation::getEndLineOffset)
+      .containsExactly(tuple(newInputFile, "secondary", 3, 5));
+    assertThat(restoredIssue.quickFixes()).extracting(QuickFix::message).containsExactly("Rename");
+    var restoredFileEdit = restoredIssue.quickFixes().get(0).inputFileEdits().get(0);
+    assertThat(restoredFileEdit.target()).isSameAs(newInputFile);
+    assertThat(restoredFileEdit.textEdits()).extracting(TextEdit::newText, e -> e.range().getStartLineOffset()).containsExactly(tuple("tata", 6));
+  }
+
+  @Test
+  void should_return_empty_for_unknown_key() {
+    assertThat(newCache().get(KEY1, null, inputFile)).isEmpty();
+  }
+
+  @Test
+  void should_not_store_issues_located_in_other_files() {
+    var underTest = newCache();
+    var otherFile = new AnalysisClientInputFile(URI.create("file:///folder/other.js"), "other.js", "", false, "javascript");
+
+    underTest.put(KEY1, null, inputFile, List.of(mockIssue(otherFile)));
+
+    assertThat(underTest.get(KEY1, null, inputFile)).isEmpty();
+  }
+
+  @Test
+  void should_store_entries_per_plugins() {
+    var underTest = new PersistentAnalysisResultCache(storageRoot);
+    underTest.usePlugins(List.of(plugin("6.2.1")));
+    underTest.put(KEY1, null, inputFile, List.of(mockIssue(inputFile)));
+
+    var afterRestart = new PersistentAnalysisResultCache(storageRoot);
+    afterRestart.usePlugins(List.of(plugin("6.2.1")));
+    assertThat(afterRestart.get(KEY1, null, inputFile)).isPresent();
+
+    afterRestart.usePlugins(List.of(plugin("6.3.0")));
+    assertThat(afterRestart.get(KEY1, null, inputFile)).isEmpty();
+
+    afterRestart.usePlugins(List.of(plugin("6.2.1")));
+    assertThat(afterRestart.get(KEY1, null, inputFile)).isPresent();
+  }
+
+  @Test
+  void should_not_use_entries_before_plugins_are_known() {
+    var underTest = new PersistentAnalysisResultCache(storageRoot);
+
+    underTest.put(KEY1, null, inputFile, List.of());
+
+    assertThat(underTest.get(KEY1, null, inputFile)).isEmpty();
+    assertThat(storageRoot.resolve("v" + PersistentAnalysisResultCache.FORMAT_VERSION)).doesNotExist();
+  }
+
+  @Test
+  void should_keep_entries_of_processes_using_other_plugins() {
+    var process1 = new PersistentAnalysisResultCache(storageRoot);
+    process1.usePlugins(List.of(plugin("6.2.1")));
+    process1.put(KEY1, null, inputFile, List.of(mockIssue(inputFile)));
+    var process2 = new PersistentAnalysisResultCache(storageRoot);
+    process2.usePlugins(List.of(plugin("6.3.0")));
+    process2.put(KEY2, null, inputFile, List.of(mockIssue(inputFile)));
+
+    process1.clear("/project");
+    process2.clear("/project");
+
+    assertThat(process1.get(KEY1, null, inputFile)).isPresent();
+    assertThat(process2.get(KEY2, null, inputFile)).isPresent();
+  }
+
+  @Test
+  void should_only_delete_directories_of_other_plugins_unused_for_a_while() throws Exception {
+    var underTest = newCache();
+    var versionDir = storageRoot.resolve("v" + PersistentAnalysisResultCache.FORMAT_VERSION);
+    var recentlyUsed = Files.createDirectories(versionDir.resolve("recentlyUsed"));
+    var unused = Files.createDirectories(versionDir.resolve("unused").resolve("default"));
+    Files.setLastModifiedTime(unused, FileTime.fromMillis(0));
+    Files.setLastModifiedTime(unused.getParent(), FileTime.fromMillis(0));
+
+    underTest.usePlugins(List.of(plugin("6.3.0")));
+
+    assertThat(recentlyUsed).exists();
+    assertThat(unused.getParent()).doesNotExist();
+  }
+
+  @Test
+  void should_clear_partition() {
+    var underTest = newCache();
+    underTest.put(KEY1, "/project1", inputFile, List.of());
+    underTest.put(KEY2, "/project2", inputFile, List.of());
+
+    underTest.clear("/project1");
+
+    assertThat(underTest.get(KEY1, "/project1", inputFile)).isEmpty();
+    assertThat(underTest.get(KEY2, "/project2", inputFile)).isPresent();
+  }
+
+  @Test
+  void should_drop_unused_entries_of_other_format_versions() throws Exception {
+    var oldVersion = Files.createDirectories(storageRoot.resolve("v0"));
+    Files.setLastModifiedTime(oldVersion, FileTime.fromMillis(0));
+    var recentOldVersion = Files.createDirectories(storageRoot.resolve("v1"));
+
+    new PersistentAnalysisResultCache(storageRoot);
+
+    assertThat(oldVersion).doesNotExist();
+    assertThat(recentOldVersion).exists();
+  }
+
+  @Test
+  void should_ignore_corrupted_entries() throws Exception {
+    var underTest = newCache();
+    underTest.put(KEY1, null, inputFile, List.of(mockIssue(inputFile)));
+    var entry = entryPath(KEY1);
+    Files.write(entry, new byte[] {0, 0, 0, 1, 42});
+
+    assertThat(underTest.get(KEY1, null, inputFile)).isEmpty();
+    assertThat(entry).doesNotExist();
+  }
+
+  @Test
+  void should_remove_least_recently_used_entries() throws Exception {
+    var underTest = new PersistentAnalysisResultCache(storageRoot, 1);
+    underTest.usePlugins(List.of(plugin("6.2.1")));
+    underTest.put(KEY1, null, inputFile, List.of());
+    Files.setLastModifiedTime(entryPath(KEY1), FileTime.fromMillis(0));
+
+    underTest.put(KEY2, null, inputFile, List.of());
+
+    assertThat(underTest.get(KEY1, null, inputFile)).isEmpty();
+    assertThat(underTest.get(KEY2, null, inputFile)).isPresent();
+  }
+
+  private PersistentAnalysisResultCache newCache() {
+    var cache = new PersistentAnalysisResultCache(storageRoot);
+    cache.usePlugins(List.of(plugin("6.2.1")));
+    return cache;
+  }
+
+  private Path entryPath(String key) throws IOException {
+    try (var files = Files.walk(storageRoot)) {
+      return files.filter(f -> f.getFileName().toString().equals(key + ".bin")).findFirst().orElseThrow();
+    }
+  }
+
+  private static Issue mockIssue(AnalysisClientInputFile inputFile) {
+    var issue = mock(Issue.class);
+    when(issue.getSeverity()).thenReturn("MAJOR");
+    when(issue.getType()).thenReturn("CODE_SMELL");
+    when(issue.getRuleKey()).thenReturn("javascript:S1481");
+    when(issue.getRuleName()).thenReturn("Unused local variables should be removed");
+    when(issue.getMessage()).thenReturn("Remove this variable");
+    when(issue.getTextRange()).thenReturn(new TextRange(1, 6, 1, 10));
+    when(issue.getInputFile()).thenReturn(inputFile);
+    return issue;
+  }
+
+  private static PluginDetails plugin(String version) {
+    var plugin = mock(PluginDetails.class);
+    when(plugin.key()).thenReturn("javascript");
+    when(plugin.version()).thenReturn(version);
+    when(plugin.skipReason()).thenReturn(Optional.<SkipReason>empty());
+    return plugin;
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls;
+
+import org.eclipse.lsp4j.Diagnostic;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RuleKeyAndRangeTests {
+
+  @Test
+  void diagnostics_with_same_rule_key_and_range_have_same_key() {
+    var diagnostic = new Diagnostic(new Range(new Position(1, 2), new Position(3, 4)), "message");
+    diagnostic.setCode("java:S123");
+
+    assertThat(RuleKeyAndRange.of(diagnostic))
+      .isEqualTo(new RuleKeyAndRange("java:S123", new Range(new Position(1, 2), new Position(3, 4))))
+      .hasSameHashCodeAs(new RuleKeyAndRange("java:S123", new Range(new Position(1, 2), new Position(3, 4))))
+      .isNotEqualTo(new RuleKeyAndRange("java:S456", new Range(new Position(1, 2), new Position(3, 4))))
+      .isNotEqualTo(new RuleKeyAndRange("java:S123", new Range(new Position(1, 2), new Position(3, 5))));
+  }
+
+  @Test
+  void no_key_for_diagnostics_without_rule_key() {
+    var diagnostic = new Diagnostic(new Range(new Position(1, 2), new Position(3, 4)), "message");
+
+    assertThat(RuleKeyAndRange.of(diagnostic)).isNull();
+  }
+}
@@ -20,21 +20,42 @@
 package org.sonarsource.sonarlint.ls;
 
 import java.net.URI;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import org.eclipse.lsp4j.FileChangeType;
+import org.eclipse.lsp4j.FileEvent;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.sonarsource.sonarlint.ls.scm.GitIgnoreResolver;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 class ScmIgnoredCacheTests {
 
   private static final URI FAKE_URI = URI.create("file://foo.txt");
+  private static final URI GIT_FILE_URI = Paths.get("repo", "file.js").toAbsolutePath().toUri();
   private final SonarLintExtendedLanguageClient mockClient = mock(SonarLintExtendedLanguageClient.class);
-  private final ScmIgnoredCache underTest = new ScmIgnoredCache(mockClient);
+  private final GitIgnoreResolver gitIgnoreResolver = mock(GitIgnoreResolver.class);
+  private final List<Runnable> pendingTasks = new ArrayList<>();
+  private final ExecutorService executor = mock(ExecutorService.class);
+  private final ScmIgnoredCache underTest = new ScmIgnoredCache(mockClient, gitIgnoreResolver, executor);
+
+  @BeforeEach
+  void prepare() {
+    doAnswer(invocation -> pendingTasks.add(invocation.getArgument(0))).when(executor).execute(any());
+  }
 
   @Test
   void ignored_status_should_be_cached_if_true() {
@@ -65,6 +86,61 @@ class ScmIgnoredCacheTests {
     verifyNoMoreInteractions(mockClient);
   }
 
+  @Test
+  void should_not_ask_client_if_not_ignored_by_git() {
+    when(gitIgnoreResolver.isIgnored(Paths.get(GIT_FILE_URI))).thenReturn(Optional.of(false));
+
+    assertThat(underTest.isIgnored(GIT_FILE_URI)).contains(false);
+
+    verifyNoInteractions(mockClient);
+  }
+
+  @Test
+  void should_ask_client_if_ignored_by_git_rules() {
+    when(gitIgnoreResolver.isIgnored(Paths.get(GIT_FILE_URI))).thenReturn(Optional.of(true));
+    // File is tracked
+    when(mockClient.isIgnoredByScm(GIT_FILE_URI.toString())).thenReturn(CompletableFuture.completedFuture(false));
+
+    assertThat(underTest.isIgnored(GIT_FILE_URI)).contains(false);
+  }
+
+  @Test
+  void should_ask_client_if_git_rules_can_not_be_evaluated() {
+    when(gitIgnoreResolver.isIgnored(Paths.get(GIT_FILE_URI))).thenReturn(Optional.empty());
+    when(mockClient.isIgnoredByScm(GIT_FILE_URI.toString())).thenReturn(CompletableFuture.completedFuture(true));
+
+    assertThat(underTest.isIgnored(GIT_FILE_URI)).contains(true);
+  }
+
+  @Test
+  void should_clear_cache_when_ignore_rules_change() {
+    var gitignore = Paths.get("repo", ".gitignore").toAbsolutePath();
+    when(gitIgnoreResolver.didChange(gitignore)).thenReturn(true);
+    when(gitIgnoreResolver.isIgnored(Paths.get(GIT_FILE_URI))).thenReturn(Optional.of(false));
+    underTest.isIgnored(GIT_FILE_URI);
+    underTest.didChangeWatchedFiles(List.of(new FileEvent(GIT_FILE_URI.toString(), FileChangeType.Changed)));
+    assertThat(underTest.filesIgnoredByUri).isNotEmpty();
+
+    underTest.didChangeWatchedFiles(List.of(new FileEvent(gitignore.toUri().toString(), FileChangeType.Changed)));
+
+    assertThat(underTest.filesIgnoredByUri).isEmpty();
+  }
+
+  @Test
+  void should_evaluate_git_rules_outside_of_caller_thread() throws Exception {
+    when(gitIgnoreResolver.isIgnored(Paths.get(GIT_FILE_URI))).thenReturn(Optional.of(false));
+
+    var ignored = underTest.isIgnoredAsync(GIT_FILE_URI);
+    assertThat(ignored).isNotDone();
+    verifyNoInteractions(gitIgnoreResolver);
+
+    pendingTasks.remove(0).run();
+    assertThat(ignored.get()).contains(false);
+    assertThat(underTest.isIgnoredAsync(GIT_FILE_URI).get()).contains(false);
+    assertThat(pendingTasks).isEmpty();
+    verifyNoInteractions(mockClient);
+  }
+
   @Test
   void status_should_be_empty_if_exception() {
     when(mockClient.isIgnoredByScm(FAKE_URI.toString())).thenThrow(new IllegalStateException("Cancelled"));
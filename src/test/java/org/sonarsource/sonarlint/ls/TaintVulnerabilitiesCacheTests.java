@@ -0,0 +1,146 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls;
+
+import com.google.gson.JsonPrimitive;
+import java.net.URI;
+import java.util.List;
+import org.eclipse.lsp4j.Diagnostic;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.junit.jupiter.api.Test;
+import org.sonarsource.sonarlint.core.client.api.connected.ServerIssue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TaintVulnerabilitiesCacheTests {
+
+  private static final URI FILE_URI = URI.create("file:///File.java");
+  private static final URI OTHER_FILE_URI = URI.create("file:///Other.java");
+
+  private final TaintVulnerabilitiesCache underTest = new TaintVulnerabilitiesCache();
+
+  @Test
+  void keep_only_unresolved_taint_vulnerabilities() {
+    var taint = serverIssue("key1", "javasecurity:S3649", "");
+    var resolvedTaint = serverIssue("key2", "javasecurity:S3649", "FIXED");
+    var notTaint = serverIssue("key3", "java:S1234", "");
+
+    assertThat(underTest.reload(FILE_URI, List.of(taint, resolvedTaint, notTaint))).isEqualTo(1);
+
+    assertThat(underTest.getAsList(FILE_URI)).containsExactly(taint);
+    assertThat(underTest.getTaintVulnerabilityByKey("key1")).hasValue(taint);
+    assertThat(underTest.getTaintVulnerabilityByKey("key2")).isEmpty();
+    assertThat(underTest.getTaintVulnerabilityByKey("key3")).isEmpty();
+  }
+
+  @Test
+  void reload_should_replace_previous_taint_vulnerabilities_of_file() {
+    var previous = serverIssue("key1", "javasecurity:S3649", "");
+    var other = serverIssue("key2", "javasecurity:S3649", "");
+    underTest.reload(FILE_URI, List.of(previous));
+    underTest.reload(OTHER_FILE_URI, List.of(other));
+
+    var current = serverIssue("key3", "javasecurity:S3649", "");
+    underTest.reload(FILE_URI, List.of(current));
+
+    assertThat(underTest.getAsList(FILE_URI)).containsExactly(current);
+    assertThat(underTest.getTaintVulnerabilityByKey("key1")).isEmpty();
+    assertThat(underTest.getTaintVulnerabilityByKey("key2")).hasValue(other);
+    assertThat(underTest.getTaintVulnerabilityByKey("key3")).hasValue(current);
+  }
+
+  @Test
+  void remove_should_forget_taint_vulnerabilities_of_file() {
+    underTest.reload(FILE_URI, List.of(serverIssue("key1", "javasecurity:S3649", "")));
+
+    underTest.remove(FILE_URI);
+
+    assertThat(underTest.getAsList(FILE_URI)).isEmpty();
+    assertThat(underTest.getTaintVulnerabilityByKey("key1")).isEmpty();
+    assertThat(underTest.isOutdated(FILE_URI)).isTrue();
+  }
+
+  @Test
+  void files_are_outdated_until_reloaded() {
+    assertThat(underTest.isOutdated(FILE_URI)).isTrue();
+
+    underTest.reload(FILE_URI, List.of());
+    assertThat(underTest.isOutdated(FILE_URI)).isFalse();
+
+    underTest.markOutdated(List.of(FILE_URI));
+    assertThat(underTest.isOutdated(FILE_URI)).isTrue();
+
+    underTest.reload(FILE_URI, List.of());
+    assertThat(underTest.isOutdated(FILE_URI)).isFalse();
+  }
+
+  @Test
+  void find_taint_vulnerability_for_diagnostic_of_same_file() {
+    var taint = serverIssue("key1", "javasecurity:S3649", "");
+    underTest.reload(FILE_URI, List.of(taint));
+
+    var byKey = new Diagnostic();
+    byKey.setData(new JsonPrimitive("key1"));
+    assertThat(underTest.getTaintVulnerabilityForDiagnostic(FILE_URI, byKey)).hasValue(taint);
+    assertThat(underTest.getTaintVulnerabilityForDiagnostic(OTHER_FILE_URI, byKey)).isEmpty();
+
+    var byLocation = new Diagnostic();
+    byLocation.setCode("javasecurity:S3649");
+    byLocation.setRange(new Range(new Position(1, 2), new Position(3, 4)));
+    assertThat(underTest.getTaintVulnerabilityForDiagnostic(FILE_URI, byLocation)).hasValue(taint);
+
+    var otherLocation = new Diagnostic();
+    otherLocation.setCode("javasecurity:S3649");
+    otherLocation.setRange(new Range(new Position(1, 2), new Position(3, 5)));
+    assertThat(underTest.getTaintVulnerabilityForDiagnostic(FILE_URI, otherLocation)).isEmpty();
+  }
+
+  @Test
+  void find_file_level_taint_vulnerability_by_key_only() {
+    var fileLevelTaint = serverIssue("key1", "javasecurity:S3649", "");
+    when(fileLevelTaint.getStartLine()).thenReturn(null);
+
+    assertThat(underTest.reload(FILE_URI, List.of(fileLevelTaint))).isEqualTo(1);
+
+    var byKey = new Diagnostic();
+    byKey.setData(new JsonPrimitive("key1"));
+    assertThat(underTest.getTaintVulnerabilityForDiagnostic(FILE_URI, byKey)).hasValue(fileLevelTaint);
+
+    var byLocation = new Diagnostic();
+    byLocation.setCode("javasecurity:S3649");
+    byLocation.setRange(new Range(new Position(0, 0), new Position(0, 0)));
+    assertThat(underTest.getTaintVulnerabilityForDiagnostic(FILE_URI, byLocation)).isEmpty();
+  }
+
+  private static ServerIssue serverIssue(String key, String ruleKey, String resolution) {
+    var issue = mock(ServerIssue.class);
+    when(issue.key()).thenReturn(key);
+    when(issue.ruleKey()).thenReturn(ruleKey);
+    when(issue.resolution()).thenReturn(resolution);
+    when(issue.getStartLine()).thenReturn(2);
+    when(issue.getStartLineOffset()).thenReturn(2);
+    when(issue.getEndLine()).thenReturn(4);
+    when(issue.getEndLineOffset()).thenReturn(4);
+    return issue;
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls.connected;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.sonarsource.sonarlint.core.tracking.Trackable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class BoundedIssueTrackerCacheTests {
+
+  private final BoundedIssueTrackerCache underTest = new BoundedIssueTrackerCache(2);
+
+  @Test
+  void keep_trackables_of_analyzed_files() {
+    var trackable = mock(Trackable.class);
+    assertThat(underTest.isFirstAnalysis("file1")).isTrue();
+    assertThat(underTest.getCurrentTrackables("file1")).isEmpty();
+    assertThatThrownBy(() -> underTest.getLiveOrFail("file1")).isInstanceOf(IllegalStateException.class);
+
+    underTest.put("file1", List.of(trackable));
+
+    assertThat(underTest.isFirstAnalysis("file1")).isFalse();
+    assertThat(underTest.getCurrentTrackables("file1")).containsExactly(trackable);
+    assertThat(underTest.getLiveOrFail("file1")).containsExactly(trackable);
+  }
+
+  @Test
+  void evict_least_recently_used_files() {
+    underTest.put("file1", List.of());
+    underTest.put("file2", List.of());
+    underTest.getCurrentTrackables("file1");
+    underTest.put("file3", List.of());
+
+    assertThat(underTest.isFirstAnalysis("file1")).isFalse();
+    assertThat(underTest.isFirstAnalysis("file2")).isTrue();
+    assertThat(underTest.isFirstAnalysis("file3")).isFalse();
+  }
+
+  @Test
+  void clear() {
+    underTest.put("file1", List.of());
+    underTest.clear();
+
+    assertThat(underTest.isFirstAnalysis("file1")).isTrue();
+  }
+}
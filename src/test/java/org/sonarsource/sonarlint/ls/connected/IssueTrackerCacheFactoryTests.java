@@ -0,0 +1,104 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls.connected;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+import org.sonarsource.sonarlint.core.tracking.IssueTrackable;
+import org.sonarsource.sonarlint.core.tracking.PersistentIssueTrackerCache;
+import org.sonarsource.sonarlint.core.tracking.Trackable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IssueTrackerCacheFactoryTests {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void use_bounded_in_memory_cache_without_storage() {
+    var underTest = new IssueTrackerCacheFactory(null);
+
+    assertThat(underTest.create("connectionId", "projectKey", tempDir)).isInstanceOf(BoundedIssueTrackerCache.class);
+  }
+
+  @Test
+  void tracked_issues_should_survive_restart() throws IOException {
+    var folderRoot = Files.createDirectories(tempDir.resolve("folder"));
+    Files.createFile(folderRoot.resolve("File.java"));
+    var underTest = new IssueTrackerCacheFactory(tempDir.resolve("storage"));
+
+    var cache = underTest.create("connectionId", "project:key", folderRoot);
+    assertThat(cache).isInstanceOf(PersistentIssueTrackerCache.class);
+    cache.put("File.java", List.of(trackable("ruleKey")));
+    cache.shutdown();
+
+    var restarted = underTest.create("connectionId", "project:key", folderRoot);
+    assertThat(restarted.isFirstAnalysis("File.java")).isFalse();
+    assertThat(restarted.getCurrentTrackables("File.java")).extracting(Trackable::getRuleKey).containsExactly("ruleKey");
+  }
+
+  @Test
+  void tracked_issues_should_not_be_shared_between_bindings() throws IOException {
+    var folderRoot = Files.createDirectories(tempDir.resolve("folder"));
+    Files.createFile(folderRoot.resolve("File.java"));
+    var underTest = new IssueTrackerCacheFactory(tempDir.resolve("storage"));
+
+    var cache = underTest.create("connectionId", "projectKey", folderRoot);
+    cache.put("File.java", List.of(trackable("ruleKey")));
+    cache.shutdown();
+
+    assertThat(underTest.create("connectionId", "otherProjectKey", folderRoot).isFirstAnalysis("File.java")).isTrue();
+    assertThat(underTest.create("otherConnectionId", "projectKey", folderRoot).isFirstAnalysis("File.java")).isTrue();
+  }
+
+  @Test
+  void drop_tracked_issues_of_deleted_files() throws IOException {
+    var folderRoot = Files.createDirectories(tempDir.resolve("folder"));
+    var file = Files.createFile(folderRoot.resolve("File.java"));
+    var underTest = new IssueTrackerCacheFactory(tempDir.resolve("storage"));
+
+    var cache = underTest.create("connectionId", "projectKey", folderRoot);
+    cache.put("File.java", List.of(trackable("ruleKey")));
+    cache.shutdown();
+    Files.delete(file);
+
+    assertThat(underTest.create("connectionId", "projectKey", folderRoot).isFirstAnalysis("File.java")).isTrue();
+  }
+
+  private static Trackable trackable(String ruleKey) {
+    var issue = mock(Issue.class);
+    when(issue.getInputFile()).thenReturn(mock(ClientInputFile.class));
+    when(issue.getRuleKey()).thenReturn(ruleKey);
+    when(issue.getMessage()).thenReturn("message");
+    when(issue.getSeverity()).thenReturn("MAJOR");
+    when(issue.getType()).thenReturn("BUG");
+    when(issue.getStartLine()).thenReturn(1);
+    return new IssueTrackable(issue);
+  }
+}
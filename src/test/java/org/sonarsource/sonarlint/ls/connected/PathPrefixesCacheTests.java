@@ -0,0 +1,119 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls.connected;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonarsource.sonarlint.core.client.api.connected.ProjectBinding;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PathPrefixesCacheTests {
+
+  private static final ProjectBinding BINDING = new ProjectBinding("projectKey", "sq/prefix", "ide/prefix");
+  private static final String FINGERPRINT = PathPrefixesCache.filesFingerprint(List.of("src/Foo.java", "src/main/Bar.java"));
+
+  @TempDir
+  Path storageDir;
+
+  private final Path folderRoot = Path.of("folder").toAbsolutePath();
+
+  @Test
+  void should_persist_path_prefixes() {
+    new PathPrefixesCache(storageDir).put("connectionId", folderRoot, new Date(1000), FINGERPRINT, BINDING);
+
+    assertThat(new PathPrefixesCache(storageDir).get("connectionId", "projectKey", folderRoot, new Date(1000), FINGERPRINT)).contains(BINDING);
+  }
+
+  @Test
+  void should_not_reuse_path_prefixes_of_other_storage_version() {
+    var underTest = new PathPrefixesCache(storageDir);
+    underTest.put("connectionId", folderRoot, new Date(1000), FINGERPRINT, BINDING);
+
+    assertThat(underTest.get("connectionId", "projectKey", folderRoot, new Date(2000), FINGERPRINT)).isEmpty();
+    assertThat(underTest.get("connectionId", "projectKey", folderRoot, null, FINGERPRINT)).isEmpty();
+    assertThat(underTest.get("otherConnectionId", "projectKey", folderRoot, new Date(1000), FINGERPRINT)).isEmpty();
+    assertThat(underTest.get("connectionId", "otherProjectKey", folderRoot, new Date(1000), FINGERPRINT)).isEmpty();
+    assertThat(underTest.get("connectionId", "projectKey", folderRoot.resolve("sub"), new Date(1000), FINGERPRINT)).isEmpty();
+  }
+
+  @Test
+  void should_not_reuse_path_prefixes_when_files_of_folder_change() {
+    var underTest = new PathPrefixesCache(storageDir);
+    underTest.put("connectionId", folderRoot, new Date(1000), FINGERPRINT, BINDING);
+
+    var movedFilesFingerprint = PathPrefixesCache.filesFingerprint(List.of("src/Foo.java", "src/sub/Bar.java"));
+
+    assertThat(movedFilesFingerprint).isNotEqualTo(FINGERPRINT);
+    assertThat(PathPrefixesCache.filesFingerprint(List.of("src/main/Bar.java", "src/Foo.java"))).isEqualTo(FINGERPRINT);
+    assertThat(underTest.get("connectionId", "projectKey", folderRoot, new Date(1000), movedFilesFingerprint)).isEmpty();
+  }
+
+  @Test
+  void should_keep_path_prefixes_stored_by_other_processes() {
+    var folderRoot2 = Path.of("folder2").toAbsolutePath();
+    var binding2 = new ProjectBinding("projectKey", "sq/prefix2", "ide/prefix2");
+    var cache1 = new PathPrefixesCache(storageDir);
+    var cache2 = new PathPrefixesCache(storageDir);
+
+    cache1.put("connectionId", folderRoot, new Date(1000), FINGERPRINT, BINDING);
+    cache2.put("connectionId", folderRoot2, new Date(1000), FINGERPRINT, binding2);
+
+    var underTest = new PathPrefixesCache(storageDir);
+    assertThat(underTest.get("connectionId", "projectKey", folderRoot, new Date(1000), FINGERPRINT)).contains(BINDING);
+    assertThat(underTest.get("connectionId", "projectKey", folderRoot2, new Date(1000), FINGERPRINT)).contains(binding2);
+  }
+
+  @Test
+  void should_not_cache_path_prefixes_without_storage_version() throws IOException {
+    var underTest = new PathPrefixesCache(storageDir);
+    underTest.put("connectionId", folderRoot, null, FINGERPRINT, BINDING);
+
+    try (var files = Files.list(storageDir)) {
+      assertThat(files).isEmpty();
+    }
+  }
+
+  @Test
+  void should_ignore_corrupted_file() throws IOException {
+    var underTest = new PathPrefixesCache(storageDir);
+    underTest.put("connectionId", folderRoot, new Date(1000), FINGERPRINT, BINDING);
+    try (var files = Files.list(storageDir)) {
+      for (var file : (Iterable<Path>) files::iterator) {
+        Files.writeString(file, "\\u12");
+      }
+    }
+
+    assertThat(underTest.get("connectionId", "projectKey", folderRoot, new Date(1000), FINGERPRINT)).isEmpty();
+  }
+
+  @Test
+  void should_keep_path_prefixes_in_memory_only_without_storage() {
+    var underTest = new PathPrefixesCache(null);
+    underTest.put("connectionId", folderRoot, new Date(1000), FINGERPRINT, BINDING);
+
+    assertThat(underTest.get("connectionId", "projectKey", folderRoot, new Date(1000), FINGERPRINT)).contains(BINDING);
+  }
+}
@@ -25,12 +25,17 @@ import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.eclipse.lsp4j.MessageParams;
 import org.eclipse.lsp4j.MessageType;
@@ -41,6 +46,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import org.junit.jupiter.api.io.TempDir;
+import org.mockito.stubbing.Answer;
 import org.sonar.api.utils.log.LogTesterJUnit5;
 import org.sonar.api.utils.log.LoggerLevel;
 import org.sonarsource.sonarlint.core.client.api.connected.ConnectedSonarLintEngine;
@@ -50,6 +56,8 @@ import org.sonarsource.sonarlint.core.client.api.connected.ProjectBinding;
 import org.sonarsource.sonarlint.core.client.api.connected.ProjectStorageStatus;
 import org.sonarsource.sonarlint.core.client.api.connected.StorageUpdateCheckResult;
 import org.sonarsource.sonarlint.core.client.api.connected.UpdateResult;
+import org.sonarsource.sonarlint.core.client.api.exceptions.CanceledException;
+import org.sonarsource.sonarlint.core.tracking.IssueTrackerCache;
 import org.sonarsource.sonarlint.ls.AnalysisManager;
 import org.sonarsource.sonarlint.ls.EnginesFactory;
 import org.sonarsource.sonarlint.ls.connected.notifications.BindingUpdateNotification;
@@ -63,6 +71,7 @@ import org.sonarsource.sonarlint.ls.settings.WorkspaceFolderSettings;
 import org.sonarsource.sonarlint.ls.settings.WorkspaceSettings;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyCollection;
@@ -74,6 +83,7 @@ import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
@@ -252,6 +262,72 @@ class ProjectBindingManagerTests {
     verify(fakeEngine).calculatePathPrefixes(eq(PROJECT_KEY), argThat(set -> set.contains(FILE_PHP)));
   }
 
+  @Test
+  void get_binding_should_prefetch_server_issues_of_project() {
+    mockFileInABoundWorkspaceFolder();
+
+    var binding = underTest.getBinding(fileInAWorkspaceFolderPath.toUri());
+    assertThat(binding).isNotEmpty();
+
+    verify(fakeEngine, timeout(1000)).downloadServerIssues(any(), any(), eq(PROJECT_KEY), eq(true), any());
+  }
+
+  @Test
+  void get_binding_should_not_consider_hidden_files_and_dependencies() throws IOException {
+    Files.createDirectories(workspaceFolderPath.resolve(".git"));
+    Files.createFile(workspaceFolderPath.resolve(".git").resolve("HEAD"));
+    Files.createDirectories(workspaceFolderPath.resolve("node_modules"));
+    Files.createFile(workspaceFolderPath.resolve("node_modules").resolve("index.js"));
+    Files.createDirectories(workspaceFolderPath.resolve("src"));
+    Files.createFile(workspaceFolderPath.resolve("src").resolve("index.js"));
+    mockFileInABoundWorkspaceFolder();
+
+    underTest.getBinding(fileInAWorkspaceFolderPath.toUri());
+
+    verify(fakeEngine).calculatePathPrefixes(eq(PROJECT_KEY), argThat(paths -> paths.size() == 2 && paths.containsAll(List.of(FILE_PHP, "src/index.js"))));
+  }
+
+  @Test
+  void get_binding_should_reuse_path_prefixes_until_project_storage_is_updated() {
+    underTest = new ProjectBindingManager(enginesFactory, foldersManager, settingsManager, client, new ProgressManager(client), folderBindingCache, bindingUpdateNotification,
+      new PathPrefixesCache(basedir.resolve("bindingCache")), new IssueTrackerCacheFactory(null));
+    underTest.setAnalysisManager(analysisManager);
+    when(projectStorageStatus.getLastUpdateDate()).thenReturn(new Date(1000));
+    var folder = mockFileInABoundWorkspaceFolder();
+
+    assertThat(underTest.getBinding(fileInAWorkspaceFolderPath.toUri())).get().extracting(ProjectBindingWrapper::getBinding).isEqualTo(FAKE_BINDING);
+    folderBindingCache.clear();
+    assertThat(underTest.getBinding(folder)).get().extracting(ProjectBindingWrapper::getBinding).isEqualTo(FAKE_BINDING);
+    verify(fakeEngine, times(1)).calculatePathPrefixes(eq(PROJECT_KEY), any());
+
+    when(projectStorageStatus.getLastUpdateDate()).thenReturn(new Date(2000));
+    folderBindingCache.clear();
+    underTest.getBinding(folder);
+    verify(fakeEngine, times(2)).calculatePathPrefixes(eq(PROJECT_KEY), any());
+  }
+
+  @Test
+  void get_binding_for_files_of_same_directory_is_computed_once() throws Exception {
+    var otherFile = Files.createFile(anotherFolderPath.resolve("other.php"));
+    mockFileOutsideFolder();
+    when(foldersManager.findFolderForFile(otherFile.toUri())).thenReturn(Optional.empty());
+    when(settingsManager.getCurrentDefaultFolderSettings()).thenReturn(BOUND_SETTINGS);
+    servers.put(CONNECTION_ID, GLOBAL_SETTINGS);
+    when(fakeEngine.calculatePathPrefixes(eq(PROJECT_KEY), any())).thenReturn(FAKE_BINDING);
+
+    var executor = Executors.newFixedThreadPool(2);
+    try {
+      var binding1 = executor.submit(() -> underTest.getBinding(fileNotInAWorkspaceFolderPath.toUri()));
+      var binding2 = executor.submit(() -> underTest.getBinding(otherFile.toUri()));
+
+      assertThat(binding1.get()).isPresent();
+      assertThat(binding2.get()).containsSame(binding1.get().get());
+    } finally {
+      executor.shutdown();
+    }
+    verify(fakeEngine, times(1)).calculatePathPrefixes(eq(PROJECT_KEY), argThat(paths -> paths.containsAll(List.of(FILE_PHP, "other.php"))));
+  }
+
   @Test
   void get_binding_should_update_if_global_storage_missing() {
     mockFileInABoundWorkspaceFolder();
@@ -441,6 +517,29 @@ class ProjectBindingManagerTests {
     assertThat(logTester.logs()).contains("All files outside workspace are now unbound");
   }
 
+  @Test
+  void should_persist_tracked_issues_of_dropped_bindings() {
+    var issueTrackerCacheFactory = mock(IssueTrackerCacheFactory.class);
+    var issueTrackerCache = mock(IssueTrackerCache.class);
+    when(issueTrackerCacheFactory.create(any(), any(), any())).thenReturn(issueTrackerCache);
+    underTest = new ProjectBindingManager(enginesFactory, foldersManager, settingsManager, client, new ProgressManager(client), folderBindingCache, bindingUpdateNotification,
+      new PathPrefixesCache(null), issueTrackerCacheFactory);
+    underTest.setAnalysisManager(analysisManager);
+    var folder = mockFileInABoundWorkspaceFolder();
+    when(foldersManager.getAll()).thenReturn(List.of(folder));
+    assertThat(underTest.getBinding(fileInAWorkspaceFolderPath.toUri())).isNotEmpty();
+
+    when(folder.getSettings()).thenReturn(BOUND_SETTINGS_DIFFERENT_PROJECT_KEY);
+    when(fakeEngine.calculatePathPrefixes(eq(PROJECT_KEY2), any())).thenReturn(FAKE_BINDING2);
+    underTest.onChange(folder, BOUND_SETTINGS, BOUND_SETTINGS_DIFFERENT_PROJECT_KEY);
+    verify(issueTrackerCache).shutdown();
+
+    assertThat(underTest.getBinding(fileInAWorkspaceFolderPath.toUri())).isNotEmpty();
+    when(folder.getSettings()).thenReturn(UNBOUND_SETTINGS);
+    underTest.onChange(folder, BOUND_SETTINGS_DIFFERENT_PROJECT_KEY, UNBOUND_SETTINGS);
+    verify(issueTrackerCache, times(2)).shutdown();
+  }
+
   @Test
   void test_rebind_folder_after_project_key_change() {
     var folder = mockFileInABoundWorkspaceFolder();
@@ -520,9 +619,8 @@ class ProjectBindingManagerTests {
     servers.put(SERVER_ID2, GLOBAL_SETTINGS_DIFFERENT_SERVER_ID);
     var folder = mockFileInABoundWorkspaceFolder();
 
-    when(enginesFactory.createConnectedEngine(anyString()))
-      .thenReturn(fakeEngine)
-      .thenReturn(fakeEngine2);
+    when(enginesFactory.createConnectedEngine(CONNECTION_ID)).thenReturn(fakeEngine);
+    when(enginesFactory.createConnectedEngine(SERVER_ID2)).thenReturn(fakeEngine2);
 
     var binding = underTest.getBinding(fileInAWorkspaceFolderPath.toUri());
     assertThat(binding).isNotEmpty();
@@ -578,9 +676,8 @@ class ProjectBindingManagerTests {
     mockFileInABoundWorkspaceFolder();
     mockFileInABoundWorkspaceFolder2();
 
-    when(enginesFactory.createConnectedEngine(anyString()))
-      .thenReturn(fakeEngine)
-      .thenReturn(fakeEngine2);
+    when(enginesFactory.createConnectedEngine(CONNECTION_ID)).thenReturn(fakeEngine);
+    when(enginesFactory.createConnectedEngine(SERVER_ID2)).thenReturn(fakeEngine2);
 
     var binding = underTest.getBinding(fileInAWorkspaceFolderPath.toUri());
     assertThat(binding).isNotEmpty();
@@ -609,9 +706,8 @@ class ProjectBindingManagerTests {
 
     when(fakeEngine2.getProjectStorageStatus(PROJECT_KEY2)).thenReturn(projectStorageStatus2);
 
-    when(enginesFactory.createConnectedEngine(anyString()))
-      .thenReturn(fakeEngine)
-      .thenReturn(fakeEngine2);
+    when(enginesFactory.createConnectedEngine(CONNECTION_ID)).thenReturn(fakeEngine);
+    when(enginesFactory.createConnectedEngine(SERVER_ID2)).thenReturn(fakeEngine2);
 
     var binding = underTest.getBinding(fileInAWorkspaceFolderPath.toUri());
     assertThat(binding).isNotEmpty();
@@ -640,9 +736,8 @@ class ProjectBindingManagerTests {
 
     when(fakeEngine2.getProjectStorageStatus(PROJECT_KEY2)).thenReturn(projectStorageStatus2);
 
-    when(enginesFactory.createConnectedEngine(anyString()))
-      .thenReturn(fakeEngine)
-      .thenReturn(fakeEngine2);
+    when(enginesFactory.createConnectedEngine(CONNECTION_ID)).thenReturn(fakeEngine);
+    when(enginesFactory.createConnectedEngine(SERVER_ID2)).thenReturn(fakeEngine2);
 
     underTest.updateAllBindings(mock(CancelChecker.class), null);
 
@@ -656,6 +751,68 @@ class ProjectBindingManagerTests {
     verifyNoMoreInteractions(analysisManager);
   }
 
+  @Test
+  void update_all_project_bindings_update_servers_concurrently() {
+    var folder1 = mockFileInABoundWorkspaceFolder();
+    var folder2 = mockFileInABoundWorkspaceFolder2();
+
+    when(foldersManager.getAll()).thenReturn(List.of(folder1, folder2));
+
+    when(fakeEngine2.getProjectStorageStatus(PROJECT_KEY2)).thenReturn(projectStorageStatus2);
+
+    when(enginesFactory.createConnectedEngine(CONNECTION_ID)).thenReturn(fakeEngine);
+    when(enginesFactory.createConnectedEngine(SERVER_ID2)).thenReturn(fakeEngine2);
+    // Each global storage update only completes once the other one has started
+    var bothUpdatesStarted = new CountDownLatch(2);
+    var concurrentUpdates = new AtomicInteger();
+    Answer<UpdateResult> waitForOtherUpdate = invocation -> {
+      bothUpdatesStarted.countDown();
+      if (bothUpdatesStarted.await(5, TimeUnit.SECONDS)) {
+        concurrentUpdates.incrementAndGet();
+      }
+      return mock(UpdateResult.class);
+    };
+    when(fakeEngine.update(any(), any(), any())).thenAnswer(waitForOtherUpdate);
+    when(fakeEngine2.update(any(), any(), any())).thenAnswer(waitForOtherUpdate);
+
+    underTest.updateAllBindings(mock(CancelChecker.class), null);
+
+    assertThat(concurrentUpdates).hasValue(2);
+    verify(fakeEngine).updateProject(any(), any(), eq(PROJECT_KEY), anyBoolean(), any());
+    verify(fakeEngine2).updateProject(any(), any(), eq(PROJECT_KEY2), anyBoolean(), any());
+    verify(client).showMessage(new MessageParams(MessageType.Info, "All SonarLint bindings succesfully updated"));
+  }
+
+  @Test
+  void update_all_project_bindings_wait_for_running_updates_when_one_is_canceled() {
+    var folder1 = mockFileInABoundWorkspaceFolder();
+    var folder2 = mockFileInABoundWorkspaceFolder2();
+
+    when(foldersManager.getAll()).thenReturn(List.of(folder1, folder2));
+
+    when(enginesFactory.createConnectedEngine(CONNECTION_ID)).thenReturn(fakeEngine);
+    when(enginesFactory.createConnectedEngine(SERVER_ID2)).thenReturn(fakeEngine2);
+    var otherUpdateStarted = new CountDownLatch(1);
+    var otherUpdateCompleted = new AtomicBoolean();
+    when(fakeEngine.update(any(), any(), any())).thenAnswer(invocation -> {
+      otherUpdateStarted.await(5, TimeUnit.SECONDS);
+      throw new CanceledException();
+    });
+    when(fakeEngine2.update(any(), any(), any())).thenAnswer(invocation -> {
+      otherUpdateStarted.countDown();
+      Thread.sleep(200);
+      otherUpdateCompleted.set(true);
+      return mock(UpdateResult.class);
+    });
+
+    var cancelChecker = mock(CancelChecker.class);
+    assertThrows(CanceledException.class, () -> underTest.updateAllBindings(cancelChecker, null));
+
+    assertThat(otherUpdateCompleted).isTrue();
+    verify(client, never()).showMessage(any());
+    verifyNoInteractions(analysisManager);
+  }
+
   @Test
   void update_all_project_bindings_update_once_each_project_same_server() {
     var folder1 = mockFileInABoundWorkspaceFolder();
@@ -828,7 +985,7 @@ class ProjectBindingManagerTests {
     when(fakeEngine.checkIfGlobalStorageNeedUpdate(any(), any(), any())).thenReturn(checkResult);
     when(bindingUpdateNotification.notifyBindingUpdateAvailable(anyString())).thenReturn(CompletableFuture.completedFuture(true));
 
-    underTest.checkForBindingUpdates();
+    underTest.checkForBindingUpdates().join();
 
     verify(bindingUpdateNotification).notifyBindingUpdateAvailable("myProject");
   }
@@ -848,11 +1005,75 @@ class ProjectBindingManagerTests {
     when(fakeEngine.checkIfProjectStorageNeedUpdate(any(), any(), any(), any())).thenReturn(projectCheckResult);
     when(bindingUpdateNotification.notifyBindingUpdateAvailable(anyString())).thenReturn(CompletableFuture.completedFuture(true));
 
-    underTest.checkForBindingUpdates();
+    underTest.checkForBindingUpdates().join();
 
     verify(bindingUpdateNotification).notifyBindingUpdateAvailable("myProject");
   }
 
+  @Test
+  void should_check_global_storage_once_per_connection() {
+    var folder = mockFileInABoundWorkspaceFolder();
+    var folder2 = mockFileInAFolder2();
+    folder2.setSettings(BOUND_SETTINGS_DIFFERENT_PROJECT_KEY);
+    when(foldersManager.getAll()).thenReturn(List.of(folder, folder2));
+    // create engine
+    underTest.getBinding(fileInAWorkspaceFolderPath.toUri());
+
+    var checkResult = mock(StorageUpdateCheckResult.class);
+    when(checkResult.needUpdate()).thenReturn(false);
+    when(fakeEngine.checkIfGlobalStorageNeedUpdate(any(), any(), any())).thenReturn(checkResult);
+    var projectCheckResult = mock(StorageUpdateCheckResult.class);
+    when(projectCheckResult.needUpdate()).thenReturn(true);
+    when(fakeEngine.checkIfProjectStorageNeedUpdate(any(), any(), any(), any())).thenReturn(projectCheckResult);
+    when(bindingUpdateNotification.notifyBindingUpdateAvailable(anyString())).thenReturn(CompletableFuture.completedFuture(false));
+
+    underTest.checkForBindingUpdates().join();
+
+    verify(fakeEngine).checkIfGlobalStorageNeedUpdate(any(), any(), any());
+    verify(fakeEngine).checkIfProjectStorageNeedUpdate(any(), any(), eq(PROJECT_KEY), any());
+    verify(fakeEngine).checkIfProjectStorageNeedUpdate(any(), any(), eq(PROJECT_KEY2), any());
+    verify(bindingUpdateNotification).notifyBindingUpdateAvailable(PROJECT_KEY);
+    verify(bindingUpdateNotification).notifyBindingUpdateAvailable(PROJECT_KEY2);
+  }
+
+  @Test
+  void should_not_check_project_storages_when_global_storage_needs_update() {
+    var folder = mockFileInABoundWorkspaceFolder();
+    var folder2 = mockFileInAFolder2();
+    folder2.setSettings(BOUND_SETTINGS_DIFFERENT_PROJECT_KEY);
+    when(foldersManager.getAll()).thenReturn(List.of(folder, folder2));
+    // create engine
+    underTest.getBinding(fileInAWorkspaceFolderPath.toUri());
+
+    var checkResult = mock(StorageUpdateCheckResult.class);
+    when(checkResult.needUpdate()).thenReturn(true);
+    when(fakeEngine.checkIfGlobalStorageNeedUpdate(any(), any(), any())).thenReturn(checkResult);
+    when(bindingUpdateNotification.notifyBindingUpdateAvailable(anyString())).thenReturn(CompletableFuture.completedFuture(false));
+
+    underTest.checkForBindingUpdates().join();
+
+    verify(fakeEngine, never()).checkIfProjectStorageNeedUpdate(any(), any(), any(), any());
+    verify(bindingUpdateNotification).notifyBindingUpdateAvailable(PROJECT_KEY);
+    verify(bindingUpdateNotification).notifyBindingUpdateAvailable(PROJECT_KEY2);
+  }
+
+  @Test
+  void should_log_global_storage_check_error_once_per_connection() {
+    var folder = mockFileInABoundWorkspaceFolder();
+    var folder2 = mockFileInAFolder2();
+    folder2.setSettings(BOUND_SETTINGS_DIFFERENT_PROJECT_KEY);
+    when(foldersManager.getAll()).thenReturn(List.of(folder, folder2));
+    // create engine
+    underTest.getBinding(fileInAWorkspaceFolderPath.toUri());
+    doThrow(new RuntimeException("Error")).when(fakeEngine).checkIfGlobalStorageNeedUpdate(any(), any(), any());
+
+    underTest.checkForBindingUpdates().join();
+
+    verify(fakeEngine, never()).checkIfProjectStorageNeedUpdate(any(), any(), any(), any());
+    verifyNoInteractions(bindingUpdateNotification);
+    assertThat(logTester.logs(LoggerLevel.ERROR)).containsExactly("Error while checking for binding updates");
+  }
+
   @Test
   void should_not_notify_the_client_when_no_binding_update_is_available() {
     var folder = mockFileInABoundWorkspaceFolder();
@@ -866,7 +1087,7 @@ class ProjectBindingManagerTests {
     when(projectCheckResult.needUpdate()).thenReturn(false);
     when(fakeEngine.checkIfProjectStorageNeedUpdate(any(), any(), any(), any())).thenReturn(projectCheckResult);
 
-    underTest.checkForBindingUpdates();
+    underTest.checkForBindingUpdates().join();
 
     verifyNoInteractions(bindingUpdateNotification);
   }
@@ -881,7 +1102,7 @@ class ProjectBindingManagerTests {
     when(checkResult.needUpdate()).thenReturn(false);
     doThrow(new RuntimeException("Error")).when(fakeEngine).checkIfGlobalStorageNeedUpdate(any(), any(), any());
 
-    underTest.checkForBindingUpdates();
+    underTest.checkForBindingUpdates().join();
 
     verifyNoInteractions(bindingUpdateNotification);
     assertThat(logTester.logs(LoggerLevel.ERROR))
@@ -21,6 +21,7 @@ package org.sonarsource.sonarlint.ls.connected;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Clock;
 import java.time.Instant;
 import java.util.Collection;
 import java.util.Collections;
@@ -38,7 +39,12 @@ import org.sonarsource.sonarlint.ls.settings.ServerConnectionSettings;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -149,10 +155,99 @@ class ServerIssueTrackerWrapperTests {
     engine = mock(ConnectedSonarLintEngine.class);
     tracker = newTracker(baseDir, engine);
     matchAndTrack(tracker, "dummy", issues, true);
-    verify(engine).downloadServerIssues(any(), any(), any(), any(), anyBoolean(), any());
+    verify(engine).downloadServerIssues(any(), any(), eq("project1"), eq(true), any());
+    verify(engine).getServerIssues(any(), eq("dummy"));
     verifyNoMoreInteractions(engine);
   }
 
+  @Test
+  void download_project_issues_once_for_all_files() throws IOException {
+    var engine = mock(ConnectedSonarLintEngine.class);
+    var tracker = newTracker(baseDir, engine);
+    tracker.prefetchServerIssues();
+
+    matchAndTrack(tracker, "file1", List.of(mockIssue()), true);
+    matchAndTrack(tracker, "file2", List.of(mockIssue()), true);
+
+    verify(engine).downloadServerIssues(any(), any(), eq("project1"), eq(true), any());
+    verify(engine).getServerIssues(any(), eq("file1"));
+    verify(engine).getServerIssues(any(), eq("file2"));
+    verifyNoMoreInteractions(engine);
+  }
+
+  @Test
+  void refresh_project_issues_when_outdated() throws IOException {
+    var engine = mock(ConnectedSonarLintEngine.class);
+    var clock = mock(Clock.class);
+    var now = Instant.now();
+    when(clock.instant()).thenReturn(now);
+    var tracker = newTracker(engine, clock);
+
+    matchAndTrack(tracker, "dummy", List.of(mockIssue()), true);
+    when(clock.instant()).thenReturn(now.plus(ServerIssueTrackerWrapper.PROJECT_ISSUES_REFRESH_PERIOD).minusSeconds(1));
+    matchAndTrack(tracker, "dummy", List.of(mockIssue()), true);
+    verify(engine, times(1)).downloadServerIssues(any(), any(), eq("project1"), eq(true), any());
+
+    when(clock.instant()).thenReturn(now.plus(ServerIssueTrackerWrapper.PROJECT_ISSUES_REFRESH_PERIOD));
+    matchAndTrack(tracker, "dummy", List.of(mockIssue()), true);
+    verify(engine, times(2)).downloadServerIssues(any(), any(), eq("project1"), eq(true), any());
+  }
+
+  @Test
+  void notify_listener_after_each_successful_project_issues_refresh() {
+    var engine = mock(ConnectedSonarLintEngine.class);
+    var clock = mock(Clock.class);
+    var now = Instant.now();
+    when(clock.instant()).thenReturn(now);
+    var notified = new LinkedList<ServerIssueTrackerWrapper>();
+    var tracker = new ServerIssueTrackerWrapper(engine, new ServerConnectionSettings.EndpointParamsAndHttpClient(null, null), new ProjectBinding("project1", "", ""),
+      new BoundedIssueTrackerCache(), Runnable::run, notified::add, clock);
+
+    tracker.prefetchServerIssues();
+    assertThat(notified).isEmpty();
+
+    when(clock.instant()).thenReturn(now.plus(ServerIssueTrackerWrapper.PROJECT_ISSUES_REFRESH_PERIOD));
+    tracker.prefetchServerIssues();
+    assertThat(notified).containsExactly(tracker);
+
+    doThrow(new IllegalStateException("Download error")).when(engine).downloadServerIssues(any(), any(), anyString(), anyBoolean(), any());
+    when(clock.instant()).thenReturn(now.plus(ServerIssueTrackerWrapper.PROJECT_ISSUES_REFRESH_PERIOD.multipliedBy(2)));
+    tracker.prefetchServerIssues();
+    assertThat(notified).containsExactly(tracker);
+  }
+
+  @Test
+  void fetch_file_issues_when_project_issues_can_not_be_downloaded() throws IOException {
+    var engine = mock(ConnectedSonarLintEngine.class);
+    doThrow(new IllegalStateException("Download error")).when(engine).downloadServerIssues(any(), any(), anyString(), anyBoolean(), any());
+    var tracker = newTracker(baseDir, engine);
+
+    matchAndTrack(tracker, "dummy", List.of(mockIssue()), true);
+
+    verify(engine).downloadServerIssues(any(), any(), eq("project1"), eq(true), any());
+    verify(engine).downloadServerIssues(any(), any(), any(ProjectBinding.class), eq("dummy"), eq(true), any());
+  }
+
+  @Test
+  void fetch_file_issues_while_project_issues_are_downloading() throws IOException {
+    var engine = mock(ConnectedSonarLintEngine.class);
+    var pendingDownloads = new LinkedList<Runnable>();
+    var tracker = new ServerIssueTrackerWrapper(engine, new ServerConnectionSettings.EndpointParamsAndHttpClient(null, null), new ProjectBinding("project1", "", ""),
+      new BoundedIssueTrackerCache(), pendingDownloads::add, t -> {
+      });
+
+    matchAndTrack(tracker, "dummy", List.of(mockIssue()), true);
+
+    verify(engine).downloadServerIssues(any(), any(), any(ProjectBinding.class), eq("dummy"), eq(true), any());
+    verify(engine, never()).downloadServerIssues(any(), any(), anyString(), anyBoolean(), any());
+
+    pendingDownloads.forEach(Runnable::run);
+    matchAndTrack(tracker, "dummy", List.of(mockIssue()), true);
+
+    verify(engine).downloadServerIssues(any(), any(), eq("project1"), eq(true), any());
+    verify(engine).downloadServerIssues(any(), any(), any(ProjectBinding.class), eq("dummy"), eq(true), any());
+  }
+
   private Collection<Issue> matchAndTrack(ServerIssueTrackerWrapper tracker, String filePath, Collection<Issue> issues) {
     return matchAndTrack(tracker, filePath, issues, false);
   }
@@ -164,9 +259,15 @@ class ServerIssueTrackerWrapperTests {
   }
 
   private ServerIssueTrackerWrapper newTracker(Path baseDir, ConnectedSonarLintEngine engine) {
+    return newTracker(engine, Clock.systemUTC());
+  }
+
+  private ServerIssueTrackerWrapper newTracker(ConnectedSonarLintEngine engine, Clock clock) {
     var projectKey = "project1";
     var projectBinding = new ProjectBinding(projectKey, "", "");
-    return new ServerIssueTrackerWrapper(engine, new ServerConnectionSettings.EndpointParamsAndHttpClient(null, null), projectBinding);
+    return new ServerIssueTrackerWrapper(engine, new ServerConnectionSettings.EndpointParamsAndHttpClient(null, null), projectBinding,
+      new BoundedIssueTrackerCache(), Runnable::run, t -> {
+      }, clock);
   }
 
   private ServerIssueTrackerWrapper newTracker(Path baseDir) {
@@ -0,0 +1,85 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls.file;
+
+import java.net.URI;
+import java.util.List;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DocumentStoreTests {
+
+  private static final URI FILE = URI.create("file:///folder/file.js");
+
+  private final DocumentStore underTest = new DocumentStore();
+
+  @Test
+  void should_apply_incremental_changes_in_order() {
+    underTest.open(FILE, "function foo() {\n  var toto = 0;\n}");
+
+    var applied = underTest.applyChanges(FILE, List.of(
+      new TextDocumentContentChangeEvent(new Range(new Position(1, 6), new Position(1, 10)), 4, "tata"),
+      new TextDocumentContentChangeEvent(new Range(new Position(1, 15), new Position(1, 15)), 0, "\n  var plouf = 0;")));
+
+    assertThat(applied).isTrue();
+    assertThat(underTest.getContent(FILE)).hasToString("function foo() {\n  var tata = 0;\n  var plouf = 0;\n}");
+  }
+
+  @Test
+  void should_apply_full_content_change() {
+    underTest.open(FILE, "foo");
+
+    underTest.applyChanges(FILE, List.of(new TextDocumentContentChangeEvent("bar")));
+
+    assertThat(underTest.getContent(FILE)).hasToString("bar");
+  }
+
+  @Test
+  void should_accept_full_content_of_files_not_opened() {
+    var applied = underTest.applyChanges(FILE, List.of(new TextDocumentContentChangeEvent("bar")));
+
+    assertThat(applied).isTrue();
+    assertThat(underTest.getContent(FILE)).hasToString("bar");
+  }
+
+  @Test
+  void should_ignore_incremental_changes_of_files_not_opened() {
+    var applied = underTest.applyChanges(FILE, List.of(new TextDocumentContentChangeEvent(new Range(new Position(0, 0), new Position(0, 0)), 0, "bar")));
+
+    assertThat(applied).isFalse();
+    assertThat(underTest.isOpen(FILE)).isFalse();
+    assertThat(underTest.getContent(FILE)).isNull();
+  }
+
+  @Test
+  void should_forget_closed_files() {
+    underTest.open(FILE, "foo");
+    assertThat(underTest.getOpenFileURIs()).containsExactly(FILE);
+
+    underTest.close(FILE);
+
+    assertThat(underTest.isOpen(FILE)).isFalse();
+    assertThat(underTest.getOpenFileURIs()).isEmpty();
+  }
+}
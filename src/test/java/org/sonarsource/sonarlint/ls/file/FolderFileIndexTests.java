@@ -0,0 +1,167 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls.file;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import org.eclipse.lsp4j.FileChangeType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FolderFileIndexTests {
+
+  @TempDir
+  Path root;
+
+  private FolderFileIndex underTest;
+
+  @BeforeEach
+  void prepare() {
+    underTest = new FolderFileIndex(root, Runnable::run);
+  }
+
+  @Test
+  void should_index_files_per_suffix() throws IOException {
+    var jsFile = createFile("src/app.js");
+    var tsFile = createFile("src/deep/sub/app.ts");
+    var dtsFile = createFile("types/app.d.ts");
+    var noExtension = createFile("Makefile");
+
+    assertThat(underTest.files("js")).containsExactly(jsFile);
+    assertThat(underTest.files("ts")).containsExactlyInAnyOrder(tsFile, dtsFile);
+    assertThat(underTest.files("d.ts")).containsExactly(dtsFile);
+    assertThat(underTest.files("py")).isEmpty();
+    assertThat(underTest.files()).containsExactlyInAnyOrder(jsFile, tsFile, dtsFile, noExtension);
+  }
+
+  @Test
+  void should_skip_metadata_dependencies_and_build_output() throws IOException {
+    var source = createFile("src/Foo.java");
+    createFile(".git/objects/Foo.java");
+    createFile("node_modules/lib/index.js");
+    createFile("pom.xml");
+    createFile("target/generated/Foo.java");
+    var notOutput = createFile("src/build/Bar.java");
+
+    assertThat(underTest.files("java")).containsExactlyInAnyOrder(source, notOutput);
+  }
+
+  @Test
+  void should_follow_changes() throws IOException {
+    var file1 = createFile("src/file1.js");
+    assertThat(underTest.files("js")).containsExactly(file1);
+
+    var file2 = createFile("src/file2.js");
+    underTest.didChange(file2, FileChangeType.Created);
+    createFile("node_modules/lib/index.js");
+    underTest.didChange(root.resolve("node_modules/lib/index.js"), FileChangeType.Created);
+    assertThat(underTest.files("js")).containsExactlyInAnyOrder(file1, file2);
+
+    Files.delete(file1);
+    underTest.didChange(file1, FileChangeType.Deleted);
+    assertThat(underTest.files("js")).containsExactly(file2);
+  }
+
+  @Test
+  void should_follow_directory_changes() throws IOException {
+    var file = createFile("src/lib/file.js");
+    assertThat(underTest.files("js")).containsExactly(file);
+
+    underTest.didChange(root.resolve("src"), FileChangeType.Deleted);
+    assertThat(underTest.files("js")).isEmpty();
+
+    underTest.didChange(root.resolve("src"), FileChangeType.Created);
+    assertThat(underTest.files("js")).containsExactly(file);
+  }
+
+  @Test
+  void should_remove_nested_directories() throws IOException {
+    createFile("src/main/app.js");
+    createFile("src/main/lib/lib.js");
+    createFile("src/test/app.test.js");
+    var sibling = createFile("srcs/other.js");
+    assertThat(underTest.files("js")).hasSize(4);
+
+    underTest.didChange(root.resolve("src"), FileChangeType.Deleted);
+    assertThat(underTest.files("js")).containsExactly(sibling);
+
+    underTest.didChange(root.resolve("src/main/lib/lib.js"), FileChangeType.Created);
+    assertThat(underTest.files("js")).containsExactlyInAnyOrder(sibling, root.resolve("src/main/lib/lib.js"));
+  }
+
+  @Test
+  void should_apply_changes_outside_of_notifying_thread() throws IOException {
+    var pendingTasks = new ArrayList<Runnable>();
+    underTest = new FolderFileIndex(root, pendingTasks::add);
+    var file1 = createFile("src/file1.js");
+    assertThat(underTest.files("js")).containsExactly(file1);
+
+    var file2 = createFile("src/file2.js");
+    underTest.didChange(file2, FileChangeType.Created);
+    underTest.didChange(file1, FileChangeType.Deleted);
+    assertThat(underTest.files("js")).containsExactly(file1);
+    assertThat(pendingTasks).hasSize(1);
+
+    pendingTasks.remove(0).run();
+    assertThat(underTest.files("js")).containsExactly(file2);
+  }
+
+  @Test
+  void should_ignore_changes_notified_before_indexing() throws IOException {
+    var file = createFile("src/file.js");
+    underTest.didChange(file, FileChangeType.Created);
+    underTest.didChange(root.resolve("src/removed.js"), FileChangeType.Deleted);
+
+    assertThat(underTest.files("js")).containsExactly(file);
+  }
+
+  @Test
+  void should_skip_created_dependencies_and_build_output_directories() throws IOException {
+    var source = createFile("src/Foo.java");
+    createFile("pom.xml");
+    assertThat(underTest.files("java")).containsExactly(source);
+
+    createFile("node_modules/lib/Foo.java");
+    underTest.didChange(root.resolve("node_modules"), FileChangeType.Created);
+    createFile("target/generated/Foo.java");
+    underTest.didChange(root.resolve("target"), FileChangeType.Created);
+
+    assertThat(underTest.files("java")).containsExactly(source);
+  }
+
+  @Test
+  void should_fail_if_folder_does_not_exist() {
+    var missingFolderIndex = new FolderFileIndex(root.resolve("missing"));
+
+    assertThatThrownBy(missingFolderIndex::files).isInstanceOf(IOException.class);
+  }
+
+  private Path createFile(String relativePath) throws IOException {
+    var file = root.resolve(relativePath);
+    Files.createDirectories(file.getParent());
+    return Files.createFile(file);
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls.file;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RopeTests {
+
+  @Test
+  void should_keep_text() {
+    assertThat(Rope.of("")).hasToString("");
+    assertThat(Rope.of("foo\nbar")).hasToString("foo\nbar");
+    var longText = "line\n".repeat(10_000);
+    var rope = Rope.of(longText);
+    assertThat(rope).hasToString(longText);
+    assertThat(rope.length()).isEqualTo(longText.length());
+    assertThat(rope.lineCount()).isEqualTo(10_001);
+  }
+
+  @Test
+  void should_convert_positions_to_offsets() {
+    var rope = Rope.of("foo\r\nbar\n\nbaz");
+
+    assertThat(rope.offsetAt(0, 0)).isZero();
+    assertThat(rope.offsetAt(0, 2)).isEqualTo(2);
+    assertThat(rope.offsetAt(1, 0)).isEqualTo(5);
+    assertThat(rope.offsetAt(2, 0)).isEqualTo(9);
+    assertThat(rope.offsetAt(3, 3)).isEqualTo(13);
+  }
+
+  @Test
+  void should_count_utf16_units_of_encoded_text() {
+    var rope = Rope.of("é€\n😀x\n日本");
+
+    assertThat(rope.length()).isEqualTo(9);
+    assertThat(rope.offsetAt(1, 2)).isEqualTo(5);
+    assertThat(rope.offsetAt(2, 1)).isEqualTo(8);
+    assertThat(rope.replace(3, 5, "smile")).hasToString("é€\nsmilex\n日本");
+  }
+
+  @Test
+  void should_not_split_multi_byte_characters_of_big_text() throws IOException {
+    var text = "日本語のテキスト\n".repeat(Rope.MAX_ENCODED_LEAF_SIZE);
+    var rope = Rope.of(text);
+
+    assertThat(rope).hasToString(text);
+    assertThat(rope.length()).isEqualTo(text.length());
+    assertThat(rope.offsetAt(1000, 3)).isEqualTo(9 * 1000 + 3);
+    assertThat(rope.inputStream().readAllBytes()).isEqualTo(text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void should_support_text_stored_off_heap() throws IOException {
+    var text = "x".repeat(Rope.OFF_HEAP_THRESHOLD) + "\nlast line";
+    var rope = Rope.of(text).replace(0, 1, "y");
+
+    assertThat(rope.offsetAt(1, 4)).isEqualTo(Rope.OFF_HEAP_THRESHOLD + 5);
+    assertThat(rope.inputStream().readAllBytes()).isEqualTo(("y" + text.substring(1)).getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void should_stream_edited_text_as_utf8() throws IOException {
+    var rope = Rope.of("héllo\nworld").replace(6, 6, "wonderful ").replace(0, 1, "€");
+
+    assertThat(rope.inputStream().readAllBytes()).isEqualTo("€éllo\nwonderful world".getBytes(StandardCharsets.UTF_8));
+    assertThat(Rope.of("").inputStream().readAllBytes()).isEmpty();
+  }
+
+  @Test
+  void should_not_split_surrogate_pairs_at_leaf_boundaries() throws IOException {
+    var text = "x".repeat(301) + "😀".repeat(300);
+    var rope = Rope.of("").replace(0, 0, text);
+
+    assertThat(rope).hasToString(text);
+    assertThat(rope.inputStream().readAllBytes()).isEqualTo(text.getBytes(StandardCharsets.UTF_8));
+
+    // Split in the middle of a pair, then join its halves back
+    var edited = rope.replace(302, 302, "y").replace(302, 303, "");
+    assertThat(edited).hasToString(text);
+    assertThat(edited.inputStream().readAllBytes()).isEqualTo(text.getBytes(StandardCharsets.UTF_8));
+
+    var prefix = "z".repeat(Rope.MAX_LEAF_LENGTH - 1);
+    var separated = Rope.of("").replace(0, 0, prefix + "\uD83D").replace(Rope.MAX_LEAF_LENGTH, Rope.MAX_LEAF_LENGTH, "\uDE00" + prefix);
+    assertThat(separated.inputStream().readAllBytes()).isEqualTo((prefix + "😀" + prefix).getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void should_clamp_positions_out_of_bounds() {
+    var rope = Rope.of("foo\nbar");
+
+    assertThat(rope.offsetAt(0, 42)).isEqualTo(3);
+    assertThat(rope.offsetAt(1, 42)).isEqualTo(7);
+    assertThat(rope.offsetAt(42, 0)).isEqualTo(7);
+    assertThat(rope.offsetAt(-1, 0)).isZero();
+  }
+
+  @Test
+  void should_replace_range() {
+    var rope = Rope.of("foo\nbar");
+
+    assertThat(rope.replace(0, 0, "// ")).hasToString("// foo\nbar");
+    assertThat(rope.replace(3, 4, "")).hasToString("foobar");
+    assertThat(rope.replace(7, 7, "\nbaz")).hasToString("foo\nbar\nbaz");
+    assertThat(rope.replace(0, 7, "qix")).hasToString("qix");
+    // Original is not modified
+    assertThat(rope).hasToString("foo\nbar");
+  }
+
+  @Test
+  void should_reject_invalid_range() {
+    var rope = Rope.of("foo");
+
+    assertThatThrownBy(() -> rope.replace(2, 1, "")).isInstanceOf(IndexOutOfBoundsException.class);
+    assertThatThrownBy(() -> rope.replace(0, 4, "")).isInstanceOf(IndexOutOfBoundsException.class);
+  }
+
+  @Test
+  void should_stay_balanced_and_consistent_after_many_edits() throws IOException {
+    var random = new Random(42);
+    var expected = new StringBuilder("some initial content\n".repeat(1_000));
+    var rope = Rope.of(expected.toString());
+
+    for (var i = 0; i < 5_000; i++) {
+      var start = random.nextInt(expected.length() + 1);
+      var end = Math.min(expected.length(), start + random.nextInt(50));
+      var text = random.nextInt(4) == 0 ? "" : ("x\n".repeat(random.nextInt(3)) + "typed".substring(random.nextInt(5)));
+      expected.replace(start, end, text);
+      rope = rope.replace(start, end, text);
+    }
+
+    assertThat(rope).hasToString(expected.toString());
+    assertThat(rope.inputStream().readAllBytes()).isEqualTo(expected.toString().getBytes(StandardCharsets.UTF_8));
+    assertThat(rope.lineCount()).isEqualTo(expected.toString().split("\n", -1).length);
+    var leaves = Math.max(1, expected.length() / Rope.MAX_LEAF_LENGTH);
+    // AVL trees have a height lower than 1.44 log2(n), allow some slack for small leaves created by edits
+    assertThat(rope.height()).isLessThanOrEqualTo((int) (1.44 * Math.log(leaves * 50.0) / Math.log(2)) + 2);
+  }
+}
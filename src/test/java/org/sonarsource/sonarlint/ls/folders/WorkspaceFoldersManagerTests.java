@@ -87,6 +87,42 @@ class WorkspaceFoldersManagerTests {
       .get().extracting(WorkspaceFolderWrapper::getRootPath).isEqualTo(subFolder);
   }
 
+  @Test
+  void findFolderForFile_does_not_match_folder_with_common_prefix() {
+    var basedir = Paths.get("path/to/base").toAbsolutePath();
+    underTest.initialize(List.of(mockWorkspaceFolder(basedir.toUri())));
+
+    assertThat(underTest.findFolderForFile(Paths.get("path/to/base2/file.java").toAbsolutePath().toUri())).isEmpty();
+    assertThat(underTest.findFolderForFile(Paths.get("path/to").toAbsolutePath().toUri())).isEmpty();
+    assertThat(underTest.findFolderForFile(basedir.toUri())).isPresent();
+  }
+
+  @Test
+  void findFolderForFile_supports_non_file_schemes() {
+    underTest.initialize(List.of(mockWorkspaceFolder(create("ftp://ftp.example.com/foo"))));
+
+    assertThat(underTest.findFolderForFile(create("ftp://ftp.example.com/foo/bar.txt"))).isPresent();
+    assertThat(underTest.findFolderForFile(create("ftp://ftp.example.com/foobar.txt"))).isEmpty();
+    assertThat(underTest.findFolderForFile(create("ftp://other.example.com/foo/bar.txt"))).isEmpty();
+    assertThat(underTest.findFolderForFile(create("file:///foo/bar.txt"))).isEmpty();
+    assertThat(underTest.findFolderForFile(create("untitled:Untitled-1"))).isEmpty();
+  }
+
+  @Test
+  void findFolderForFile_follows_folder_changes() {
+    var basedir = Paths.get("path/to/base").toAbsolutePath();
+    var subFolder = mockWorkspaceFolder(basedir.resolve("sub").toUri());
+    var file = basedir.resolve("sub/file.java").toUri();
+    underTest.initialize(List.of(mockWorkspaceFolder(basedir.toUri())));
+    assertThat(underTest.findFolderForFile(file)).get().extracting(WorkspaceFolderWrapper::getRootPath).isEqualTo(basedir);
+
+    underTest.didChangeWorkspaceFolders(new WorkspaceFoldersChangeEvent(List.of(subFolder), Collections.emptyList()));
+    assertThat(underTest.findFolderForFile(file)).get().extracting(WorkspaceFolderWrapper::getRootPath).isEqualTo(basedir.resolve("sub"));
+
+    underTest.didChangeWorkspaceFolders(new WorkspaceFoldersChangeEvent(Collections.emptyList(), List.of(subFolder)));
+    assertThat(underTest.findFolderForFile(file)).get().extracting(WorkspaceFolderWrapper::getRootPath).isEqualTo(basedir);
+  }
+
   @Test
   void initialize_does_not_crash_when_no_folders() {
     underTest.initialize(null);
@@ -0,0 +1,295 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls.java;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.eclipse.lsp4j.FileChangeType;
+import org.eclipse.lsp4j.FileEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonarsource.sonarlint.ls.SonarLintExtendedLanguageClient;
+import org.sonarsource.sonarlint.ls.SonarLintExtendedLanguageClient.GetJavaConfigResponse;
+import org.sonarsource.sonarlint.ls.file.FileLanguageCache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class JavaConfigCacheTests {
+
+  @TempDir
+  Path project;
+
+  private SonarLintExtendedLanguageClient client;
+  private FileLanguageCache fileLanguageCache;
+  private JavaConfigCache underTest;
+
+  @BeforeEach
+  void prepare() {
+    client = mock(SonarLintExtendedLanguageClient.class);
+    fileLanguageCache = new FileLanguageCache();
+    underTest = new JavaConfigCache(client, fileLanguageCache);
+  }
+
+  @Test
+  void should_not_fetch_config_of_non_java_files() {
+    var fileUri = javaFile("src/main/java/foo.js");
+    fileLanguageCache.put(fileUri, "javascript");
+
+    assertThat(underTest.getOrFetch(fileUri)).isEmpty();
+    verify(client, never()).getJavaConfig(anyString());
+  }
+
+  @Test
+  void should_share_pending_fetch() {
+    var fileUri = javaFile("src/main/java/Foo.java");
+    var response = new CompletableFuture<GetJavaConfigResponse>();
+    when(client.getJavaConfig(fileUri.toString())).thenReturn(response);
+
+    var future1 = underTest.getOrFetchAsync(fileUri);
+    var future2 = underTest.getOrFetchAsync(fileUri);
+    response.complete(config(false, "lib/a.jar"));
+
+    assertThat(future1.join()).isPresent();
+    assertThat(future2.join()).containsSame(future1.join().get());
+    assertThat(underTest.getOrFetch(fileUri)).containsSame(future1.join().get());
+    verify(client, times(1)).getJavaConfig(anyString());
+  }
+
+  @Test
+  void should_share_same_config_of_different_files() {
+    var file1 = javaFile("src/main/java/Foo.java");
+    var file2 = javaFile("src/main/java/sub/Bar.java");
+    var testFile = javaFile("src/test/java/FooTest.java");
+    mockConfig(file1, config(false, "lib/a.jar"));
+    mockConfig(file2, config(false, "lib/a.jar"));
+    mockConfig(testFile, config(true, "lib/a.jar", "lib/junit.jar"));
+
+    var config1 = underTest.getOrFetch(file1).get();
+    var config2 = underTest.getOrFetch(file2).get();
+    var testConfig = underTest.getOrFetch(testFile).get();
+
+    assertThat(config2).isSameAs(config1);
+    assertThat(testConfig).isNotSameAs(config1);
+    assertThat(testConfig.isTest()).isTrue();
+    // Classpath entries are shared between configurations
+    assertThat(testConfig.getClasspath()[0]).isSameAs(config1.getClasspath()[0]);
+  }
+
+  @Test
+  void should_cache_failures() {
+    var fileUri = javaFile("src/main/java/Foo.java");
+    when(client.getJavaConfig(fileUri.toString())).thenReturn(CompletableFuture.failedFuture(new IllegalStateException("error")));
+
+    assertThat(underTest.getOrFetch(fileUri)).isEmpty();
+    assertThat(underTest.getOrFetch(fileUri)).isEmpty();
+
+    verify(client, times(1)).getJavaConfig(anyString());
+  }
+
+  @Test
+  void should_fetch_again_after_classpath_update() {
+    var file1 = javaFile("src/main/java/Foo.java");
+    var file2 = javaFile("src/main/java/Bar.java");
+    mockConfig(file1, config(false, "lib/a.jar"));
+    var oldConfig = underTest.getOrFetch(file1).get();
+
+    underTest.clear(project.toUri());
+    mockConfig(file2, config(false, "lib/a.jar", "lib/b.jar"));
+
+    assertThat(underTest.get(file1)).isEmpty();
+    assertThat(underTest.getOrFetch(file2).get().getClasspath()).hasSize(2);
+    assertThat(underTest.getOrFetch(file2).get()).isNotSameAs(oldConfig);
+    verify(client, times(2)).getJavaConfig(anyString());
+  }
+
+  @Test
+  void should_return_project_path_of_known_files() {
+    var fileUri = javaFile("src/main/java/Foo.java");
+    mockConfig(fileUri, config(false, "lib/a.jar"));
+
+    assertThat(underTest.getProjectPath(fileUri)).isEmpty();
+    underTest.getOrFetch(fileUri);
+
+    assertThat(underTest.getProjectPath(fileUri)).contains(project);
+  }
+
+  @Test
+  void should_keep_config_of_other_projects_on_classpath_update() {
+    var fileUri = javaFile("src/main/java/Foo.java");
+    mockConfig(fileUri, config(false, "lib/a.jar"));
+    underTest.getOrFetch(fileUri);
+
+    underTest.clear(project.resolveSibling("other").toUri());
+
+    assertThat(underTest.get(fileUri)).isPresent();
+    assertThat(underTest.getOrFetch(fileUri)).isPresent();
+    verify(client, times(1)).getJavaConfig(anyString());
+  }
+
+  @Test
+  void should_compute_java_properties_once_per_project() throws IOException {
+    var file1 = javaFile("src/main/java/Foo.java");
+    var file2 = javaFile("src/main/java/Bar.java");
+    var jar = Files.createDirectories(project.resolve("lib")).resolve("a.jar");
+    Files.createFile(jar);
+    mockConfig(file1, config(false, "lib/a.jar", "lib/missing.jar"));
+    mockConfig(file2, config(false, "lib/a.jar", "lib/missing.jar"));
+    underTest.getOrFetch(file1);
+    underTest.getOrFetch(file2);
+
+    var properties = underTest.getJavaProperties(file1);
+
+    assertThat(properties)
+      .containsEntry("sonar.java.source", "11")
+      .containsEntry("sonar.java.libraries", jar.toString());
+    assertThat(underTest.getJavaProperties(file2)).isSameAs(properties);
+  }
+
+  @Test
+  void should_refresh_java_properties_when_classpath_entry_appears() throws IOException {
+    var fileUri = javaFile("src/main/java/Foo.java");
+    mockConfig(fileUri, config(true, "lib/a.jar"));
+    underTest.getOrFetch(fileUri);
+    assertThat(underTest.getJavaProperties(fileUri)).containsEntry("sonar.java.test.libraries", "");
+
+    var jar = Files.createDirectories(project.resolve("lib")).resolve("a.jar");
+    Files.createFile(jar);
+    assertThat(underTest.getJavaProperties(fileUri)).containsEntry("sonar.java.test.libraries", "");
+
+    underTest.didChangeWatchedFiles(List.of(new FileEvent(project.resolve("other.jar").toUri().toString(), FileChangeType.Created)));
+    assertThat(underTest.getJavaProperties(fileUri)).containsEntry("sonar.java.test.libraries", "");
+
+    underTest.didChangeWatchedFiles(List.of(new FileEvent(jar.toUri().toString(), FileChangeType.Created)));
+    assertThat(underTest.getJavaProperties(fileUri)).containsEntry("sonar.java.test.libraries", jar.toString());
+  }
+
+  @Test
+  void should_refresh_java_properties_when_classpath_directory_disappears() throws IOException {
+    var fileUri = javaFile("src/main/java/Foo.java");
+    var classes = Files.createDirectories(project.resolve("build").resolve("classes"));
+    mockConfig(fileUri, config(false, "build/classes"));
+    underTest.getOrFetch(fileUri);
+    assertThat(underTest.getJavaProperties(fileUri)).containsEntry("sonar.java.libraries", classes.toString());
+
+    Files.delete(classes);
+    underTest.didChangeWatchedFiles(List.of(new FileEvent(project.resolve("build").toUri().toString(), FileChangeType.Deleted)));
+
+    assertThat(underTest.getJavaProperties(fileUri)).containsEntry("sonar.java.libraries", "");
+  }
+
+  @Test
+  void should_refresh_java_properties_after_classpath_update() throws IOException {
+    var fileUri = javaFile("src/main/java/Foo.java");
+    mockConfig(fileUri, config(false, "lib/a.jar"));
+    underTest.getOrFetch(fileUri);
+    assertThat(underTest.getJavaProperties(fileUri)).containsEntry("sonar.java.libraries", "");
+
+    var jar = Files.createDirectories(project.resolve("lib")).resolve("a.jar");
+    Files.createFile(jar);
+    underTest.clear(project.toUri());
+    underTest.getOrFetch(fileUri);
+
+    assertThat(underTest.getJavaProperties(fileUri)).containsEntry("sonar.java.libraries", jar.toString());
+  }
+
+  @Test
+  void should_only_refresh_java_properties_depending_on_changed_path() throws IOException {
+    var mainFile = javaFile("src/main/java/Foo.java");
+    var testFile = javaFile("src/test/java/FooTest.java");
+    mockConfig(mainFile, config(false, "lib/a.jar"));
+    mockConfig(testFile, config(true, "build/classes"));
+    underTest.getOrFetch(mainFile);
+    underTest.getOrFetch(testFile);
+    var mainProperties = underTest.getJavaProperties(mainFile);
+    var testProperties = underTest.getJavaProperties(testFile);
+
+    underTest.didChangeWatchedFiles(List.of(new FileEvent(project.resolve("build").toUri().toString(), FileChangeType.Deleted)));
+
+    assertThat(underTest.getJavaProperties(mainFile)).isSameAs(mainProperties);
+    assertThat(underTest.getJavaProperties(testFile)).isNotSameAs(testProperties);
+  }
+
+  @Test
+  void should_evict_jvm_classpath_of_unused_java_homes() {
+    var mainFile = javaFile("src/main/java/Foo.java");
+    var testFile = javaFile("src/test/java/FooTest.java");
+    var jdk11 = project.resolveSibling("jdk11");
+    var jdk17 = project.resolveSibling("jdk17");
+    var mainConfig = config(false, "lib/a.jar");
+    mainConfig.setVmLocation(jdk11.toString());
+    mockConfig(mainFile, mainConfig);
+    underTest.getOrFetch(mainFile);
+    underTest.getJavaProperties(mainFile);
+    assertThat(underTest.getCachedJavaHomes()).containsExactly(jdk11);
+
+    var testConfig = config(true, "lib/a.jar");
+    testConfig.setVmLocation(jdk17.toString());
+    mockConfig(testFile, testConfig);
+    underTest.getOrFetch(testFile);
+    underTest.getJavaProperties(testFile);
+    assertThat(underTest.getCachedJavaHomes()).containsExactlyInAnyOrder(jdk11, jdk17);
+
+    var updatedMainConfig = config(false, "lib/a.jar");
+    updatedMainConfig.setVmLocation(jdk17.toString());
+    underTest.remove(mainFile);
+    mockConfig(mainFile, updatedMainConfig);
+    underTest.getOrFetch(mainFile);
+    assertThat(underTest.getCachedJavaHomes()).containsExactly(jdk17);
+
+    underTest.clear(project.toUri());
+    assertThat(underTest.getCachedJavaHomes()).isEmpty();
+  }
+
+  @Test
+  void should_not_have_java_properties_without_config() {
+    assertThat(underTest.getJavaProperties(javaFile("src/main/java/Foo.java"))).isEmpty();
+  }
+
+  private URI javaFile(String relativePath) {
+    var fileUri = project.resolve(relativePath).toUri();
+    fileLanguageCache.put(fileUri, "java");
+    return fileUri;
+  }
+
+  private void mockConfig(URI fileUri, GetJavaConfigResponse config) {
+    when(client.getJavaConfig(fileUri.toString())).thenReturn(CompletableFuture.completedFuture(config));
+  }
+
+  private GetJavaConfigResponse config(boolean isTest, String... classpath) {
+    var config = new GetJavaConfigResponse();
+    config.setProjectRoot(project.toUri().toString());
+    config.setSourceLevel("11");
+    config.setTest(isTest);
+    config.setClasspath(Arrays.stream(classpath).map(entry -> project.resolve(entry).toString()).toArray(String[]::new));
+    return config;
+  }
+}
@@ -139,6 +139,29 @@ class LanguageServerMediumTests extends AbstractLanguageServerMediumTests {
       );
   }
 
+  @Test
+  void analyzeOpenFilesTogetherOnRulesConfigChange() throws Exception {
+    var uri1 = getUri("analyzeOpenFilesTogetherOnRulesConfigChange1.js");
+    var uri2 = getUri("analyzeOpenFilesTogetherOnRulesConfigChange2.js");
+    var jsSource = "function foo()\n {\n  var toto = 0;\n}";
+
+    emulateConfigurationChangeOnClient("**/*Test.js", null, false, true);
+    didOpenAndWaitForDiagnostics(uri1, "javascript", jsSource);
+    didOpenAndWaitForDiagnostics(uri2, "javascript", jsSource);
+    client.clear();
+
+    emulateConfigurationChangeOnClient("**/*Test.js", null,
+      "javascript:S1481", "off",
+      "javascript:S1105", "on");
+
+    var expectedMessage = "Opening curly brace does not appear on the same line as controlling statement.";
+    await().atMost(1, TimeUnit.MINUTES).untilAsserted(() -> {
+      assertThat(client.getDiagnostics(uri1)).extracting(Diagnostic::getMessage).containsExactly(expectedMessage);
+      assertThat(client.getDiagnostics(uri2)).extracting(Diagnostic::getMessage).containsExactly(expectedMessage);
+    });
+    assertLogContains("Analyzing 2 files...");
+  }
+
   @Test
   void analyzeSimpleTsFileOnOpen() throws Exception {
     var tsconfig = temp.resolve("tsconfig.json");
@@ -288,6 +311,28 @@ class LanguageServerMediumTests extends AbstractLanguageServerMediumTests {
     }
   }
 
+  @Test
+  void analyzeIncrementalChanges() throws Exception {
+    var uri = getUri("foo.js");
+    didOpenAndWaitForDiagnostics(uri, "javascript", "function foo() {\n  var toto = 0;\n}");
+
+    var docId = new VersionedTextDocumentIdentifier(uri, 2);
+    client.diagnosticsLatch = new CountDownLatch(1);
+    lsProxy.getTextDocumentService()
+      .didChange(new DidChangeTextDocumentParams(docId, List.of(
+        new TextDocumentContentChangeEvent(new Range(new Position(1, 15), new Position(1, 15)), 0, "\n  var plouf = 0;"))));
+    if (client.diagnosticsLatch.await(1, TimeUnit.MINUTES)) {
+      var diagnostics = client.getDiagnostics(uri);
+      assertThat(diagnostics)
+        .extracting(startLine(), startCharacter(), endLine(), endCharacter(), code(), Diagnostic::getSource, Diagnostic::getMessage, Diagnostic::getSeverity)
+        .containsExactly(
+          tuple(1, 6, 1, 10, "javascript:S1481", "sonarlint", "Remove the declaration of the unused 'toto' variable.", DiagnosticSeverity.Information),
+          tuple(2, 6, 2, 11, "javascript:S1481", "sonarlint", "Remove the declaration of the unused 'plouf' variable.", DiagnosticSeverity.Information));
+    } else {
+      throw new AssertionError("No diagnostics received after 1 minute");
+    }
+  }
+
   @Test
   void analyzeSimpleJsFileOnSave() throws Exception {
     var uri = getUri("foo.js");
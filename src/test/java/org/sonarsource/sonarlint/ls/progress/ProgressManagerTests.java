@@ -20,6 +20,8 @@
 package org.sonarsource.sonarlint.ls.progress;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.eclipse.lsp4j.ProgressParams;
 import org.eclipse.lsp4j.WorkDoneProgressBegin;
@@ -257,6 +259,34 @@ class ProgressManagerTests {
     assertThat(((WorkDoneProgressEnd) end).getMessage()).isNull();
   }
 
+  @Test
+  void test_concurrent_sub_progresses() {
+    var bothStarted = new CountDownLatch(2);
+    underTest.doWithProgress("Title", FAKE_CLIENT_TOKEN, mock(CancelChecker.class), p -> {
+      var subProgresses = new CompletableFuture<?>[2];
+      for (var i = 0; i < subProgresses.length; i++) {
+        var title = "Sub" + i;
+        subProgresses[i] = CompletableFuture.runAsync(() -> p.doInSubProgress(title, 0.5f, subP -> {
+          bothStarted.countDown();
+          try {
+            assertThat(bothStarted.await(5, TimeUnit.SECONDS)).isTrue();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          subP.asCoreMonitor().setFraction(0.5f);
+        }));
+      }
+      CompletableFuture.allOf(subProgresses).join();
+    });
+
+    var params = ArgumentCaptor.forClass(ProgressParams.class);
+    verify(client, times(8)).notifyProgress(params.capture());
+
+    assertThat(params.getAllValues().subList(1, 7))
+      .extracting("value.left.percentage")
+      .containsExactly(0, 0, 25, 50, 75, 100);
+  }
+
   @Test
   void test_non_cancelable_section() {
     underTest.doWithProgress("Title", FAKE_CLIENT_TOKEN, mock(CancelChecker.class), p -> {
@@ -0,0 +1,100 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls.scm;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GitIgnorePatternTests {
+
+  @ParameterizedTest
+  @ValueSource(strings = {"", "   ", "# comment", "!", "/"})
+  void should_skip_blank_lines_and_comments(String line) {
+    assertThat(GitIgnorePattern.parse(line, false)).isEmpty();
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+    "*.log, app.log, false, true",
+    "*.log, logs/app.log, false, true",
+    "*.log, app.log.txt, false, false",
+    "build, build, true, true",
+    "build, sub/build, true, true",
+    "build, builder, true, false",
+    "build/, build, false, false",
+    "build/, build, true, true",
+    "/build, sub/build, true, false",
+    "/build, build, true, true",
+    "doc/*.txt, doc/notes.txt, false, true",
+    "doc/*.txt, doc/server/arch.txt, false, false",
+    "doc/*.txt, sub/doc/notes.txt, false, false",
+    "**/foo, foo, false, true",
+    "**/foo, a/b/foo, false, true",
+    "**/foo/bar, a/foo/bar, false, true",
+    "abc/**, abc/x/y, false, true",
+    "abc/**, abc, true, false",
+    "a/**/b, a/b, false, true",
+    "a/**/b, a/x/y/b, false, true",
+    "a/**/b, a/x/c, false, false",
+    "file?.js, file1.js, false, true",
+    "file?.js, file/.js, false, false",
+    "file[0-9].js, file5.js, false, true",
+    "file[!0-9].js, file5.js, false, false",
+    "file[!0-9].js, fileA.js, false, true",
+    "\\#notacomment, #notacomment, false, true",
+    "'trailing\\ ', 'trailing ', false, true",
+    "'trailing   ', trailing, false, true",
+    "[unclosed, [unclosed, false, true",
+    "foo.(js), foo.(js), false, true",
+    "foo.(js), foo.js, false, false",
+  })
+  void should_match_like_git(String line, String path, boolean isDirectory, boolean expected) {
+    var pattern = GitIgnorePattern.parse(line, false);
+
+    assertThat(pattern).isPresent();
+    assertThat(pattern.get().matches(path, isDirectory)).isEqualTo(expected);
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+    "*.log, true",
+    "!*.log, false",
+    "\\!important, true",
+  })
+  void should_parse_negation(String line, boolean excludes) {
+    var pattern = GitIgnorePattern.parse(line, false).get();
+
+    assertThat(pattern.isNegated()).isEqualTo(!excludes);
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+    "true, true",
+    "false, false",
+  })
+  void should_optionally_ignore_case(boolean ignoreCase, boolean expected) {
+    var pattern = GitIgnorePattern.parse("*.LOG", ignoreCase).get();
+
+    assertThat(pattern.matches("app.log", false)).isEqualTo(expected);
+  }
+}
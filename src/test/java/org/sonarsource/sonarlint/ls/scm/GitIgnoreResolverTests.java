@@ -0,0 +1,149 @@
+/*
+ * SonarLint Language Server
+ * Copyright (C) 2009-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.sonarlint.ls.scm;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GitIgnoreResolverTests {
+
+  @TempDir
+  Path temp;
+
+  private Path home;
+  private Path repo;
+  private GitIgnoreResolver underTest;
+
+  @BeforeEach
+  void prepare() throws IOException {
+    home = Files.createDirectories(temp.resolve("home"));
+    repo = Files.createDirectories(temp.resolve("repo"));
+    Files.createDirectories(repo.resolve(".git").resolve("info"));
+    underTest = new GitIgnoreResolver(home, null);
+  }
+
+  @Test
+  void should_not_evaluate_files_outside_of_git_repositories() {
+    assertThat(underTest.isIgnored(temp.resolve("other").resolve("file.js"))).isEmpty();
+  }
+
+  @Test
+  void should_not_evaluate_files_of_worktrees() throws IOException {
+    var worktree = Files.createDirectories(temp.resolve("worktree"));
+    Files.writeString(worktree.resolve(".git"), "gitdir: ../repo/.git/worktrees/worktree");
+
+    assertThat(underTest.isIgnored(worktree.resolve("file.js"))).isEmpty();
+  }
+
+  @Test
+  void should_not_evaluate_files_of_repositories_with_included_configuration() throws IOException {
+    Files.writeString(repo.resolve(".git").resolve("config"), "[include]\n  path = other.config\n");
+
+    assertThat(underTest.isIgnored(repo.resolve("file.js"))).isEmpty();
+  }
+
+  @Test
+  void should_evaluate_nested_gitignore_files() throws IOException {
+    Files.writeString(repo.resolve(".gitignore"), "*.log\n/target/\n");
+    Files.createDirectories(repo.resolve("sub"));
+    Files.writeString(repo.resolve("sub").resolve(".gitignore"), "!important.log\ngenerated.js\n");
+
+    assertThat(underTest.isIgnored(repo.resolve("app.js"))).contains(false);
+    assertThat(underTest.isIgnored(repo.resolve("app.log"))).contains(true);
+    assertThat(underTest.isIgnored(repo.resolve("target").resolve("classes").resolve("A.java"))).contains(true);
+    assertThat(underTest.isIgnored(repo.resolve("sub").resolve("target").resolve("A.java"))).contains(false);
+    assertThat(underTest.isIgnored(repo.resolve("sub").resolve("important.log"))).contains(false);
+    assertThat(underTest.isIgnored(repo.resolve("sub").resolve("other.log"))).contains(true);
+    assertThat(underTest.isIgnored(repo.resolve("sub").resolve("deep").resolve("generated.js"))).contains(true);
+    assertThat(underTest.isIgnored(repo.resolve("generated.js"))).contains(false);
+  }
+
+  @Test
+  void should_not_reinclude_files_of_excluded_directory() throws IOException {
+    Files.writeString(repo.resolve(".gitignore"), "build/\n!build/keep.js\n");
+
+    assertThat(underTest.isIgnored(repo.resolve("build").resolve("keep.js"))).contains(true);
+  }
+
+  @Test
+  void should_evaluate_info_exclude_and_global_excludes_file() throws IOException {
+    Files.writeString(repo.resolve(".git").resolve("info").resolve("exclude"), "*.local\n");
+    Files.writeString(home.resolve(".gitconfig"), "[user]\n  name = Me\n[core]\n  excludesFile = ~/global.ignore\n");
+    Files.writeString(home.resolve("global.ignore"), ".idea/\n");
+    Files.writeString(repo.resolve(".gitignore"), "!keep.local\n");
+
+    assertThat(underTest.isIgnored(repo.resolve("settings.local"))).contains(true);
+    assertThat(underTest.isIgnored(repo.resolve(".idea").resolve("workspace.xml"))).contains(true);
+    // .gitignore files take precedence over exclude files
+    assertThat(underTest.isIgnored(repo.resolve("keep.local"))).contains(false);
+  }
+
+  @Test
+  void should_use_default_global_excludes_file() throws IOException {
+    Files.createDirectories(home.resolve(".config").resolve("git"));
+    Files.writeString(home.resolve(".config").resolve("git").resolve("ignore"), "*.swp\n");
+
+    assertThat(underTest.isIgnored(repo.resolve("file.swp"))).contains(true);
+  }
+
+  @Test
+  void should_ignore_case_if_configured() throws IOException {
+    Files.writeString(repo.resolve(".git").resolve("config"), "[core]\n\tignorecase = true\n");
+    Files.writeString(repo.resolve(".gitignore"), "*.LOG\n");
+
+    assertThat(underTest.isIgnored(repo.resolve("app.log"))).contains(true);
+  }
+
+  @Test
+  void should_reload_changed_gitignore() throws IOException {
+    var gitignore = repo.resolve(".gitignore");
+    Files.writeString(gitignore, "*.log\n");
+    assertThat(underTest.isIgnored(repo.resolve("app.log"))).contains(true);
+
+    Files.writeString(gitignore, "*.tmp\n");
+    assertThat(underTest.isIgnored(repo.resolve("app.log"))).contains(true);
+
+    assertThat(underTest.didChange(gitignore)).isTrue();
+    assertThat(underTest.isIgnored(repo.resolve("app.log"))).contains(false);
+  }
+
+  @Test
+  void should_reload_changed_exclude_file() throws IOException {
+    var exclude = repo.resolve(".git").resolve("info").resolve("exclude");
+    assertThat(underTest.isIgnored(repo.resolve("app.log"))).contains(false);
+
+    Files.writeString(exclude, "*.log\n");
+
+    assertThat(underTest.didChange(exclude)).isTrue();
+    assertThat(underTest.isIgnored(repo.resolve("app.log"))).contains(true);
+  }
+
+  @Test
+  void should_not_react_to_other_changes() {
+    assertThat(underTest.didChange(repo.resolve("app.js"))).isFalse();
+    assertThat(underTest.didChange(repo.resolve(".git").resolve("index"))).isFalse();
+  }
+}
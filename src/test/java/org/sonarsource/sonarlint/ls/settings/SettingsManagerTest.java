@@ -26,6 +26,7 @@ import java.net.URI;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 import org.eclipse.lsp4j.WorkspaceFolder;
 import org.eclipse.lsp4j.services.LanguageClient;
@@ -152,6 +153,18 @@ class SettingsManagerTest {
     assertThat(settings.getProjectKey()).isEqualTo("myProject");
   }
 
+  @Test
+  void shouldCompleteInitializationOnFirstConfiguration() throws Exception {
+    var initialized = underTest.initialized();
+    assertThat(initialized).isNotDone();
+
+    mockConfigurationRequest(null, FULL_SAMPLE_CONFIG);
+    underTest.didChangeConfiguration();
+
+    initialized.get(5, TimeUnit.SECONDS);
+    assertThat(underTest.getCurrentSettings()).isNotNull();
+  }
+
   @Test
   void shouldParseFullWellFormedJsonWorkspaceSettings() {
     mockConfigurationRequest(null, FULL_SAMPLE_CONFIG);